@@ -15,6 +15,10 @@ package com.gmail.dpierron.calibre.cache;
  *        cached file entry (or updates/invalidates the cached
  *        information) if it writes to the file or deletes the
  *        file.  If not then unexpected actions can occur.
+ *
+ * NOTE:  The methods that update the cached information are
+ *        synchronized as files may be copied (and their CRC
+ *        calculated) on several threads at once.
  */
 
 import org.apache.log4j.Logger;
@@ -22,17 +26,41 @@ import org.apache.log4j.Logger;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.zip.Adler32;
-import java.util.zip.CheckedInputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
 
 public class CachedFile extends File {
   private final static Logger logger = Logger.getLogger(CachedFile.class);
+  // Fixed so that caches saved in the old serialized format can still be read
+  private static final long serialVersionUID = -851624103082430312L;
 
   private long privateLastModified;
   private long privateLength;
   private long privateCrc;                     // A -ve value indicates invalid CRC;
+  private byte privateCrcAlgorithm;            // Code of the algorithm used for privateCrc
   private final static long CRC_NOT_SET = -1;
 
+  // The algorithm used for all new checksums.  Cached values calculated
+  // with any other algorithm are discarded when they are checked.
+  private static ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.ADLER32;
+  // Size of the buffer used when reading files to calculate checksums
+  private final static int CRC_BUFFER_SIZE = 256 * 1024;
+  // The buffers are kept per thread as checksums may be calculated in parallel
+  private final static ThreadLocal<ByteBuffer> crcBuffer = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(CRC_BUFFER_SIZE);
+    }
+  };
+  private final static ThreadLocal<byte[]> crcArray = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[CRC_BUFFER_SIZE];
+    }
+  };
+
   // Flags indicating state of entry
   // Noee:  Using bits in more memory efficient than using boolean types.
   //        This can mount up with the number of these objects that are created.
@@ -57,6 +85,39 @@ public class CachedFile extends File {
     resetCached();
   }
 
+  /**
+   * Create an entry from the values held in a saved cache.
+   *
+   * The entry is marked as not yet validated so the values are checked
+   * against the file system the first time they are used.
+   *
+   * @param pathname     Path of the file
+   * @param length       Length when the entry was saved
+   * @param lastModified Modified date when the entry was saved
+   * @param crc          The checksum (CRC_NOT_SET if not known)
+   * @param crcAlgorithm Code of the algorithm used for the checksum
+   */
+  CachedFile(String pathname, long length, long lastModified, long crc, byte crcAlgorithm) {
+    super(pathname);
+    privateLength = length;
+    privateLastModified = lastModified;
+    privateCrc = crc;
+    privateCrcAlgorithm = crcAlgorithm;
+    setFlags(true, FLAG_IS_CHANGED);
+    setFlags(crc != CRC_NOT_SET, FLAG_CRC_CALCED);
+  }
+
+  /**
+   * Entries saved before the checksum algorithm could be chosen
+   * do not have one recorded, but they were always Adler32.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (privateCrcAlgorithm == 0) {
+      privateCrcAlgorithm = ChecksumAlgorithm.ADLER32.getCode();
+    }
+  }
+
 
   /**
    *   Helper routine to set flags bits state
@@ -89,7 +150,7 @@ public class CachedFile extends File {
    * This is pribarliy when new image files are generated,
    * so we want to force any cached files to be re-read.
    */
-  public void clearCachedInformation() {
+  public synchronized void clearCachedInformation() {
     privateLastModified = 0;
     privateCrc = CRC_NOT_SET;
     setFlags(false,
@@ -104,7 +165,7 @@ public class CachedFile extends File {
    * it was loaded from cache, check which
    * stored values are still relevant.
    */
-  private void checkCachedValues() {
+  private synchronized void checkCachedValues() {
     // If it is not a cached entry then simply return
     if (isFlags(FLAG_CACHED_VALUES_CHECKED)) {
       return;
@@ -141,6 +202,10 @@ public class CachedFile extends File {
       }
       privateLastModified = d;
     }
+    if (privateCrc != CRC_NOT_SET && privateCrcAlgorithm != checksumAlgorithm.getCode()) {
+      if (logger.isTraceEnabled()) logger.trace("CRC algorithm changed - CRC needs recalculating");
+      clearCachedCrc();
+    }
     if (!isFlags(FLAG_CRC_CALCED) && privateCrc != CRC_NOT_SET) {
       if (logger.isTraceEnabled()) logger.trace("CRC assumed valid");
       setFlags(true, FLAG_CRC_CALCED);
@@ -165,11 +230,12 @@ public class CachedFile extends File {
    * @param crc
    * @param isDirectory
    */
-  public void setCachedValues(boolean exists, long lastModified, long length, long crc, boolean isDirectory) {
+  public synchronized void setCachedValues(boolean exists, long lastModified, long length, long crc, boolean isDirectory) {
     setFlags(exists, FLAG_EXISTS);
     privateLastModified = lastModified;
     privateLength = length;
     privateCrc = crc;
+    privateCrcAlgorithm = checksumAlgorithm.getCode();
     setFlags((crc != -1), FLAG_CRC_CALCED);
     setFlags(isDirectory, FLAG_IS_DIRECTORY);
     setFlags(true, FLAG_EXISTS_CHECKED + FLAG_LENGTH_CHECKED + FLAG_MODIFIED_CHECKED + FLAG_IS_DIRECTORY_CHECKED + FLAG_CACHED_VALUES_CHECKED);
@@ -215,23 +281,39 @@ public class CachedFile extends File {
 
   @Override
   public boolean delete() {
-    resetCached();
+    synchronized (this) {
+      resetCached();
+    }
     return super.delete();
   }
 
+  /**
+   * Set the algorithm to be used when calculating checksums
+   *
+   * @param algorithm
+   */
+  public static void setChecksumAlgorithm(ChecksumAlgorithm algorithm) {
+    checksumAlgorithm = (algorithm == null) ? ChecksumAlgorithm.ADLER32 : algorithm;
+  }
+
+  public static ChecksumAlgorithm getChecksumAlgorithm() {
+    return checksumAlgorithm;
+  }
+
   /**
    * Get the CRC for the given file.
    *
    * If already known the cached value is returned,
    * and if not then it is calculated (and then cached)
    *
-   * Note that Adler32 is used as it is significantly faster than CRC32
-   * Apparently there is a slight risk of a false match. but for this
-   * purpose we can live with that, and the chance is anyway very small.
+   * The algorithm used is set by setChecksumAlgorithm().  Adler32 is the
+   * default as it is significantly faster than CRC32.   Apparently there
+   * is a slight risk of a false match. but for this purpose we can live
+   * with that, and the chance is anyway very small.
    *
    * @return The CRC value
    */
-  public long getCrc() {
+  public synchronized long getCrc() {
     checkCachedValues();
     if (! isFlags(FLAG_CRC_CALCED)) {
       // See i conditions for used cached value are met
@@ -239,13 +321,11 @@ public class CachedFile extends File {
         setFlags(true, FLAG_CRC_CALCED);
       } else {
         // Calculate the CRC for this file.
-        CheckedInputStream cis = null;
+        FileInputStream fis = null;
         try {
-          cis = new CheckedInputStream(new FileInputStream(super.getPath()), new Adler32());
-          byte[] buf = new byte[128];
-          while (cis.read(buf) >= 0) {
-          }
-          privateCrc = cis.getChecksum().getValue();
+          fis = new FileInputStream(super.getPath());
+          privateCrc = calculateChecksum(fis.getChannel(), checksumAlgorithm);
+          privateCrcAlgorithm = checksumAlgorithm.getCode();
         } catch (IOException e) {
           logger.error("ERROR: Failed trying to calculate CRC for " + super.getAbsolutePath() + "\n" + e.toString());
           clearCachedCrc();
@@ -254,8 +334,8 @@ public class CachedFile extends File {
         }
         // Close file ignoring any errors
         try {
-          if (cis != null)
-            cis.close();
+          if (fis != null)
+            fis.close();
         } catch (IOException e) {
           // Do nothing
         }
@@ -266,6 +346,58 @@ public class CachedFile extends File {
     return privateCrc;
   }
 
+  /**
+   * Calculate the checksum of the contents of a channel.
+   *
+   * The file is read in large blocks into a direct buffer to keep the
+   * number of system calls (and the copying done by the JVM) down.
+   *
+   * @param channel   The channel to read (from its current position to the end)
+   * @param algorithm The algorithm to use
+   * @return The checksum (never CRC_NOT_SET)
+   * @throws IOException
+   */
+  static long calculateChecksum(FileChannel channel, ChecksumAlgorithm algorithm) throws IOException {
+    Checksum checksum = algorithm.newChecksum();
+    ByteBuffer buffer = crcBuffer.get();
+    byte[] array = crcArray.get();
+    buffer.clear();
+    while (channel.read(buffer) >= 0) {
+      buffer.flip();
+      if (checksum instanceof XxHash64) {
+        // Can work directly on the buffer
+        ((XxHash64) checksum).update(buffer);
+      } else {
+        // The java.util.zip checksums can only work on arrays
+        int n = buffer.remaining();
+        buffer.get(array, 0, n);
+        checksum.update(array, 0, n);
+      }
+      buffer.clear();
+    }
+    long result = checksum.getValue();
+    // A 64 bit hash could in theory give the value used to mark an unset CRC
+    return (result == CRC_NOT_SET) ? 0 : result;
+  }
+
+  /**
+   * Get the CRC value currently held without calculating it if unknown
+   *
+   * @return The CRC value (CRC_NOT_SET if not known)
+   */
+  long getCachedCrc() {
+    return privateCrc;
+  }
+
+  /**
+   * Get the code of the algorithm used for the current CRC value
+   *
+   * @return The algorithm code
+   */
+  byte getCrcAlgorithmCode() {
+    return privateCrcAlgorithm;
+  }
+
   /**
    * Find out if privateCrc value known(and not simply cached).
    * Can be used to find out if the privateCrc can be retrieved
@@ -291,7 +423,7 @@ public class CachedFile extends File {
    *
    * @param b True if it is, false otherwise
    */
-  public void setTarget(boolean b) {
+  public synchronized void setTarget(boolean b) {
     setFlags(b, FLAG_TARGET_FILE);
     if (logger.isTraceEnabled()) logger.trace("setTarget(" + isFlags(FLAG_TARGET_FILE) + "): " + getAbsolutePath());
   }
@@ -307,7 +439,7 @@ public class CachedFile extends File {
     return isFlags (FLAG_CACHED_VALUES_CHECKED);
   }
 
-  public void clearCacheValidated() {
+  public synchronized void clearCacheValidated() {
     setFlags(false, FLAG_EXISTS_CHECKED + FLAG_LENGTH_CHECKED + FLAG_MODIFIED_CHECKED + FLAG_CACHED_VALUES_CHECKED);
   }
 
@@ -334,7 +466,7 @@ public class CachedFile extends File {
    *
    * @param b True if it is, false otherwise
    */
-  public void setChanged (boolean b) {
+  public synchronized void setChanged (boolean b) {
     setFlags(b, FLAG_IS_CHANGED);
     if (logger.isTraceEnabled()) logger.trace("setChanged(" + isFlags(FLAG_IS_CHANGED) + "): " + getAbsolutePath());
   }
@@ -10,6 +10,14 @@ package com.gmail.dpierron.calibre.cache;
  * to recalculate the CRC (which is an expensive operation) between
  * runs if it can be avoided.
  *
+ * The cache file is a compact binary file consisting of a header
+ * followed by one record per file holding the UTF-8 path and the
+ * length, date and CRC values as primitives.   It can be read in a
+ * single buffered pass with no object deserialization involved.
+ * Cache files written as serialized CachedFile objects by earlier
+ * releases are still read, and are replaced by the new format the
+ * next time the cache is saved.
+ *
  * NOTE:  There should only ever be one instance of this class, so all
  *        global variables and methods are declared static
  */
@@ -30,6 +38,10 @@ public class CachedFileManager {
   private static File cacheFile = null;
   private final static String CALIBRE2OPDS_LOG_FILENAME = "c2o_cache";
   private final static String CALIBRE2OPDS_LOG_FILENAME_OLD = "calibre2opds.cache";
+  private final static int CACHE_MAGIC = 0x43324F43;    // "C2OC"
+  private final static int CACHE_VERSION = 1;
+  private final static int CACHE_END = -1;              // Path length marking the end of the entries
+  private final static int CACHE_BUFFER_SIZE = 512 * 1024;
 
   private static long savedCount = 0;
   private static long ignoredCount = 0;
@@ -185,10 +197,11 @@ public class CachedFileManager {
     long notExists = 0 ;
     long notUsed = 0;
     long countChecked = 0;
-    ObjectOutputStream os = null;
+    long saveStart = System.currentTimeMillis();
+    DataOutputStream os = null;
     BufferedOutputStream bs = null;
     FileOutputStream fs = null;
-    long countPercent = cachedFilesMap.entrySet().size()/100;       // Use to avoid too frequent GUI updates
+    long countPercent = Math.max(1, cachedFilesMap.entrySet().size()/100);       // Use to avoid too frequent GUI updates
     if (callback != null ) callback.setProgressMax(100);
     deleteCache();
 
@@ -198,10 +211,12 @@ public class CachedFileManager {
         // Open cache file (objects)
         fs = new FileOutputStream(cacheFile);         // Open File
         assert fs != null: "saveCache: fs should never be null at this point";
-        bs = new BufferedOutputStream(fs,512 * 1024); // Add buffering
+        bs = new BufferedOutputStream(fs, CACHE_BUFFER_SIZE); // Add buffering
         assert bs != null: "saveCache: bs should never be null at this point";
-        os = new ObjectOutputStream(bs);              // Add object handling
+        os = new DataOutputStream(bs);                // Add primitive handling
         assert os != null: "saveCache: os should never be null at this point";
+        os.writeInt(CACHE_MAGIC);
+        os.writeInt(CACHE_VERSION);
 
         // Write out the cache entries
         CachedFile cf;
@@ -251,10 +266,18 @@ public class CachedFileManager {
             ignoredCount++;
             continue;
           }
-          os.writeObject(cf);
+          byte[] path = cf.getPath().getBytes("UTF-8");
+          os.writeInt(path.length);
+          os.write(path);
+          os.writeLong(cf.length());
+          os.writeLong(cf.lastModified());
+          os.writeLong(cf.getCachedCrc());
+          os.writeByte(cf.getCrcAlgorithmCode());
+          os.writeByte(0);                            // Flags (reserved for future use)
           if (logger.isTraceEnabled())  logger.trace("saveCache: Saved " + key);
           savedCount++;
         }
+        os.writeInt(CACHE_END);
       } finally {
         try {
           if (os != null) os.close();
@@ -274,8 +297,9 @@ public class CachedFileManager {
       logger.debug("saveCache: Cache Entries Saved:   " + savedCount);
       logger.debug("saveCache: Cache Entries Ignored: " + ignoredCount);
       logger.debug("saveCache: isDirectory=" + isDirectory + ", notUsed=" + notUsed + ", notExists=" + notExists + ", crcNotKnown=" + crcNotKnown + ", pathMatch=" + pathMatch);
-      logger.debug("saveCache: COMPLETED Saving CRC cache to file " + cacheFile.getPath());
     }
+    logger.info("Saved " + savedCount + " entries to CRC cache file " + cacheFile.getPath()
+                + " in " + (System.currentTimeMillis() - saveStart) + " ms");
   }
 
   /**
@@ -297,23 +321,101 @@ public class CachedFileManager {
       if (logger.isDebugEnabled())  logger.debug("Exiting loadCache() as cache file not present");
       return;
     }
+    long loadStart = System.currentTimeMillis();
+    if (logger.isDebugEnabled()) logger.debug("STARTED Loading CRC cache from file " + cacheFile.getPath());
+    long loadedCount = loadBinaryCache();
+    if (loadedCount < 0) {
+      // Not in the current format so try the format used by earlier releases
+      logger.info("Converting CRC cache from old format");
+      loadedCount = loadSerializedCache();
+    }
+
+    logger.info("Loaded " + loadedCount + " entries from CRC cache file " + cacheFile.getPath()
+                + " in " + (System.currentTimeMillis() - loadStart) + " ms");
+  }
+
+  /**
+   * Load a cache file saved in the current binary format.
+   *
+   * @return The number of entries loaded, or -1 if the file is not in this format
+   */
+  private static long loadBinaryCache() {
+    DataInputStream is = null;
+    long loadedCount = 0;
+    try {
+      is = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), CACHE_BUFFER_SIZE));
+      if (is.readInt() != CACHE_MAGIC) {
+        return -1;
+      }
+      int version = is.readInt();
+      if (version != CACHE_VERSION) {
+        if (logger.isDebugEnabled()) logger.debug("Cache ignored as it is version " + version);
+        return 0;
+      }
+      byte[] pathBytes = new byte[1024];
+      for (int pathLength = is.readInt(); pathLength != CACHE_END; pathLength = is.readInt()) {
+        if (pathLength > pathBytes.length) {
+          pathBytes = new byte[pathLength];
+        }
+        is.readFully(pathBytes, 0, pathLength);
+        String path = new String(pathBytes, 0, pathLength, "UTF-8");
+        long length = is.readLong();
+        long lastModified = is.readLong();
+        long crc = is.readLong();
+        byte crcAlgorithm = is.readByte();
+        is.readByte();                                  // Flags (reserved for future use)
+        if (logger.isTraceEnabled())  logger.trace("Loaded cached entry " + path);
+        loadedCount++;
+        if (cachedFilesMap.containsKey(path)) {
+          if (logger.isDebugEnabled()) logger.debug("Entry already in cache - ignore cached entry for now");
+          continue;
+        }
+        CachedFile cf = new CachedFile(path, length, lastModified, crc, crcAlgorithm);
+        cf.clearCacheValidated();       // Values must be checked before they are used
+        cachedFilesMap.put(path, cf);
+      }
+    } catch (EOFException e) {
+      // A truncated file is not trusted at all
+      logger.warn("Cache file not loaded as it is incomplete");
+      reset();
+      return 0;
+    } catch (IOException e) {
+      logger.warn("Exception trying to read cache: " + e);
+      reset();
+      return 0;
+    } finally {
+      try {
+        if (is != null) is.close();
+      } catch (IOException e) {
+        // do nothing
+      }
+    }
+    return loadedCount;
+  }
+
+  /**
+   * Load a cache file saved as serialized CachedFile objects
+   * by releases before the binary format was introduced.
+   *
+   * @return The number of entries loaded
+   */
+  private static long loadSerializedCache() {
     ObjectInputStream os = null;
     FileInputStream fs = null;
     BufferedInputStream bs = null;
     long loadedCount = 0;
     try {
-      if (logger.isDebugEnabled()) logger.debug("STARTED Loading CRC cache from file " + cacheFile.getPath());
       // Open Cache file
       fs = new FileInputStream(cacheFile);          // Open file
       assert fs != null : "loadCache: fs should never be null at this point";
-      bs = new BufferedInputStream(fs, 512 * 1024); // Add buffering
+      bs = new BufferedInputStream(fs, CACHE_BUFFER_SIZE); // Add buffering
       assert bs != null : "loadCache: bs should never be null at this point";
       os = new ObjectInputStream(bs);               // And now object handling
       assert os != null : "loadCache: os should never be null at this point";
     } catch (IOException e) {
       logger.warn("loadCache: Aborting as cache file failed to open");
       // Abort any cache loading
-      return;
+      return 0;
     }
 
     // Read in entries from cache
@@ -328,7 +430,7 @@ public class CachedFileManager {
           if (cf2 == null) {
             // Not in cache, so simply add it and
             // set indicator that values not yet checked
-            addCachedFile(cf);
+            cachedFilesMap.put(path, cf);
             cf.clearCacheValidated();
             cf.setChanged(true);    // Assume changed unless we find otherwise
             if (logger.isTraceEnabled()) logger.trace("added entry to cache");
@@ -365,11 +467,7 @@ public class CachedFileManager {
         // do nothing
       }
     }
-
-    if (logger.isDebugEnabled()) {
-      logger.debug("Cache Entries Loaded: " + loadedCount);
-      logger.debug("COMPLETED Loading CRC cache from file " + cacheFile.getPath());
-    }
+    return loadedCount;
   }
 
   /**
@@ -0,0 +1,58 @@
+package com.gmail.dpierron.calibre.cache;
+/**
+ * The algorithms that can be used to calculate the checksum that
+ * CachedFile uses to decide whether two files have the same contents.
+ *
+ * The code for each algorithm is stored with every cached checksum so
+ * that values calculated with a different algorithm are never compared.
+ * The codes must therefore never be changed once released.
+ */
+
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+public enum ChecksumAlgorithm {
+  ADLER32((byte) 1),
+  CRC32((byte) 2),
+  XXHASH64((byte) 3);
+
+  private final byte code;
+
+  private ChecksumAlgorithm(byte code) {
+    this.code = code;
+  }
+
+  /**
+   * @return The code that identifies this algorithm in the cache
+   */
+  public byte getCode() {
+    return code;
+  }
+
+  /**
+   * Get a new checksum object for this algorithm
+   *
+   * @return
+   */
+  public Checksum newChecksum() {
+    switch (this) {
+      case CRC32:
+        return new CRC32();
+      case XXHASH64:
+        return new XxHash64();
+      default:
+        return new Adler32();
+    }
+  }
+
+  public static ChecksumAlgorithm fromName(String name) {
+    if (name != null) {
+      for (ChecksumAlgorithm algorithm : values()) {
+        if (algorithm.name().equalsIgnoreCase(name))
+          return algorithm;
+      }
+    }
+    return ADLER32;
+  }
+}
@@ -0,0 +1,177 @@
+package com.gmail.dpierron.calibre.cache;
+/**
+ * A streaming implementation of the 64-bit xxHash algorithm
+ * (see http://cyan4973.github.io/xxHash/) using a seed of 0.
+ *
+ * It works on 8 bytes at a time rather than a single byte so is
+ * considerably faster than the checksums provided by java.util.zip
+ * while giving a much lower chance of two different files matching.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+public class XxHash64 implements Checksum {
+  private final static long PRIME1 = 0x9E3779B185EBCA87L;
+  private final static long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private final static long PRIME3 = 0x165667B19E3779F9L;
+  private final static long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private final static long PRIME5 = 0x27D4EB2F165667C5L;
+
+  private long v1, v2, v3, v4;
+  private long totalLength;
+  // Bytes left over from the last update that did not make up a full 32 byte stripe
+  private final byte[] pending = new byte[32];
+  private int pendingLength;
+
+  public XxHash64() {
+    reset();
+  }
+
+  public void reset() {
+    v1 = PRIME1 + PRIME2;
+    v2 = PRIME2;
+    v3 = 0;
+    v4 = -PRIME1;
+    totalLength = 0;
+    pendingLength = 0;
+  }
+
+  public void update(int b) {
+    pending[pendingLength++] = (byte) b;
+    totalLength++;
+    if (pendingLength == 32) {
+      processStripe(pending, 0);
+      pendingLength = 0;
+    }
+  }
+
+  public void update(byte[] b, int off, int len) {
+    totalLength += len;
+    // Complete any partial stripe left from an earlier call
+    if (pendingLength > 0) {
+      int n = Math.min(32 - pendingLength, len);
+      System.arraycopy(b, off, pending, pendingLength, n);
+      pendingLength += n;
+      off += n;
+      len -= n;
+      if (pendingLength < 32) {
+        return;
+      }
+      processStripe(pending, 0);
+      pendingLength = 0;
+    }
+    int end = off + len;
+    for (; off + 32 <= end; off += 32) {
+      processStripe(b, off);
+    }
+    pendingLength = end - off;
+    System.arraycopy(b, off, pending, 0, pendingLength);
+  }
+
+  /**
+   * Update the hash with the remaining bytes in a buffer.
+   *
+   * This avoids copying the data to an array first, and when the
+   * buffer is a direct one reading 8 bytes at a time is very cheap.
+   *
+   * @param buffer
+   */
+  public void update(ByteBuffer buffer) {
+    if (pendingLength > 0 || buffer.remaining() < 32) {
+      // Partial stripe outstanding - simplest to go via the array version
+      while (buffer.hasRemaining() && (pendingLength > 0 || buffer.remaining() < 32)) {
+        update(buffer.get());
+      }
+      if (!buffer.hasRemaining()) {
+        return;
+      }
+    }
+    ByteOrder order = buffer.order();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.remaining() >= 32) {
+      v1 = round(v1, buffer.getLong());
+      v2 = round(v2, buffer.getLong());
+      v3 = round(v3, buffer.getLong());
+      v4 = round(v4, buffer.getLong());
+      totalLength += 32;
+    }
+    buffer.order(order);
+    while (buffer.hasRemaining()) {
+      update(buffer.get());
+    }
+  }
+
+  public long getValue() {
+    long h;
+    if (totalLength >= 32) {
+      h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+      h = mergeRound(h, v1);
+      h = mergeRound(h, v2);
+      h = mergeRound(h, v3);
+      h = mergeRound(h, v4);
+    } else {
+      h = PRIME5;
+    }
+    h += totalLength;
+
+    int i = 0;
+    for (; i + 8 <= pendingLength; i += 8) {
+      h ^= round(0, getLong(pending, i));
+      h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+    }
+    if (i + 4 <= pendingLength) {
+      h ^= (getInt(pending, i) & 0xFFFFFFFFL) * PRIME1;
+      h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+      i += 4;
+    }
+    for (; i < pendingLength; i++) {
+      h ^= (pending[i] & 0xFF) * PRIME5;
+      h = Long.rotateLeft(h, 11) * PRIME1;
+    }
+
+    h ^= h >>> 33;
+    h *= PRIME2;
+    h ^= h >>> 29;
+    h *= PRIME3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  private void processStripe(byte[] b, int off) {
+    v1 = round(v1, getLong(b, off));
+    v2 = round(v2, getLong(b, off + 8));
+    v3 = round(v3, getLong(b, off + 16));
+    v4 = round(v4, getLong(b, off + 24));
+  }
+
+  private static long round(long acc, long input) {
+    acc += input * PRIME2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * PRIME1;
+  }
+
+  private static long mergeRound(long acc, long val) {
+    acc ^= round(0, val);
+    return acc * PRIME1 + PRIME4;
+  }
+
+  private static long getLong(byte[] b, int i) {
+    return (b[i] & 0xFFL)
+         | (b[i + 1] & 0xFFL) << 8
+         | (b[i + 2] & 0xFFL) << 16
+         | (b[i + 3] & 0xFFL) << 24
+         | (b[i + 4] & 0xFFL) << 32
+         | (b[i + 5] & 0xFFL) << 40
+         | (b[i + 6] & 0xFFL) << 48
+         | (b[i + 7] & 0xFFL) << 56;
+  }
+
+  private static int getInt(byte[] b, int i) {
+    return (b[i] & 0xFF)
+         | (b[i + 1] & 0xFF) << 8
+         | (b[i + 2] & 0xFF) << 16
+         | (b[i + 3] & 0xFF) << 24;
+  }
+}
@@ -12,6 +12,7 @@ import com.gmail.dpierron.calibre.configuration.Configuration;
 import com.gmail.dpierron.calibre.datamodel.*;
 import com.gmail.dpierron.tools.Composite;
 import com.gmail.dpierron.tools.Helper;
+import com.gmail.dpierron.tools.IntMap;
 import org.apache.log4j.Logger;
 
 import java.io.File;
@@ -21,19 +22,22 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Database {
 
   private static final Logger logger = Logger.getLogger(Database.class);
   private static final DateFormat SQLITE_TIMESTAMP_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-  private static int sqlException = 0;    // Set to bit dependent value to allow for multiple different exception points
+  // Set to bit dependent value to allow for multiple different exception points
+  // (atomic as the tables can be loaded in parallel)
+  private static final AtomicInteger sqlException = new AtomicInteger(0);
 
   /**
    *
    * @return
    */
   public static List<Tag> listTags() {
-    List<Tag> result = new LinkedList<Tag>();
+    List<Tag> result = new ArrayList<Tag>(getRowCount(DatabaseRequest.COUNT_TAGS));
     PreparedStatement statement = DatabaseRequest.ALL_TAGS.getStatement();
     try {
       ResultSet set = statement.executeQuery();
@@ -42,7 +46,7 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("ListTag: " + e);
-      sqlException += (2^0);
+      sqlException.addAndGet(2^0);
     }
     return result;
   }
@@ -59,7 +63,7 @@ public class Database {
     } catch (Exception e) {
       if (logger.isDebugEnabled())
         logger.debug("test: " + e);
-      sqlException += (2^1);
+      sqlException.addAndGet(2^1);
       return false;
     }
   }
@@ -87,7 +91,7 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("getMapsOfLanguages: " + e);
-      sqlException += (2^2);
+      sqlException.addAndGet(2^2);
     }
     return new Composite<Map<String, Language>, Map<String, Language>>(mapOfLanguagesById, mapOfLanguagesByIsoCode);
   }
@@ -97,10 +101,9 @@ public class Database {
    * @return
    */
   public static List<Book> listBooks() {
-    List<Book> result = new LinkedList<Book>();
+    List<Book> result = new ArrayList<Book>(getRowCount(DatabaseRequest.COUNT_BOOKS));
     PreparedStatement statement = DatabaseRequest.ALL_BOOKS.getStatement();
-    PreparedStatement stmtBooksLanguagesLink = DatabaseRequest.BOOKS_LANGUAGES.getStatement();
-    String bookId = null;
+    int bookId = 0;
     int step = 0;     // Brute force way used to help diagnose whichs tement fails (if any) without lots of try/catch statements
     try {
       ResultSet set = null;
@@ -108,13 +111,13 @@ public class Database {
         set = statement.executeQuery();
       } catch (SQLException e) {
         logger.error("listBooks: statement=" + statement + "\n" + e);
-        sqlException += (2^3);
+        sqlException.addAndGet(2^3);
         return result;
       }
       // if (logger.isTraceEnabled())
       //     logger.trace("Processing Query results");
       while (set.next()) {
-        step=2 ; bookId = set.getString("book_id");
+        step=2 ; bookId = set.getInt("book_id");
         // if (logger.isTraceEnabled())
         //     logger.trace("Processing bookId " + bookId);
         step = 3; String uuid = set.getString("uuid");
@@ -152,20 +155,11 @@ public class Database {
         Book book = new Book(bookId, uuid, title, title_sort, path, index, timestamp, modified, publicationDate, isbn, authorSort, rating);
 
         // fetch its languages
-        step=20 ; stmtBooksLanguagesLink.setString(1, book.getId());
-        ResultSet setLanguages = null;
-        try {
-          setLanguages = stmtBooksLanguagesLink.executeQuery();
-        } catch (SQLException e) {
-          logger.error("listBooks: bookId=" + bookId + "\nstmtBooksLanguageLink=" + stmtBooksLanguagesLink + "\n" + e);
-          sqlException += (2^4);
-          return result;
-        }
-        step=21;
-        while (setLanguages.next()) {
-          step=14 ; String languageId = setLanguages.getString("lang_code");
-          book.addBookLanguage(DataModel.getMapOfLanguagesById().get(languageId));
-          step=22;
+        List<Language> languages = DataModel.getMapOfLanguagesByBookId().get(bookId);
+        if (Helper.isNotNullOrEmpty(languages)) {
+          for (Language language : languages) {
+            book.addBookLanguage(language);
+          }
         }
 
         // fetch its author
@@ -212,7 +206,7 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("listBooks: step=" + step + "\n" + e);
-      sqlException += (2^5);
+      sqlException.addAndGet(2^5);
     }
     return result;
   }
@@ -224,21 +218,21 @@ public class Database {
    * @return
    */
   public static List<Author> listAuthors() {
-    List<Author> result = new LinkedList<Author>();
-    List<String> ids = new LinkedList<String>();
+    int count = getRowCount(DatabaseRequest.COUNT_AUTHORS);
+    List<Author> result = new ArrayList<Author>(count);
+    Set<String> ids = new HashSet<String>(Helper.hashCapacity(count));
     PreparedStatement statement = DatabaseRequest.ALL_AUTHORS.getStatement();
     try {
       ResultSet set = statement.executeQuery();
       while (set.next()) {
         String id = set.getString("id");
-        if (!ids.contains(id)) {
-          ids.add(id);
+        if (ids.add(id)) {
           result.add(new Author(id, set.getString("name"), set.getString("sort")));
         }
       }
     } catch (SQLException e) {
       logger.error("listAuthors: " + e);
-      sqlException += (2^6);
+      sqlException.addAndGet(2^6);
     }
     return result;
   }
@@ -250,21 +244,21 @@ public class Database {
    * @return
    */
   public static List<Publisher> listPublishers() {
-    List<Publisher> result = new LinkedList<Publisher>();
-    List<String> ids = new LinkedList<String>();
+    int count = getRowCount(DatabaseRequest.COUNT_PUBLISHERS);
+    List<Publisher> result = new ArrayList<Publisher>(count);
+    Set<String> ids = new HashSet<String>(Helper.hashCapacity(count));
     PreparedStatement statement = DatabaseRequest.ALL_PUBLISHERS.getStatement();
     try {
       ResultSet set = statement.executeQuery();
       while (set.next()) {
         String id = set.getString("id");
-        if (!ids.contains(id)) {
-          ids.add(id);
+        if (ids.add(id)) {
           result.add(new Publisher(id, set.getString("name"), set.getString("sort")));
         }
       }
     } catch (SQLException e) {
       logger.error("listPublishers: " + e);
-      sqlException += (2^7);
+      sqlException.addAndGet(2^7);
     }
     return result;
   }
@@ -277,21 +271,21 @@ public class Database {
    * @return
    */
   public static List<Series> listSeries() {
-    List<Series> result = new LinkedList<Series>();
-    List<String> ids = new LinkedList<String>();
+    int count = getRowCount(DatabaseRequest.COUNT_SERIES);
+    List<Series> result = new ArrayList<Series>(count);
+    Set<String> ids = new HashSet<String>(Helper.hashCapacity(count));
     PreparedStatement statement = DatabaseRequest.ALL_SERIES.getStatement();
     try {
       ResultSet set = statement.executeQuery();
       while (set.next()) {
         String id = set.getString("id");
-        if (!ids.contains(id)) {
-          ids.add(id);
+        if (ids.add(id)) {
           result.add(new Series(id, set.getString("name"), set.getString("serie_sort")));
         }
       }
     } catch (SQLException e) {
       logger.error("listSeries: " + e);
-      sqlException += (2^8);
+      sqlException.addAndGet(2^8);
     }
     return result;
   }
@@ -300,26 +294,27 @@ public class Database {
    *
    * @return
    */
-  public static Map<String, List<EBookFile>> getMapOfEBookFilesByBookId() {
-    Map<String, List<EBookFile>> result = new HashMap<String, List<EBookFile>>();
+  public static IntMap<List<EBookFile>> getMapOfEBookFilesByBookId() {
+    IntMap<List<EBookFile>> result = new IntMap<List<EBookFile>>(getBookMapSize());
     PreparedStatement statement = DatabaseRequest.BOOKS_DATA.getStatement();
     try {
       ResultSet set = statement.executeQuery();
       while (set.next()) {
-        String id = set.getString("book");
+        int id = set.getInt("book");
         String format = set.getString("format");
         String name = set.getString("name");
         List<EBookFile> files = result.get(id);
         if (files == null) {
-          files = new LinkedList<EBookFile>();
+          files = new ArrayList<EBookFile>(2);
           result.put(id, files);
         }
         files.add(new EBookFile(format, name));
       }
     } catch (SQLException e) {
       logger.error("listFilesByBook: " + e);
-      sqlException += (2^9);
+      sqlException.addAndGet(2^9);
     }
+    Helper.trimToSize(result.values());
     return result;
   }
 
@@ -327,17 +322,17 @@ public class Database {
    *
    * @return
    */
-  public static Map<String, List<Author>> getMapOfAuthorsByBookId() {
-    Map<String, List<Author>> result = new HashMap<String, List<Author>>();
+  public static IntMap<List<Author>> getMapOfAuthorsByBookId() {
+    IntMap<List<Author>> result = new IntMap<List<Author>>(getBookMapSize());
     PreparedStatement statement = DatabaseRequest.BOOKS_AUTHORS.getStatement();
     try {
       ResultSet set = statement.executeQuery();
       while (set.next()) {
-        String bookId = set.getString("book");
+        int bookId = set.getInt("book");
         String authorId = set.getString("author");
         List<Author> authors = result.get(bookId);
         if (authors == null) {
-          authors = new LinkedList<Author>();
+          authors = new ArrayList<Author>(2);
           result.put(bookId, authors);
         }
         Author author = DataModel.getMapOfAuthors().get(authorId);
@@ -348,8 +343,9 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("listAuthorsByBook: " + e);
-      sqlException += (2^10);
+      sqlException.addAndGet(2^10);
     }
+    Helper.trimToSize(result.values());
     return result;
   }
 
@@ -357,17 +353,17 @@ public class Database {
    *
    * @return
    */
-  public static Map<String, List<Publisher>> listPublishersByBookId() {
-    Map<String, List<Publisher>> result = new HashMap<String, List<Publisher>>();
+  public static IntMap<List<Publisher>> listPublishersByBookId() {
+    IntMap<List<Publisher>> result = new IntMap<List<Publisher>>(getBookMapSize());
     PreparedStatement statement = DatabaseRequest.BOOKS_PUBLISHERS.getStatement();
     try {
       ResultSet set = statement.executeQuery();
       while (set.next()) {
-        String bookId = set.getString("book");
+        int bookId = set.getInt("book");
         String publisherId = set.getString("publisher");
         List<Publisher> publishers = result.get(bookId);
         if (publishers == null) {
-          publishers = new LinkedList<Publisher>();
+          publishers = new ArrayList<Publisher>(2);
           result.put(bookId, publishers);
         }
         Publisher publisher = DataModel.getMapOfPublishers().get(publisherId);
@@ -378,8 +374,41 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("listPublishersByBook: " + e);
-      sqlException += (2^11);
+      sqlException.addAndGet(2^11);
+    }
+    Helper.trimToSize(result.values());
+    return result;
+  }
+
+  /**
+   * Build up a list of the languages by the bookid using them
+   *
+   * @return
+   */
+  public static IntMap<List<Language>> getMapOfLanguagesByBookId() {
+    IntMap<List<Language>> result = new IntMap<List<Language>>(getBookMapSize());
+    PreparedStatement statement = DatabaseRequest.BOOKS_LANGUAGES.getStatement();
+    try {
+      ResultSet set = statement.executeQuery();
+      while (set.next()) {
+        int bookId = set.getInt("book");
+        String languageId = set.getString("lang_code");
+        List<Language> languages = result.get(bookId);
+        if (languages == null) {
+          languages = new ArrayList<Language>(2);
+          result.put(bookId, languages);
+        }
+        Language language = DataModel.getMapOfLanguagesById().get(languageId);
+        if (language != null)
+          languages.add(language);
+        else
+          logger.warn("cannot find language #" + languageId);
+      }
+    } catch (SQLException e) {
+      logger.error("getMapOfLanguagesByBookId: " + e);
+      sqlException.addAndGet(2^18);
     }
+    Helper.trimToSize(result.values());
     return result;
   }
 
@@ -388,17 +417,17 @@ public class Database {
    *
    * @return
    */
-  public static Map<String, List<Tag>> getMapOfTagsByBookId() {
-    Map<String, List<Tag>> result = new HashMap<String, List<Tag>>();
+  public static IntMap<List<Tag>> getMapOfTagsByBookId() {
+    IntMap<List<Tag>> result = new IntMap<List<Tag>>(getBookMapSize());
     PreparedStatement statement = DatabaseRequest.BOOKS_TAGS.getStatement();
     try {
       ResultSet set = statement.executeQuery();
        while (set.next()) {
-        String bookId = set.getString("book");
+        int bookId = set.getInt("book");
         String tagId = set.getString("tag");
         List<Tag> tags = result.get(bookId);
         if (tags == null) {
-          tags = new LinkedList<Tag>();
+          tags = new ArrayList<Tag>(2);
           result.put(bookId, tags);
         }
         Tag tag = DataModel.getMapOfTags().get(tagId);
@@ -410,8 +439,9 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("getMapOfTagsByBookId: " + e);
-      sqlException += (2^12);
+      sqlException.addAndGet(2^12);
     }
+    Helper.trimToSize(result.values());
     return result;
   }
 
@@ -419,17 +449,17 @@ public class Database {
    *
    * @return
    */
-  public static Map<String, List<Series>> getMapOfSeriesByBookId() {
-    Map<String, List<Series>> result = new HashMap<String, List<Series>>();
+  public static IntMap<List<Series>> getMapOfSeriesByBookId() {
+    IntMap<List<Series>> result = new IntMap<List<Series>>(getBookMapSize());
     PreparedStatement statement = DatabaseRequest.BOOKS_SERIES.getStatement();
     try {
       ResultSet set = statement.executeQuery();
       while (set.next()) {
-        String bookId = set.getString("book");
+        int bookId = set.getInt("book");
         String serieId = set.getString("series");
         List<Series> series = result.get(bookId);
         if (series == null) {
-          series = new LinkedList<Series>();
+          series = new ArrayList<Series>(2);
           result.put(bookId, series);
         }
         Series serie = DataModel.getMapOfSeries().get(serieId);
@@ -440,8 +470,9 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("getMapOfSeriesByBookId: " + e);
-      sqlException += (2^13);
+      sqlException.addAndGet(2^13);
     }
+    Helper.trimToSize(result.values());
     return result;
   }
 
@@ -452,26 +483,27 @@ public class Database {
    * @return
    */
 
-  public static Map<String, List<String>> getMapOfCommentsByBookId() {
-    Map<String, List<String>> result = new HashMap<String, List<String>>();
+  public static IntMap<List<String>> getMapOfCommentsByBookId() {
+    IntMap<List<String>> result = new IntMap<List<String>>(getBookMapSize());
     PreparedStatement statement = DatabaseRequest.BOOKS_COMMENTS.getStatement();
     try {
       ResultSet set = statement.executeQuery();
       while (set.next()) {
-        String id = set.getString("book");
+        int id = set.getInt("book");
         String text = set.getString("text");
         List<String> comments = result.get(id);
         if (comments == null) {
-          comments = new LinkedList<String>();
+          comments = new ArrayList<String>(2);
           result.put(id, comments);
         }
         comments.add(text);
       }
     } catch (SQLException e) {
       logger.error("getMapOfCommentsByBookId: " + e);
-      sqlException += (2^14);
+      sqlException.addAndGet(2^14);
     }
-    if (logger.isDebugEnabled()) logger.debug("Number of comments=" + result.size() + ", Total Size="+ result.toString().length());
+    if (logger.isDebugEnabled()) logger.debug("Number of comments=" + result.size() + ", Total Size="+ result.values().toString().length());
+    Helper.trimToSize(result.values());
     return result;
   }
 
@@ -510,11 +542,40 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("getMapOfSavedSearches: " + e);
-      sqlException += (2^15);
+      sqlException.addAndGet(2^15);
     }
     return result;
   }
 
+  /**
+   * Get the number of rows in a table so that the collection it is
+   * loaded into can be created with the right size.
+   *
+   * @param request One of the COUNT_xxx requests
+   * @return        The row count, or 0 if it could not be determined
+   *                (it is only a hint so a failure is not an error)
+   */
+  private static int getRowCount(DatabaseRequest request) {
+    try {
+      ResultSet set = request.getStatement().executeQuery();
+      if (set.next()) {
+        return set.getInt(1);
+      }
+    } catch (SQLException e) {
+      if (logger.isDebugEnabled()) logger.debug("getRowCount (" + request + "): " + e);
+    }
+    return 0;
+  }
+
+  /**
+   * Get the expected size of a map with an entry per book
+   *
+   * @return
+   */
+  private static int getBookMapSize() {
+    return getRowCount(DatabaseRequest.COUNT_BOOKS);
+  }
+
   /**
    * Determine if an SQL Exception occurred trying to load the database.
    *
@@ -522,7 +583,7 @@ public class Database {
    *          other = value with bit field deterining exception points encountered
    */
   public static int wasSqlEsception() {
-    return sqlException;
+    return sqlException.get();
   }
 
   /**
@@ -531,7 +592,7 @@ public class Database {
    * @return
    */
   public static List<CustomColumnType> getlistOfCustoColumnTypes() {
-    List<CustomColumnType> result = new LinkedList<CustomColumnType>();
+    List<CustomColumnType> result = new ArrayList<CustomColumnType>();
     PreparedStatement statement = DatabaseRequest.CUSTOM_COLUMN_DEFINITION.getStatement();
     try {
       ResultSet set = statement.executeQuery();
@@ -547,7 +608,7 @@ public class Database {
       }
     } catch (SQLException e) {
       logger.error("getlistOfCustoColumnTypes: " + e);
-      sqlException += (2^16);
+      sqlException.addAndGet(2^16);
     }
 
     return result;
@@ -558,8 +619,8 @@ public class Database {
    *
    * @return
    */
-  public static Map<String, List<CustomColumnValue>> getMapofCustomColumnValuesbyBookId (List<CustomColumnType> listTypes) {
-    Map<String, List<CustomColumnValue>> result = new HashMap<String, List<CustomColumnValue>>();
+  public static IntMap<List<CustomColumnValue>> getMapofCustomColumnValuesbyBookId(List<CustomColumnType> listTypes) {
+    IntMap<List<CustomColumnValue>> result = new IntMap<List<CustomColumnValue>>(getBookMapSize());
     for (CustomColumnType listType : listTypes)  {
       PreparedStatement statement;
       if (listType.isNormalized()) {
@@ -577,10 +638,10 @@ public class Database {
       try {
         ResultSet set = statement.executeQuery();
           while (set.next()) {
-            String bookId;
+            int bookId;
             String value;
             String extra;
-            bookId = set.getString("book");
+            bookId = set.getInt("book");
             value = set.getString("value");
             if (listType.getDatatype().equals("series")) {
               extra = set.getString("extra");
@@ -589,7 +650,7 @@ public class Database {
             }
             List<CustomColumnValue> customColumnValues = result.get(bookId);
             if (customColumnValues == null) {
-              customColumnValues = new LinkedList<CustomColumnValue>();
+              customColumnValues = new ArrayList<CustomColumnValue>(2);
               result.put(bookId, customColumnValues);
             }
             CustomColumnValue customColumnValue = new CustomColumnValue(listType, value, extra);
@@ -597,24 +658,65 @@ public class Database {
           }
       } catch (SQLException e) {
         logger.error("getMapofCustomColumnValuesbyBookId: " + e);
-        sqlException += (2^17);
+        sqlException.addAndGet(2^17);
       }
     }
 
+    Helper.trimToSize(result.values());
     return result;
   }
 
 
 
   private static Connection connection;
+  // Connection used by a thread doing a parallel preload (if any)
+  private static final ThreadLocal<Connection> threadConnection = new ThreadLocal<Connection>();
 
   public static Connection getConnection() {
+    Connection c = threadConnection.get();
+    if (c != null) {
+      return c;
+    }
     if (connection == null) {
       initConnection();
     }
     return connection;
   }
 
+  /**
+   * Give the current thread its own read-only connection to the database.
+   * Until closeThreadConnection() is called all requests made on this
+   * thread use this connection rather than the shared one.
+   *
+   * Used when the DataModel is loaded by several threads in parallel.
+   */
+  public static void openThreadConnection() {
+    Connection c = createConnection(Configuration.instance().getDatabaseFolder());
+    if (c != null) {
+      try {
+        c.setReadOnly(true);
+      } catch (SQLException e) {
+        logger.debug("openThreadConnection: " + e);
+      }
+      threadConnection.set(c);
+    }
+  }
+
+  public static boolean hasThreadConnection() {
+    return threadConnection.get() != null;
+  }
+
+  public static void closeThreadConnection() {
+    Connection c = threadConnection.get();
+    threadConnection.remove();
+    if (c != null)
+      try {
+        c.close();
+      } catch (SQLException e) {
+        logger.warn("Unexpected error on database closeThreadConnection: " + e);
+      }
+  }
+
   public static boolean databaseExists() {
     Boolean reply;
     File database = new File(Configuration.instance().getDatabaseFolder(), "metadata.db");
@@ -644,16 +746,21 @@ public class Database {
   }
 
   public static void initConnection(File calibreLibrary) {
+    connection = createConnection(calibreLibrary);
+  }
+
+  private static Connection createConnection(File calibreLibrary) {
     try {
       Class.forName("org.sqlite.JDBC");
       File database = new File(calibreLibrary, "metadata.db");
       String url = database.toURI().getPath();
-      connection = DriverManager.getConnection("jdbc:sqlite:" + url);
+      return DriverManager.getConnection("jdbc:sqlite:" + url);
     } catch (ClassNotFoundException e) {
       logger.error(e);
     } catch (SQLException e) {
       logger.error("initConnection: " + e);
     }
+    return null;
   }
 
   public static void reset() {
@@ -13,6 +13,12 @@ import java.sql.SQLException;
 
 public enum DatabaseRequest {
   TEST("SELECT COUNT(*) FROM books"),
+  // Row counts used to size the collections before they are loaded
+  COUNT_BOOKS("SELECT COUNT(*) FROM books"),
+  COUNT_TAGS("SELECT COUNT(*) FROM tags"),
+  COUNT_AUTHORS("SELECT COUNT(*) FROM authors"),
+  COUNT_PUBLISHERS("SELECT COUNT(*) FROM publishers"),
+  COUNT_SERIES("SELECT COUNT(*) FROM series"),
   ALL_TAGS("SELECT DISTINCT  id, name " + " FROM tags " + " ORDER BY name "),
 
   ALL_BOOKS("SELECT  DISTINCT   " + "b.id AS book_id,   " + "b.title AS book_title,   "
@@ -40,7 +46,7 @@ public enum DatabaseRequest {
   BOOKS_COMMENTS("select book, text from comments"),
   // TODO Request to read single comment if this is worth it for RAM usage optimization
   //  BOOKS_COMMENT("select book, text from comments WHERE id=?"),
-  BOOKS_LANGUAGES("select book, lang_code from books_languages_link where book = :bookId"),
+  BOOKS_LANGUAGES("select book, lang_code from books_languages_link"),
   SAVED_SEARCHES("select val from preferences where key='saved_searches'"),
   CUSTOM_COLUMN_DEFINITION("select id, label, name, datatype,is_multiple, normalized from custom_columns"),
   // Simple custom columns types
@@ -92,6 +98,15 @@ public enum DatabaseRequest {
    * @throws RuntimeException
    */
   private PreparedStatement getStatement(String sql) throws RuntimeException {
+    // Threads with their own connection cannot share the cached statement
+    if (Database.hasThreadConnection()) {
+      try {
+        return Database.getConnection().prepareStatement(sql);
+      } catch (SQLException e) {
+        logger.error(e);
+        throw new RuntimeException(e);
+      }
+    }
     if (preparedStatement == null) {
       try {
         Connection connection = Database.getConnection();
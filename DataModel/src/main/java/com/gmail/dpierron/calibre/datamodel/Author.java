@@ -3,6 +3,7 @@ package com.gmail.dpierron.calibre.datamodel;
 import com.gmail.dpierron.tools.Helper;
 import org.apache.log4j.Logger;
 
+import java.text.CollationKey;
 import java.util.List;
 
 public class Author implements SplitableByLetter, Comparable<Author> {
@@ -12,6 +13,8 @@ public class Author implements SplitableByLetter, Comparable<Author> {
   private String sort;
   private String guessedLastName;
   private String nameForSort;
+  private CollationKey sortKey;
+  private String splitKey;
   // Flags
   // NOTE: Using byte plus bit settings is more memory efficient than using boolean types
   private final static byte FLAG_ALL_CLEAR = 0;
@@ -127,6 +130,22 @@ public class Author implements SplitableByLetter, Comparable<Author> {
     return DataModel.getLibrarySortAuthor() ? getName() :  getNameForSort();
   }
 
+  /**
+   * Get the collation key for the split/sort string.
+   * Computed on first use so that sorts do not re-collate the string on every compare.
+   */
+  public CollationKey getSortKey() {
+    if (sortKey == null)
+      sortKey = DataModel.getSortKey(getTitleToSplitByLetter());
+    return sortKey;
+  }
+
+  public String getSplitKey() {
+    if (splitKey == null)
+      splitKey = DataModel.getSplitKey(getTitleToSplitByLetter());
+    return splitKey;
+  }
+
   /* Comparable interface, used to sort an authors list */
 
   public int compareTo(Author o) {
@@ -5,6 +5,7 @@ import com.gmail.dpierron.tools.Helper;
 import org.apache.log4j.Logger;
 
 import java.io.File;
+import java.text.CollationKey;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
@@ -15,10 +16,12 @@ public class Book implements SplitableByLetter {
   private final static Logger logger = Logger.getLogger(Book.class);
 
   private File bookFolder;
-  private final String id;
+  private final int id;
   private final String uuid;
   private String title;
   private String titleSort;
+  private CollationKey sortKey;
+  private String splitKey;
   private final String path;
   private String comment;
   private String summary;
@@ -40,7 +43,7 @@ public class Book implements SplitableByLetter {
   private String epubFileName;
   private long latestFileModifiedDate = -1;
   private final BookRating rating;
-  private List<Language> bookLanguages = new LinkedList<Language>();
+  private List<Language> bookLanguages = new ArrayList<Language>(1);
   private List<CustomColumnValue> customColumnValues;
   private static Date ZERO;
   private static final Pattern tag_br = Pattern.compile("\\<br\\>", Pattern.CASE_INSENSITIVE);
@@ -66,7 +69,7 @@ public class Book implements SplitableByLetter {
 
   // CONSTRUCTORS
 
-  public Book(String id,
+  public Book(int id,
       String uuid,
       String title,
       String title_sort,
@@ -79,7 +82,7 @@ public class Book implements SplitableByLetter {
       String authorSort,
       BookRating rating) {
     super();
-    assert Helper.isNotNullOrEmpty(id);
+    assert id >= 0;
     this.id = id;
     assert Helper.isNotNullOrEmpty(uuid);
     this.uuid = uuid;
@@ -108,9 +111,10 @@ public class Book implements SplitableByLetter {
     this.timestamp = timestamp;
     this.modified = modified;
     this.publicationDate = publicationDate;
-    this.tags = new LinkedList<Tag>();
-    this.files = new LinkedList<EBookFile>();
-    this.authors = new LinkedList<Author>();
+    // Most books have a single author and file, and only a few tags
+    this.tags = new ArrayList<Tag>(1);
+    this.files = new ArrayList<EBookFile>(1);
+    this.authors = new ArrayList<Author>(1);
     this.isbn = isbn;
     this.authorSort = authorSort;
     this.rating = rating;
@@ -138,7 +142,17 @@ public class Book implements SplitableByLetter {
   }
 
 
+  /**
+   * Get the Calibre id of the book as a string.
+   * Where the id is used as a key getIntId() should be used instead
+   *
+   * @return
+   */
   public String getId() {
+    return Integer.toString(id);
+  }
+
+  public int getIntId() {
     return id;
   }
 
@@ -187,7 +201,7 @@ public class Book implements SplitableByLetter {
   public void addBookLanguage(Language bookLanguage) {
     assert copyOfBook == null;        // Never expect this to be used on a copy of the book!
     if (getBookLanguages() == null) {
-      bookLanguages = new LinkedList<Language>();
+      bookLanguages = new ArrayList<Language>(1);
     }
     if (!bookLanguages.contains(bookLanguage)) {
       bookLanguages.add(bookLanguage);
@@ -562,7 +576,7 @@ public class Book implements SplitableByLetter {
     assert copyOfBook == null;    // Do not expect this on a copy
     listOfAuthors = null;     // Force display list to be recalculated
     if (authors == null)
-      authors = new LinkedList<Author>();
+      authors = new ArrayList<Author>(1);
     if (!authors.contains(author))
       authors.add(author);
   }
@@ -576,7 +590,7 @@ public class Book implements SplitableByLetter {
     if (obj == null)
       return false;
     if (obj instanceof Book) {
-      return (Helper.checkedCompare(((Book) obj).getId(), getId()) == 0);
+      return ((Book) obj).id == id;
     } else
       return super.equals(obj);
   }
@@ -650,6 +664,24 @@ public class Book implements SplitableByLetter {
     return DataModel.getLibrarySortTitle() ? getTitle() : getTitle_Sort();
   }
 
+  /**
+   * Get the collation key for the split/sort string.
+   * Computed on first use so that sorts do not re-collate the string on every compare.
+   */
+  public CollationKey getSortKey() {
+    if (copyOfBook != null) return copyOfBook.getSortKey();
+    if (sortKey == null)
+      sortKey = DataModel.getSortKey(getTitleToSplitByLetter());
+    return sortKey;
+  }
+
+  public String getSplitKey() {
+    if (copyOfBook != null) return copyOfBook.getSplitKey();
+    if (splitKey == null)
+      splitKey = DataModel.getSplitKey(getTitleToSplitByLetter());
+    return splitKey;
+  }
+
   /**
    * Make a copy of the book object.
    *
@@ -680,7 +712,7 @@ public class Book implements SplitableByLetter {
 
     // The tags aassciated with this entry may be changed, so we make
     // a copy of the ones currently associated
-    result.tags = new LinkedList<Tag>(this.getTags());
+    result.tags = new ArrayList<Tag>(this.getTags());
 
     // Indicate this is a copy by setting a reference to the parent
     // This is used to read/set variables that must be in parent.
@@ -12,11 +12,19 @@ import com.gmail.dpierron.calibre.database.Database;
 import com.gmail.dpierron.calibre.datamodel.filter.BookFilter;
 import com.gmail.dpierron.tools.Composite;
 import com.gmail.dpierron.tools.Helper;
+import com.gmail.dpierron.tools.IntMap;
 import com.gmail.dpierron.tools.i18n.Localization;
 import org.apache.log4j.Logger;
 
+import java.text.CollationKey;
+import java.text.Collator;
 import java.text.Normalizer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 public class DataModel {
@@ -25,17 +33,18 @@ public class DataModel {
 
   protected static final String IMPLICIT_LANGUAGE_TAG_PREFIX = "Lang:";
 
-  private static Map<String, List<EBookFile>> mapOfEBookFilesByBookId;
-  private static Map<String, List<Publisher>> mapOfPublishersByBookId;
-  private static Map<String, List<Author>> mapOfAuthorsByBookId;
-  private static Map<String, List<Tag>> mapOfTagsByBookId;
-  private static Map<String, List<Series>> mapOfSeriesByBookId;
-  private static Map<String, List<String>> mapOfCommentsByBookId;
+  private static IntMap<List<EBookFile>> mapOfEBookFilesByBookId;
+  private static IntMap<List<Publisher>> mapOfPublishersByBookId;
+  private static IntMap<List<Author>> mapOfAuthorsByBookId;
+  private static IntMap<List<Tag>> mapOfTagsByBookId;
+  private static IntMap<List<Series>> mapOfSeriesByBookId;
+  private static IntMap<List<String>> mapOfCommentsByBookId;
+  private static IntMap<List<Language>> mapOfLanguagesByBookId;
   // private static Map<String, List<Tag>> mapOfCustomTagsByBookId;
   // private static Map<String, List<Series>> mapOfCustomSeriesByBookId;
 
   private static List<Book> listOfBooks;
-  private static Map<String, Book> mapOfBooks;
+  private static IntMap<Book> mapOfBooks;
 
   private static List<Tag> listOfTags;
   private static Map<String, Tag> mapOfTags;
@@ -65,7 +74,7 @@ public class DataModel {
 
   private static List<CustomColumnType> listOfCustomColumnTypes;
   // private static List<CustomColumnType> listOfCustomColumnTypesReferenced;
-  private static Map<String, List <CustomColumnValue>> mapOfCustomColumnValuesByBookId;
+  private static IntMap<List<CustomColumnValue>> mapOfCustomColumnValuesByBookId;
 
   private static Map<Locale, NoiseWord> mapOfNoisewords;
 
@@ -73,6 +82,9 @@ public class DataModel {
   private static boolean librarySortAuthor = true;
   private static boolean librarySortTitle = true;
   private static boolean librarySortSeries = true;
+  private static int preloadThreads = 1;
+  private static Collator collator = Collator.getInstance();
+  private static final Pattern DIACRITICAL_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
 
   public static void reset() {
     mapOfEBookFilesByBookId = null;
@@ -81,6 +93,7 @@ public class DataModel {
     mapOfTagsByBookId = null;
     mapOfSeriesByBookId = null;
     mapOfCommentsByBookId = null;
+    mapOfLanguagesByBookId = null;
     listOfBooks = null;
     mapOfBooks = null;
     listOfTags = null;
@@ -119,6 +132,10 @@ public class DataModel {
    * an attempt is amde to access their data set.
    */
   public static void preloadDataModel() {
+    if (preloadThreads > 1) {
+      preloadInParallel();
+    }
+
     // Load reference data from database
     getMapOfLanguagesById();
     getListOfCustomColumnTypes();
@@ -130,6 +147,7 @@ public class DataModel {
     getMapOfTagsByBookId();
     getMapOfSeriesByBookId();
     getMapOfCommentsByBookId();
+    getMapOfLanguagesByBookId();
 
     getListOfTags();
     getListOfAuthors();
@@ -150,6 +168,119 @@ public class DataModel {
     getMapOfBooksByRating();
   }
 
+  /**
+   * Load the independent tables in parallel, each loader using its own
+   * read-only database connection.
+   *
+   * This is done in two phases as the books_*_link maps are resolved against
+   * the lists of tags, authors, series, publishers and languages.   Both phases
+   * must complete before the list of books is built.   Anything that fails to
+   * load here is left unset so that it is loaded serially on first use.
+   */
+  private static void preloadInParallel() {
+    ExecutorService executor = Executors.newFixedThreadPool(preloadThreads);
+    try {
+      // Phase 1:  Reference data and the maps that have no dependencies
+      Future<Composite<Map<String, Language>, Map<String, Language>>> languages = executor.submit(
+          new PreloadTask<Composite<Map<String, Language>, Map<String, Language>>>() {
+            Composite<Map<String, Language>, Map<String, Language>> load() { return Database.getMapsOfLanguages(); }
+          });
+      Future<List<CustomColumnType>> customColumnTypes = executor.submit(new PreloadTask<List<CustomColumnType>>() {
+        List<CustomColumnType> load() { return Database.getlistOfCustoColumnTypes(); }
+      });
+      Future<List<Tag>> tags = executor.submit(new PreloadTask<List<Tag>>() {
+        List<Tag> load() { return Database.listTags(); }
+      });
+      Future<List<Author>> authors = executor.submit(new PreloadTask<List<Author>>() {
+        List<Author> load() { return Database.listAuthors(); }
+      });
+      Future<List<Series>> series = executor.submit(new PreloadTask<List<Series>>() {
+        List<Series> load() { return Database.listSeries(); }
+      });
+      Future<List<Publisher>> publishers = executor.submit(new PreloadTask<List<Publisher>>() {
+        List<Publisher> load() { return Database.listPublishers(); }
+      });
+      Future<IntMap<List<EBookFile>>> files = executor.submit(new PreloadTask<IntMap<List<EBookFile>>>() {
+        IntMap<List<EBookFile>> load() { return Database.getMapOfEBookFilesByBookId(); }
+      });
+      Future<IntMap<List<String>>> comments = executor.submit(new PreloadTask<IntMap<List<String>>>() {
+        IntMap<List<String>> load() { return Database.getMapOfCommentsByBookId(); }
+      });
+
+      Composite<Map<String, Language>, Map<String, Language>> languageMaps = languages.get();
+      mapOfLanguagesById = languageMaps.getFirstElement();
+      mapOfLanguagesByIsoCode = languageMaps.getSecondElement();
+      listOfCustomColumnTypes = customColumnTypes.get();
+      listOfTags = tags.get();
+      listOfAuthors = authors.get();
+      listOfSeries = series.get();
+      listOfPublishers = publishers.get();
+      mapOfEBookFilesByBookId = files.get();
+      mapOfCommentsByBookId = comments.get();
+
+      // Build the lookups by id that the link tables are resolved against
+      getMapOfTags();
+      getMapOfAuthors();
+      getMapOfSeries();
+      getMapOfPublishers();
+
+      // Phase 2:  The link tables
+      Future<IntMap<List<Author>>> authorsByBookId = executor.submit(new PreloadTask<IntMap<List<Author>>>() {
+        IntMap<List<Author>> load() { return Database.getMapOfAuthorsByBookId(); }
+      });
+      Future<IntMap<List<Tag>>> tagsByBookId = executor.submit(new PreloadTask<IntMap<List<Tag>>>() {
+        IntMap<List<Tag>> load() { return Database.getMapOfTagsByBookId(); }
+      });
+      Future<IntMap<List<Series>>> seriesByBookId = executor.submit(new PreloadTask<IntMap<List<Series>>>() {
+        IntMap<List<Series>> load() { return Database.getMapOfSeriesByBookId(); }
+      });
+      Future<IntMap<List<Publisher>>> publishersByBookId = executor.submit(new PreloadTask<IntMap<List<Publisher>>>() {
+        IntMap<List<Publisher>> load() { return Database.listPublishersByBookId(); }
+      });
+      Future<IntMap<List<Language>>> languagesByBookId = executor.submit(new PreloadTask<IntMap<List<Language>>>() {
+        IntMap<List<Language>> load() { return Database.getMapOfLanguagesByBookId(); }
+      });
+
+      mapOfAuthorsByBookId = authorsByBookId.get();
+      mapOfTagsByBookId = tagsByBookId.get();
+      mapOfSeriesByBookId = seriesByBookId.get();
+      mapOfPublishersByBookId = publishersByBookId.get();
+      mapOfLanguagesByBookId = languagesByBookId.get();
+    } catch (Exception e) {
+      // Whatever has not been set will be loaded serially on demand.
+      // Before that the loads not yet started are cancelled, and those still
+      // running are waited for, so that nothing is loaded twice at once.
+      logger.warn("preloadInParallel: " + e);
+      executor.shutdownNow();
+      try {
+        while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+          logger.debug("preloadInParallel: waiting for the loads in progress to finish");
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Wrapper for a preload step that gives it its own database connection
+   * for as long as it is running.
+   */
+  private static abstract class PreloadTask<T> implements Callable<T> {
+    public T call() {
+      Database.openThreadConnection();
+      try {
+        return load();
+      } finally {
+        Database.closeThreadConnection();
+      }
+    }
+
+    abstract T load();
+  }
+
   /**
    * This list should not be very large so we do not mind loading all of it every time
    * @return
@@ -170,7 +301,7 @@ public class DataModel {
    *
    * @return
    */
-  public static Map<String, List<CustomColumnValue>> getMapOfCustomColumnValuesByBookId() {
+  public static IntMap<List<CustomColumnValue>> getMapOfCustomColumnValuesByBookId() {
     if (mapOfCustomColumnValuesByBookId == null) {
        mapOfCustomColumnValuesByBookId = Database.getMapofCustomColumnValuesbyBookId(getListOfCustomColumnTypes());
     }
@@ -206,7 +337,7 @@ public class DataModel {
    *
    * @return
    */
-  public static Map<String, List<EBookFile>> getMapOfEBookFilesByBookId() {
+  public static IntMap<List<EBookFile>> getMapOfEBookFilesByBookId() {
     if (mapOfEBookFilesByBookId == null) {
       mapOfEBookFilesByBookId = Database.getMapOfEBookFilesByBookId();
     }
@@ -217,7 +348,7 @@ public class DataModel {
    *
    * @return
    */
-  public static Map<String, List<Author>> getMapOfAuthorsByBookId() {
+  public static IntMap<List<Author>> getMapOfAuthorsByBookId() {
     if (mapOfAuthorsByBookId == null) {
       mapOfAuthorsByBookId = Database.getMapOfAuthorsByBookId();
     }
@@ -228,7 +359,7 @@ public class DataModel {
    *
    * @return
    */
-  public static Map<String, List<Publisher>> getMapOfPublishersByBookId() {
+  public static IntMap<List<Publisher>> getMapOfPublishersByBookId() {
     if (mapOfPublishersByBookId == null) {
       mapOfPublishersByBookId = Database.listPublishersByBookId();
     }
@@ -239,7 +370,7 @@ public class DataModel {
    *
    * @return
    */
-  public static Map<String, List<Tag>> getMapOfTagsByBookId() {
+  public static IntMap<List<Tag>> getMapOfTagsByBookId() {
     if (mapOfTagsByBookId == null) {
       mapOfTagsByBookId = Database.getMapOfTagsByBookId();
     }
@@ -250,7 +381,7 @@ public class DataModel {
    *
    * @return
    */
-  public static Map<String, List<Series>> getMapOfSeriesByBookId() {
+  public static IntMap<List<Series>> getMapOfSeriesByBookId() {
     if (mapOfSeriesByBookId == null) {
       mapOfSeriesByBookId = Database.getMapOfSeriesByBookId();
     }
@@ -261,13 +392,26 @@ public class DataModel {
    *
    * @return
    */
-  public static Map<String, List<String>> getMapOfCommentsByBookId() {
+  public static IntMap<List<String>> getMapOfCommentsByBookId() {
     if (mapOfCommentsByBookId == null) {
       mapOfCommentsByBookId = Database.getMapOfCommentsByBookId();
     }
     return mapOfCommentsByBookId;
   }
 
+  /**
+   * Get the languages for each book.
+   * Loaded in a single pass rather than one query per book.
+   *
+   * @return
+   */
+  public static IntMap<List<Language>> getMapOfLanguagesByBookId() {
+    if (mapOfLanguagesByBookId == null) {
+      mapOfLanguagesByBookId = Database.getMapOfLanguagesByBookId();
+    }
+    return mapOfLanguagesByBookId;
+  }
+
   /**
    *
    * @return
@@ -279,11 +423,11 @@ public class DataModel {
     return listOfBooks;
   }
 
-  public static Map<String, Book> getMapOfBooks() {
+  public static IntMap<Book> getMapOfBooks() {
     if (mapOfBooks == null) {
-      mapOfBooks = new HashMap<String, Book>();
+      mapOfBooks = new IntMap<Book>(getListOfBooks().size());
       for (Book book : getListOfBooks()) {
-        mapOfBooks.put(book.getId(), book);
+        mapOfBooks.put(book.getIntId(), book);
       }
     }
     return mapOfBooks;
@@ -303,7 +447,7 @@ public class DataModel {
    */
   public static Map<String, Tag> getMapOfTags() {
     if (mapOfTags == null) {
-      mapOfTags = new HashMap<String, Tag>();
+      mapOfTags = new HashMap<String, Tag>(Helper.hashCapacity(getListOfTags().size()));
       for (Tag tag : getListOfTags()) {
         mapOfTags.put(tag.getId(), tag);
       }
@@ -335,12 +479,13 @@ public class DataModel {
         for (Tag tag : book.getTags()) {
           List<Book> books = mapOfBooksByTag.get(tag);
           if (books == null) {
-            books = new LinkedList<Book>();
+            books = new ArrayList<Book>();
             mapOfBooksByTag.put(tag, books);
           }
           books.add(book);
         }
       }
+      Helper.trimToSize(mapOfBooksByTag.values());
     }
     return mapOfBooksByTag;
   }
@@ -354,7 +499,7 @@ public class DataModel {
 
   public static Map<String, Author> getMapOfAuthors() {
     if (mapOfAuthors == null) {
-      mapOfAuthors = new HashMap<String, Author>();
+      mapOfAuthors = new HashMap<String, Author>(Helper.hashCapacity(getListOfAuthors().size()));
       for (Author author : getListOfAuthors()) {
         mapOfAuthors.put(author.getId(), author);
       }
@@ -369,12 +514,13 @@ public class DataModel {
         for (Author author : book.getAuthors()) {
           List<Book> books = mapOfBooksByAuthor.get(author);
           if (books == null) {
-            books = new LinkedList<Book>();
+            books = new ArrayList<Book>();
             mapOfBooksByAuthor.put(author, books);
           }
           books.add(book);
         }
       }
+      Helper.trimToSize(mapOfBooksByAuthor.values());
     }
 
     return mapOfBooksByAuthor;
@@ -389,7 +535,7 @@ public class DataModel {
 
   public static Map<String, Series> getMapOfSeries() {
     if (mapOfSeries == null) {
-      mapOfSeries = new HashMap<String, Series>();
+      mapOfSeries = new HashMap<String, Series>(Helper.hashCapacity(getListOfSeries().size()));
       for (Series serie : getListOfSeries()) {
         mapOfSeries.put(serie.getId(), serie);
       }
@@ -403,13 +549,14 @@ public class DataModel {
       for (Book book : getListOfBooks()) {
         List<Book> books = mapOfBooksBySeries.get(book.getSeries());
         if (books == null) {
-          books = new LinkedList<Book>();
+          books = new ArrayList<Book>();
           Series series = book.getSeries();
           if (series != null)
             mapOfBooksBySeries.put(series, books);
         }
         books.add(book);
       }
+      Helper.trimToSize(mapOfBooksBySeries.values());
     }
     return mapOfBooksBySeries;
   }
@@ -420,13 +567,14 @@ public class DataModel {
       for (Book book : getListOfBooks()) {
         List<Book> books = mapOfBooksByRating.get(book.getRating());
         if (books == null) {
-          books = new LinkedList<Book>();
+          books = new ArrayList<Book>();
           BookRating rating = book.getRating();
           if (rating != null)
             mapOfBooksByRating.put(rating, books);
         }
         books.add(book);
       }
+      Helper.trimToSize(mapOfBooksByRating.values());
     }
     return mapOfBooksByRating;
   }
@@ -440,7 +588,7 @@ public class DataModel {
 
   public static Map<String, Publisher> getMapOfPublishers() {
     if (mapOfPublishers == null) {
-      mapOfPublishers = new HashMap<String, Publisher>();
+      mapOfPublishers = new HashMap<String, Publisher>(Helper.hashCapacity(getListOfPublishers().size()));
       for (Publisher publisher : getListOfPublishers()) {
         mapOfPublishers.put(publisher.getId(), publisher);
       }
@@ -455,11 +603,12 @@ public class DataModel {
         Publisher publisher = book.getPublisher();
         List<Book> books = mapOfBooksByPublisher.get(publisher);
         if (books == null) {
-          books = new LinkedList<Book>();
+          books = new ArrayList<Book>();
           mapOfBooksByPublisher.put(publisher, books);
         }
         books.add(book);
       }
+      Helper.trimToSize(mapOfBooksByPublisher.values());
     }
     return mapOfBooksByPublisher;
   }
@@ -524,7 +673,7 @@ public class DataModel {
       DateRange range = DateRange.valueOf(book.getTimestamp());
       List<Book> list = splitByDate.get(range);
       if (list == null) {
-        list = new LinkedList<Book>();
+        list = new ArrayList<Book>();
         splitByDate.put(range, list);
       }
       list.add(book);
@@ -541,55 +690,47 @@ public class DataModel {
   public static <T extends SplitableByLetter> Map<String, List<T>> splitByLetter(List<T> objects, Comparator<T> comparator) {
     Map<String, List<T>> splitMap = new HashMap<String, List<T>>();
 
-    // construct a list of all strings to split
-    Vector<String> stringsToSplit = new Vector<String>(objects.size());
-    String commonPart = null;
+    // find the length of the part common to all the split keys
+    // (compared in place against the first key so nothing is allocated)
+    String firstKey = null;
+    int commonLength = 0;
     for (T object : objects) {
       if (object == null)
         continue;
-      String string = object.getTitleToSplitByLetter();
-
-      // remove any diacritic mark
-      String temp = Normalizer.normalize(string, Normalizer.Form.NFD);
-      Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
-      String norm = pattern.matcher(temp).replaceAll("");
-      string = norm;
-      stringsToSplit.add(string);
-
-      // find the common part
-      if (commonPart == null) {
-        commonPart = string.toUpperCase();
-      } else if (commonPart.length() > 0) {
-        String tempCommonPart = commonPart;
-        while (tempCommonPart.length() > 0 && !string.toUpperCase().startsWith(tempCommonPart)) {
-          tempCommonPart = tempCommonPart.substring(0, tempCommonPart.length()-1);
-        }
-        commonPart = tempCommonPart.toUpperCase();
+      String key = object.getSplitKey();
+      if (firstKey == null) {
+        firstKey = key;
+        commonLength = key.length();
+      } else if (commonLength > 0) {
+        int max = Math.min(commonLength, key.length());
+        int i = 0;
+        while (i < max && key.charAt(i) == firstKey.charAt(i))
+          i++;
+        commonLength = i;
       }
     }
 
     // note the position of the first different char
-    int firstDifferentCharPosition = commonPart.length();
+    int firstDifferentCharPosition = commonLength;
 
     // browse all objects and split them up
-    for (int i=0; i<objects.size(); i++) {
-      T object = objects.get(i);
+    for (T object : objects) {
       if (object == null)
         continue;
 
-      String string = stringsToSplit.get(i);
-      String discriminantPart = "_";
-      if (Helper.isNotNullOrEmpty(string)) {
-        if (firstDifferentCharPosition + 1 >= string.length())
-          discriminantPart = string.toUpperCase();
+      String key = object.getSplitKey();
+      String discriminantPart;
+      if (key.length() > 0) {
+        if (firstDifferentCharPosition + 1 >= key.length())
+          discriminantPart = key;
         else
-          discriminantPart = string.substring(0, firstDifferentCharPosition+1).toUpperCase();
+          discriminantPart = key.substring(0, firstDifferentCharPosition+1);
 
         // find the already existing list (of items split by this discriminant part)
         List<T> list = splitMap.get(discriminantPart);
         if (list == null) {
           // no list yet, create one
-          list = new LinkedList<T>();
+          list = new ArrayList<T>();
           splitMap.put(discriminantPart, list);
         }
 
@@ -676,7 +817,7 @@ public class DataModel {
     List<Language> bookLanguages = book.getBookLanguages();
     List<Tag>tags = null;
     if (bookLanguages != null) {
-      tags = new LinkedList<Tag>();
+      tags = new ArrayList<Tag>(bookLanguages.size());
       for (Language language : bookLanguages) {
         String tagName = IMPLICIT_LANGUAGE_TAG_PREFIX + language.getIso2();
         Tag tag = getMapOfTags().get(tagName);
@@ -707,6 +848,50 @@ public class DataModel {
 
   public static boolean getLibrarySortSeries() {return librarySortSeries; }
 
+  /**
+   * Set the number of threads used by preloadDataModel().
+   * A value of 1 (the default) loads everything serially.
+   */
+  public static void setPreloadThreads(int threads) { preloadThreads = (threads < 1) ? 1 : threads; }
+
+  public static int getPreloadThreads() {return preloadThreads; }
+
+  /**
+   * Set the collator used to build the sort keys of books, authors, series and tags.
+   * Must be set before the data model is loaded as the keys are cached once computed.
+   */
+  public static void setCollator(Collator c) { collator = c; }
+
+  public static Collator getCollator() { return collator; }
+
+  /**
+   * Compute the (case insensitive) collation key for a sort string.
+   * RuleBasedCollator synchronizes internally so this is safe to call
+   * from the page generation threads.
+   *
+   * @param s   The string to sort on
+   * @return    The collation key, or null if s is null
+   */
+  public static CollationKey getSortKey(String s) {
+    return s == null ? null : collator.getCollationKey(s.toUpperCase());
+  }
+
+  /**
+   * Compute the key used by splitByLetter(): the string upper-cased with any
+   * diacritic mark removed.  The result is the same instance as the given
+   * string when nothing had to change, so caching it costs no extra storage.
+   *
+   * @param s   The split string (may be null)
+   * @return    The split key, "" if s is null
+   */
+  public static String getSplitKey(String s) {
+    if (s == null)
+      return "";
+    String key = Normalizer.normalize(s, Normalizer.Form.NFD);
+    key = DIACRITICAL_MARKS.matcher(key).replaceAll("").toUpperCase();
+    return key.equals(s) ? s : key;
+  }
+
   /**
    * Get a Noiseword object given the language string
    */
@@ -781,112 +966,133 @@ public class DataModel {
   /**
    * Apply the specified filter to the current data model
    *
+   * The books to be removed are found in a single pass, and then each
+   * affected list and map is swept once.   Removing the books from the
+   * (linked) lists one at a time is quadratic, which is very slow when the
+   * filter removes most of a large library.
+   *
    * @param filter
    */
   public static void filterDataModel(BookFilter filter) {
-    List<Book> booksCopy = new LinkedList<Book>(DataModel.getListOfBooks());
-    for (Book book : booksCopy) {
-
-      if (!filter.didBookPassThroughFilter(book)) {
-
-        // remove the book from the map of books by tags
-        for (Tag tag : book.getTags()) {
-          List<Book> books = DataModel.getMapOfBooksByTag().get(tag);
-          if (Helper.isNotNullOrEmpty(books))
-            books.remove(book);
-          if (Helper.isNullOrEmpty(books)) {
-            DataModel.getMapOfBooksByTag().remove(tag);
-            DataModel.getListOfTags().remove(tag);
-          }
-        }
-        DataModel.getMapOfTagsByBookId().remove(book.getId());
-
-        // remove the book from the map of books by series
-        Series serie = book.getSeries();
-        List<Book> booksInSerie = DataModel.getMapOfBooksBySeries().get(serie);
-        if (Helper.isNotNullOrEmpty(booksInSerie))
-          booksInSerie.remove(book);
-        if (Helper.isNullOrEmpty(booksInSerie)) {
-          DataModel.getMapOfBooksBySeries().remove(serie);
-          DataModel.getListOfSeries().remove(serie);
-        }
-        DataModel.getMapOfSeriesByBookId().remove(book.getId());
-
-        // remove the book from the map of books by author
-        for (Author author : book.getAuthors()) {
-          List<Book> booksByAuthor = DataModel.getMapOfBooksByAuthor().get(author);
-          if (Helper.isNotNullOrEmpty(booksByAuthor))
-            booksByAuthor.remove(book);
-          if (Helper.isNullOrEmpty(booksByAuthor)) {
-            DataModel.getMapOfBooksByAuthor().remove(author);
-            DataModel.getListOfAuthors().remove(author);
-          }
-        }
-        DataModel.getMapOfAuthorsByBookId().remove(book.getId());
-
-        // remove the book from the map of books by rating
-        BookRating rating = book.getRating();
-        List<Book> booksInRating = DataModel.getMapOfBooksByRating().get(rating);
-        if (Helper.isNotNullOrEmpty(booksInRating))
-          booksInRating.remove(book);
-        if (Helper.isNullOrEmpty(booksInRating)) {
-          DataModel.getMapOfBooksByRating().remove(rating);
-        }
-
-        // remove the book from the map of books by publisher
-        Publisher publisher = book.getPublisher();
-        List<Book> booksByPublisher = DataModel.getMapOfBooksByPublisher().get(publisher);
-        if (Helper.isNotNullOrEmpty(booksByPublisher))
-          booksByPublisher.remove(book);
-        if (Helper.isNullOrEmpty(booksByPublisher)) {
-          DataModel.getMapOfBooksByPublisher().remove(publisher);
-          DataModel.getListOfPublishers().remove(publisher);
-        }
-
-        // remove the book from the list of books
-        DataModel.getListOfBooks().remove(book);
+    List<Book> keptBooks = new ArrayList<Book>(getListOfBooks().size());
+    Set<Book> removedBooks = Collections.newSetFromMap(new IdentityHashMap<Book, Boolean>());
+    for (Book book : getListOfBooks()) {
+      if (filter.didBookPassThroughFilter(book)) {
+        keptBooks.add(book);
+      } else {
+        removedBooks.add(book);
+      }
+    }
 
-        // remove the book from the map of books
-        DataModel.getMapOfBooks().remove(book.getId());
+    if (! removedBooks.isEmpty()) {
+      Set<Tag> tags = Collections.newSetFromMap(new IdentityHashMap<Tag, Boolean>());
+      Set<Series> series = Collections.newSetFromMap(new IdentityHashMap<Series, Boolean>());
+      Set<Author> authors = Collections.newSetFromMap(new IdentityHashMap<Author, Boolean>());
+      Set<BookRating> ratings = Collections.newSetFromMap(new IdentityHashMap<BookRating, Boolean>());
+      Set<Publisher> publishers = Collections.newSetFromMap(new IdentityHashMap<Publisher, Boolean>());
+      for (Book book : removedBooks) {
+        tags.addAll(book.getTags());
+        series.add(book.getSeries());
+        authors.addAll(book.getAuthors());
+        ratings.add(book.getRating());
+        publishers.add(book.getPublisher());
 
         // remove the book from the maps of XXX by bookId
-        DataModel.getMapOfCommentsByBookId().remove(book.getId());
-        DataModel.getMapOfEBookFilesByBookId().remove(book.getId());
+        DataModel.getMapOfTagsByBookId().remove(book.getIntId());
+        DataModel.getMapOfSeriesByBookId().remove(book.getIntId());
+        DataModel.getMapOfAuthorsByBookId().remove(book.getIntId());
+        DataModel.getMapOfCommentsByBookId().remove(book.getIntId());
+        DataModel.getMapOfEBookFilesByBookId().remove(book.getIntId());
 
+        // remove the book from the map of books
+        DataModel.getMapOfBooks().remove(book.getIntId());
       }
+
+      // remove the books from the maps of books by XXX
+      // (the tags, series and authors left empty are removed from their lists below)
+      removeBooks(DataModel.getMapOfBooksByTag(), tags, removedBooks);
+      removeBooks(DataModel.getMapOfBooksBySeries(), series, removedBooks);
+      removeBooks(DataModel.getMapOfBooksByAuthor(), authors, removedBooks);
+      removeBooks(DataModel.getMapOfBooksByRating(), ratings, removedBooks);
+      Set<Publisher> unusedPublishers = removeBooks(DataModel.getMapOfBooksByPublisher(), publishers, removedBooks);
+      removeItems(DataModel.getListOfPublishers(), unusedPublishers);
+
+      // remove the books from the list of books
+      DataModel.getListOfBooks().clear();
+      DataModel.getListOfBooks().addAll(keptBooks);
     }
 
     /* check that no empty list exist */
 
-    // check that no books by tag list is empty
-    LinkedList<Tag> tagList = new LinkedList<Tag>(DataModel.getListOfTags());
-    for (Tag tag : tagList) {
-      List<Book> books = DataModel.getMapOfBooksByTag().get(tag);
+    removeUnusedItems(DataModel.getListOfTags(), DataModel.getMapOfBooksByTag());
+    removeUnusedItems(DataModel.getListOfSeries(), DataModel.getMapOfBooksBySeries());
+    removeUnusedItems(DataModel.getListOfAuthors(), DataModel.getMapOfBooksByAuthor());
+  }
+
+  /**
+   * Remove books from the lists of books held against a set of keys.
+   * Any key left without books is removed from the map.
+   *
+   * @param map           Map of books by XXX
+   * @param keys          The keys whose lists may contain the books
+   * @param booksToRemove
+   * @return              The keys that were removed from the map
+   */
+  private static <T> Set<T> removeBooks(Map<T, List<Book>> map, Set<T> keys, Set<Book> booksToRemove) {
+    Set<T> removedKeys = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    for (T key : keys) {
+      List<Book> books = map.get(key);
+      if (books != null) {
+        removeItems(books, booksToRemove);
+      }
       if (Helper.isNullOrEmpty(books)) {
-        DataModel.getMapOfBooksByTag().remove(tag);
-        DataModel.getListOfTags().remove(tag);
+        map.remove(key);
+        removedKeys.add(key);
       }
     }
+    return removedKeys;
+  }
 
-    // check that no books by series list is empty
-    LinkedList<Series> seriesList = new LinkedList<Series>(DataModel.getListOfSeries());
-    for (Series serie : seriesList) {
-      List<Book> booksInSerie = DataModel.getMapOfBooksBySeries().get(serie);
-      if (Helper.isNullOrEmpty(booksInSerie)) {
-        DataModel.getMapOfBooksBySeries().remove(serie);
-        DataModel.getListOfSeries().remove(serie);
+  /**
+   * Remove the given items from a list, rebuilding it in a single pass
+   *
+   * @param list
+   * @param itemsToRemove
+   */
+  private static <T> void removeItems(List<T> list, Set<T> itemsToRemove) {
+    if (itemsToRemove.isEmpty()) {
+      return;
+    }
+    List<T> keptItems = new ArrayList<T>(list.size());
+    for (T item : list) {
+      if (!itemsToRemove.contains(item)) {
+        keptItems.add(item);
       }
     }
+    if (keptItems.size() != list.size()) {
+      list.clear();
+      list.addAll(keptItems);
+    }
+  }
 
-    // check that no books by author list is empty
-    LinkedList<Author> authorList = new LinkedList<Author>(DataModel.getListOfAuthors());
-    for (Author author : authorList) {
-      List<Book> booksByAuthor = DataModel.getMapOfBooksByAuthor().get(author);
-      if (Helper.isNullOrEmpty(booksByAuthor)) {
-        DataModel.getMapOfBooksByAuthor().remove(author);
-        DataModel.getListOfAuthors().remove(author);
+  /**
+   * Remove the items that no longer have any books from a list (and from the map of books by item)
+   *
+   * @param list
+   * @param mapOfBooks
+   */
+  private static <T> void removeUnusedItems(List<T> list, Map<T, List<Book>> mapOfBooks) {
+    List<T> keptItems = new ArrayList<T>(list.size());
+    for (T item : list) {
+      if (Helper.isNullOrEmpty(mapOfBooks.get(item))) {
+        mapOfBooks.remove(item);
+      } else {
+        keptItems.add(item);
       }
     }
-
+    if (keptItems.size() != list.size()) {
+      list.clear();
+      list.addAll(keptItems);
+    }
   }
 }
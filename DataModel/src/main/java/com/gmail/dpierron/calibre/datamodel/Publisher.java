@@ -6,6 +6,7 @@ public class Publisher implements SplitableByLetter, Comparable<Publisher> {
   private final String id;
   private String name;
   private final String sort;
+  private String splitKey;
   private boolean done;
   // Flags
   // NOTE: Using byte plus bit settings is more memory efficient than using boolean types
@@ -55,6 +56,12 @@ public class Publisher implements SplitableByLetter, Comparable<Publisher> {
     return getName();
   }
 
+  public String getSplitKey() {
+    if (splitKey == null)
+      splitKey = DataModel.getSplitKey(getTitleToSplitByLetter());
+    return splitKey;
+  }
+
   /* Comparable interface, used to sort an authors list */
 
   public int compareTo(Publisher o) {
@@ -5,6 +5,7 @@ package com.gmail.dpierron.calibre.datamodel;
  */
 import com.gmail.dpierron.tools.Helper;
 
+import java.text.CollationKey;
 import java.util.Locale;
 
 
@@ -13,6 +14,8 @@ public class Series implements SplitableByLetter {
   private String name;          // Display name
   private String sort;          // Sort name set in Calibre
   private Locale locale;        // Locale for this series.  English if not known
+  private CollationKey sortKey; // Cached collation key of getTitleToSplitByLetter()
+  private String splitKey;      // Cached DataModel.getSplitKey() of getTitleToSplitByLetter()
   // private boolean done = false;       // sse true when this series has been generated
   // private boolean referenced = false; // Set true if referenced (which means entry needs generating
   // Flags
@@ -81,6 +84,22 @@ public class Series implements SplitableByLetter {
     return DataModel.getLibrarySortSeries() ? getSort(): getName();
   }
 
+  /**
+   * Get the collation key for the split/sort string.
+   * Computed on first use so that sorts do not re-collate the string on every compare.
+   */
+  public CollationKey getSortKey() {
+    if (sortKey == null)
+      sortKey = DataModel.getSortKey(getTitleToSplitByLetter());
+    return sortKey;
+  }
+
+  public String getSplitKey() {
+    if (splitKey == null)
+      splitKey = DataModel.getSplitKey(getTitleToSplitByLetter());
+    return splitKey;
+  }
+
   public void setDone() {
     flags |= FLAG_DONE;
   }
@@ -8,4 +8,10 @@ package com.gmail.dpierron.calibre.datamodel;
 
 public interface SplitableByLetter {
   public String getTitleToSplitByLetter();
+
+  /**
+   * The upper-cased, diacritic free form of getTitleToSplitByLetter()
+   * as returned by DataModel.getSplitKey().  Implementations cache it.
+   */
+  public String getSplitKey();
 }
@@ -2,6 +2,7 @@ package com.gmail.dpierron.calibre.datamodel;
 
 import com.gmail.dpierron.tools.Helper;
 
+import java.text.CollationKey;
 import java.util.List;
 
 
@@ -9,6 +10,8 @@ public class Tag implements SplitableByLetter, Comparable<Tag> {
   private final String id;
   private final String name;
   private String[] partsOfTag;
+  private CollationKey sortKey;
+  private String splitKey;
   // Flags
   // NOTE: Using byte plus bit settings is more memory efficient than using boolean types
   private final static byte FLAG_ALL_CLEAR = 0;
@@ -38,6 +41,22 @@ public class Tag implements SplitableByLetter, Comparable<Tag> {
     return getName();
   }
 
+  /**
+   * Get the collation key for the split/sort string.
+   * Computed on first use so that sorts do not re-collate the string on every compare.
+   */
+  public CollationKey getSortKey() {
+    if (sortKey == null)
+      sortKey = DataModel.getSortKey(getTitleToSplitByLetter());
+    return sortKey;
+  }
+
+  public String getSplitKey() {
+    if (splitKey == null)
+      splitKey = DataModel.getSplitKey(getTitleToSplitByLetter());
+    return splitKey;
+  }
+
   public String[] getPartsOfTag(String splitTagsOn) {
     if (partsOfTag == null) {
       List<String> parts = Helper.tokenize(getName(), splitTagsOn);
@@ -4,7 +4,9 @@ import com.gmail.dpierron.calibre.datamodel.Author;
 import com.gmail.dpierron.calibre.datamodel.Book;
 import com.gmail.dpierron.tools.Helper;
 
-public class AuthorFilter implements BookFilter {
+import java.util.BitSet;
+
+public class AuthorFilter implements IndexedBookFilter {
 
   /** the filter string */
   private final String filterValue;
@@ -25,15 +27,25 @@ public class AuthorFilter implements BookFilter {
       return true;
 
     for (Author author : book.getAuthors()) {
-      if (contains) {
-        if (author.getName().toUpperCase().contains(filterValue) || author.getSort().toUpperCase().contains(filterValue))
-          return true;
-      } else {
-        if (author.getName().equalsIgnoreCase(filterValue) || author.getSort().equalsIgnoreCase(filterValue))
-          return true;
-      }
+      if (matches(author))
+        return true;
     }
 
     return false;
   }
+
+  public BitSet getMatchingBooks(BookIndex index) {
+    if (Helper.isNullOrEmpty(filterValue))
+      return index.all();
+
+    return index.matchValues(index.getAuthorIndex(), new BookIndex.ValueMatcher<Author>() {
+      public boolean matches(Author author) {
+        return AuthorFilter.this.matches(author);
+      }
+    });
+  }
+
+  private boolean matches(Author author) {
+    return FilterHelper.matches(author.getName(), filterValue, contains) || FilterHelper.matches(author.getSort(), filterValue, contains);
+  }
 }
@@ -0,0 +1,254 @@
+package com.gmail.dpierron.calibre.datamodel.filter;
+
+import com.gmail.dpierron.calibre.datamodel.Author;
+import com.gmail.dpierron.calibre.datamodel.Book;
+import com.gmail.dpierron.calibre.datamodel.BookRating;
+import com.gmail.dpierron.calibre.datamodel.EBookFile;
+import com.gmail.dpierron.calibre.datamodel.EBookFormat;
+import com.gmail.dpierron.calibre.datamodel.Language;
+import com.gmail.dpierron.calibre.datamodel.Publisher;
+import com.gmail.dpierron.calibre.datamodel.Series;
+import com.gmail.dpierron.calibre.datamodel.Tag;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index over a list of books that allows filters to be evaluated
+ * as set operations rather than book by book.
+ *
+ * Each book is identified by its position in the list.   For each tag,
+ * author, series, publisher, format and language used by the books
+ * the set of books that use it is held as a BitSet.  A filter then only
+ * has to test each distinct value once, and boolean filters combine the
+ * resulting sets with AND/OR/NOT.   Each part of the index is only built
+ * the first time a filter needs it.
+ *
+ * The index does not track changes to the books, so it should only be
+ * used while the books (and the list) are not being modified.
+ */
+public class BookIndex {
+
+  private final Book[] books;
+
+  private Map<Tag, BitSet> tagIndex;
+  private Map<Author, BitSet> authorIndex;
+  private Map<Series, BitSet> seriesIndex;
+  private Map<Publisher, BitSet> publisherIndex;
+  private Map<EBookFormat, BitSet> formatIndex;
+  private Map<Language, BitSet> languageIndex;
+  private Map<Character, BitSet> ratingIndex;
+
+  public BookIndex(List<Book> books) {
+    this.books = books.toArray(new Book[books.size()]);
+  }
+
+  public int size() {
+    return books.length;
+  }
+
+  /**
+   * @return A new set containing every book in the index
+   */
+  BitSet all() {
+    BitSet result = new BitSet(books.length);
+    result.set(0, books.length);
+    return result;
+  }
+
+  /**
+   * Get the books that pass a filter.
+   *
+   * Filters that cannot use the index are evaluated book by book.
+   *
+   * @param filter
+   * @return A new set of the books that pass (which the caller may modify)
+   */
+  BitSet match(BookFilter filter) {
+    if (filter instanceof IndexedBookFilter) {
+      return ((IndexedBookFilter) filter).getMatchingBooks(this);
+    }
+    BitSet result = new BitSet(books.length);
+    for (int i = 0; i < books.length; i++) {
+      if (filter.didBookPassThroughFilter(books[i])) {
+        result.set(i);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get the books in a set, in the same order as the original list
+   *
+   * @param set
+   * @return
+   */
+  List<Book> getBooks(BitSet set) {
+    List<Book> result = new ArrayList<Book>(set.cardinality());
+    for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+      result.add(books[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Get the union of the sets of books for all the values that a filter accepts.
+   *
+   * @param index   The part of the index for the type of value
+   * @param matcher Decides whether a value is accepted
+   * @return
+   */
+  <T> BitSet matchValues(Map<T, BitSet> index, ValueMatcher<T> matcher) {
+    BitSet result = new BitSet(books.length);
+    for (Map.Entry<T, BitSet> entry : index.entrySet()) {
+      if (matcher.matches(entry.getKey())) {
+        result.or(entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Decides whether a single value (tag, author, etc) is accepted by a filter
+   */
+  interface ValueMatcher<T> {
+    boolean matches(T value);
+  }
+
+  /**
+   * Extracts the values of a particular type from a book
+   */
+  private interface ValueExtractor<T> {
+    Collection<T> getValues(Book book);
+  }
+
+  /**
+   * Build the sets of books for each distinct value of a particular type.
+   *
+   * The values are compared by identity (the data model shares the objects
+   * between books) as it does not matter if two equal values end up as
+   * separate entries.
+   */
+  private <T> Map<T, BitSet> buildIndex(Map<T, BitSet> index, ValueExtractor<T> extractor) {
+    for (int i = 0; i < books.length; i++) {
+      Collection<T> values = extractor.getValues(books[i]);
+      if (values == null) {
+        continue;
+      }
+      for (T value : values) {
+        if (value == null) {
+          continue;
+        }
+        BitSet set = index.get(value);
+        if (set == null) {
+          set = new BitSet(books.length);
+          index.put(value, set);
+        }
+        set.set(i);
+      }
+    }
+    return index;
+  }
+
+  private static <T> Collection<T> singleton(T value) {
+    return value == null ? null : Collections.singletonList(value);
+  }
+
+  Map<Tag, BitSet> getTagIndex() {
+    if (tagIndex == null) {
+      tagIndex = buildIndex(new IdentityHashMap<Tag, BitSet>(), new ValueExtractor<Tag>() {
+        public Collection<Tag> getValues(Book book) {
+          return book.getTags();
+        }
+      });
+    }
+    return tagIndex;
+  }
+
+  Map<Author, BitSet> getAuthorIndex() {
+    if (authorIndex == null) {
+      authorIndex = buildIndex(new IdentityHashMap<Author, BitSet>(), new ValueExtractor<Author>() {
+        public Collection<Author> getValues(Book book) {
+          return book.getAuthors();
+        }
+      });
+    }
+    return authorIndex;
+  }
+
+  Map<Series, BitSet> getSeriesIndex() {
+    if (seriesIndex == null) {
+      seriesIndex = buildIndex(new IdentityHashMap<Series, BitSet>(), new ValueExtractor<Series>() {
+        public Collection<Series> getValues(Book book) {
+          return singleton(book.getSeries());
+        }
+      });
+    }
+    return seriesIndex;
+  }
+
+  Map<Publisher, BitSet> getPublisherIndex() {
+    if (publisherIndex == null) {
+      publisherIndex = buildIndex(new IdentityHashMap<Publisher, BitSet>(), new ValueExtractor<Publisher>() {
+        public Collection<Publisher> getValues(Book book) {
+          return singleton(book.getPublisher());
+        }
+      });
+    }
+    return publisherIndex;
+  }
+
+  Map<EBookFormat, BitSet> getFormatIndex() {
+    if (formatIndex == null) {
+      formatIndex = buildIndex(new IdentityHashMap<EBookFormat, BitSet>(), new ValueExtractor<EBookFormat>() {
+        public Collection<EBookFormat> getValues(Book book) {
+          List<EBookFormat> formats = new ArrayList<EBookFormat>();
+          for (EBookFile file : book.getFiles()) {
+            formats.add(file.getFormat());
+          }
+          return formats;
+        }
+      });
+    }
+    return formatIndex;
+  }
+
+  Map<Language, BitSet> getLanguageIndex() {
+    if (languageIndex == null) {
+      languageIndex = buildIndex(new IdentityHashMap<Language, BitSet>(), new ValueExtractor<Language>() {
+        public Collection<Language> getValues(Book book) {
+          return book.getBookLanguages();
+        }
+      });
+    }
+    return languageIndex;
+  }
+
+  /**
+   * The ratings are indexed by the character used in rating queries
+   * (with '0' used for books that are not rated)
+   */
+  Map<Character, BitSet> getRatingIndex() {
+    if (ratingIndex == null) {
+      ratingIndex = buildIndex(new HashMap<Character, BitSet>(), new ValueExtractor<Character>() {
+        public Collection<Character> getValues(Book book) {
+          return singleton(getRatingChar(book));
+        }
+      });
+    }
+    return ratingIndex;
+  }
+
+  static char getRatingChar(Book book) {
+    BookRating rating = book.getRating();
+    if (rating != null && rating != BookRating.NOTRATED)
+      return rating.getCharEquivalent();
+    return '0';
+  }
+}
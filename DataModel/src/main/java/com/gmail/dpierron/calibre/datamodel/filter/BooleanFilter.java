@@ -2,7 +2,9 @@ package com.gmail.dpierron.calibre.datamodel.filter;
 
 import com.gmail.dpierron.calibre.datamodel.Book;
 
-public abstract class BooleanFilter implements BookFilter {
+import java.util.BitSet;
+
+public abstract class BooleanFilter implements IndexedBookFilter {
 
   private BookFilter leftFilter = new PassthroughFilter();
   private BookFilter rightFilter = new PassthroughFilter();
@@ -41,4 +43,14 @@ public abstract class BooleanFilter implements BookFilter {
       return getLeftFilter().didBookPassThroughFilter(book) && getRightFilter().didBookPassThroughFilter(book);
   }
 
+  public BitSet getMatchingBooks(BookIndex index) {
+    BitSet result = index.match(getLeftFilter());
+    if (isOrFilter) {
+      result.or(index.match(getRightFilter()));
+    } else if (!result.isEmpty()) {
+      result.and(index.match(getRightFilter()));
+    }
+    return result;
+  }
+
 }
@@ -2,13 +2,16 @@ package com.gmail.dpierron.calibre.datamodel.filter;
 
 import com.gmail.dpierron.calibre.datamodel.Book;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class FilterHelper {
   public static List<Book> filter(BookFilter filter, List<Book> books) {
     assert filter != null && books != null: "Program Error: invalid parameter";
-    List<Book> result = new LinkedList<Book>();
+    if (books != null && filter instanceof IndexedBookFilter) {
+      return filter(filter, new BookIndex(books));
+    }
+    List<Book> result = new ArrayList<Book>();
     if (books != null) {
       for (Book book : books) {
         if (filter.didBookPassThroughFilter(book)) {
@@ -18,4 +21,35 @@ public class FilterHelper {
     }
     return result;
   }
+
+  /**
+   * Filter the books in an index.
+   *
+   * When several filters are applied to the same list of books an index
+   * should be built once and used for all of them.
+   *
+   * @param filter
+   * @param index
+   * @return The books that pass the filter in their original order
+   */
+  public static List<Book> filter(BookFilter filter, BookIndex index) {
+    assert filter != null && index != null: "Program Error: invalid parameter";
+    return index.getBooks(index.match(filter));
+  }
+
+  /**
+   * Check a name against the value given in a filter
+   *
+   * @param name        The name to check
+   * @param filterValue The filter value (already uppercased if contains is set)
+   * @param contains    if true, a name that contains the filter value matches,
+   *                    otherwise the name must equal it (ignoring case)
+   * @return
+   */
+  static boolean matches(String name, String filterValue, boolean contains) {
+    if (contains)
+      return name.toUpperCase().contains(filterValue);
+    else
+      return name.equalsIgnoreCase(filterValue);
+  }
 }
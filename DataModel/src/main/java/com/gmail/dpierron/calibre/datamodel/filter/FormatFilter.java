@@ -2,9 +2,12 @@ package com.gmail.dpierron.calibre.datamodel.filter;
 
 import com.gmail.dpierron.calibre.datamodel.Book;
 import com.gmail.dpierron.calibre.datamodel.EBookFile;
+import com.gmail.dpierron.calibre.datamodel.EBookFormat;
 import com.gmail.dpierron.tools.Helper;
 
-public class FormatFilter implements BookFilter {
+import java.util.BitSet;
+
+public class FormatFilter implements IndexedBookFilter {
 
   /** the filter string */
   private final String filterValue;
@@ -25,14 +28,20 @@ public class FormatFilter implements BookFilter {
       return true;
 
     for (EBookFile file : book.getFiles()) {
-      if (contains) {
-        if (file.getFormat().getName().toUpperCase().contains(filterValue))
-          return true;
-      } else {
-        if (file.getFormat().getName().equalsIgnoreCase(filterValue))
-          return true;
-      }
+      if (FilterHelper.matches(file.getFormat().getName(), filterValue, contains))
+        return true;
     }
     return false;
   }
+
+  public BitSet getMatchingBooks(BookIndex index) {
+    if (Helper.isNullOrEmpty(filterValue))
+      return index.all();
+
+    return index.matchValues(index.getFormatIndex(), new BookIndex.ValueMatcher<EBookFormat>() {
+      public boolean matches(EBookFormat format) {
+        return FilterHelper.matches(format.getName(), filterValue, contains);
+      }
+    });
+  }
 }
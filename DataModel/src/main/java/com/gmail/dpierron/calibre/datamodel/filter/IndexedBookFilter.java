@@ -0,0 +1,18 @@
+package com.gmail.dpierron.calibre.datamodel.filter;
+
+import java.util.BitSet;
+
+/**
+ * A filter that can be evaluated against a BookIndex as a whole
+ * rather than one book at a time.
+ *
+ * The result must be the same as calling didBookPassThroughFilter()
+ * for each book in the index.
+ */
+public interface IndexedBookFilter extends BookFilter {
+  /**
+   * @param index
+   * @return A new set (which the caller may modify) of the books in the index that pass the filter
+   */
+  public BitSet getMatchingBooks(BookIndex index);
+}
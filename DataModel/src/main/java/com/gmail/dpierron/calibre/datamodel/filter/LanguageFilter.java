@@ -4,9 +4,10 @@ import com.gmail.dpierron.calibre.datamodel.Book;
 import com.gmail.dpierron.calibre.datamodel.Language;
 import com.gmail.dpierron.tools.Helper;
 
+import java.util.BitSet;
 import java.util.List;
 
-public class LanguageFilter implements BookFilter {
+public class LanguageFilter implements IndexedBookFilter {
 
   private final String requiredLanguage;
 
@@ -32,4 +33,15 @@ public class LanguageFilter implements BookFilter {
     }
     return false;
   }
+
+  public BitSet getMatchingBooks(BookIndex index) {
+    if (Helper.isNullOrEmpty(requiredLanguage))
+      return index.all();
+
+    return index.matchValues(index.getLanguageIndex(), new BookIndex.ValueMatcher<Language>() {
+      public boolean matches(Language language) {
+        return language.equals(requiredLanguage); // Language overrides equals()
+      }
+    });
+  }
 }
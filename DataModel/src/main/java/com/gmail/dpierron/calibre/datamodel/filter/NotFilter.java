@@ -2,7 +2,9 @@ package com.gmail.dpierron.calibre.datamodel.filter;
 
 import com.gmail.dpierron.calibre.datamodel.Book;
 
-public class NotFilter implements BookFilter {
+import java.util.BitSet;
+
+public class NotFilter implements IndexedBookFilter {
   private final BookFilter negatedFilter;
 
   public NotFilter(BookFilter negatedFilter) {
@@ -12,4 +14,10 @@ public class NotFilter implements BookFilter {
   public boolean didBookPassThroughFilter(Book book) {
     return !negatedFilter.didBookPassThroughFilter(book);
   }
+
+  public BitSet getMatchingBooks(BookIndex index) {
+    BitSet result = index.match(negatedFilter);
+    result.flip(0, index.size());
+    return result;
+  }
 }
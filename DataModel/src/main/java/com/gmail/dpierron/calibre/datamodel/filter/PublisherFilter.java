@@ -1,9 +1,12 @@
 package com.gmail.dpierron.calibre.datamodel.filter;
 
 import com.gmail.dpierron.calibre.datamodel.Book;
+import com.gmail.dpierron.calibre.datamodel.Publisher;
 import com.gmail.dpierron.tools.Helper;
 
-public class PublisherFilter implements BookFilter {
+import java.util.BitSet;
+
+public class PublisherFilter implements IndexedBookFilter {
 
   /**
    * the filter string
@@ -28,15 +31,25 @@ public class PublisherFilter implements BookFilter {
       return true;
 
     if (Helper.isNotNullOrEmpty(book.getPublisher())) {
-      if (contains) {
-        if (book.getPublisher().getName().toUpperCase().contains(filterValue) || book.getPublisher().getSort().toUpperCase().contains(filterValue))
-          return true;
-      } else {
-        if (book.getPublisher().getName().equalsIgnoreCase(filterValue) || book.getPublisher().getSort().equalsIgnoreCase(filterValue))
-          return true;
-      }
+      if (matches(book.getPublisher()))
+        return true;
     }
 
     return false;
   }
+
+  public BitSet getMatchingBooks(BookIndex index) {
+    if (Helper.isNullOrEmpty(filterValue))
+      return index.all();
+
+    return index.matchValues(index.getPublisherIndex(), new BookIndex.ValueMatcher<Publisher>() {
+      public boolean matches(Publisher publisher) {
+        return PublisherFilter.this.matches(publisher);
+      }
+    });
+  }
+
+  private boolean matches(Publisher publisher) {
+    return FilterHelper.matches(publisher.getName(), filterValue, contains) || FilterHelper.matches(publisher.getSort(), filterValue, contains);
+  }
 }
@@ -1,10 +1,11 @@
 package com.gmail.dpierron.calibre.datamodel.filter;
 
 import com.gmail.dpierron.calibre.datamodel.Book;
-import com.gmail.dpierron.calibre.datamodel.BookRating;
 import com.gmail.dpierron.tools.Helper;
 
-public class RatingFilter implements BookFilter {
+import java.util.BitSet;
+
+public class RatingFilter implements IndexedBookFilter {
 
   private final char rating;
   private final char comparator;
@@ -24,11 +25,24 @@ public class RatingFilter implements BookFilter {
     if (Helper.isNullOrEmpty(comparator))
       return true;
 
-    char bookRating = '0';
-    BookRating rating1 = book.getRating();
-    if (rating1 != null && rating1 != BookRating.NOTRATED)
-      bookRating = rating1.getCharEquivalent();
+    return matches(BookIndex.getRatingChar(book));
+  }
 
+  public BitSet getMatchingBooks(BookIndex index) {
+    if (Helper.isNullOrEmpty(rating))
+      return index.all();
+
+    if (Helper.isNullOrEmpty(comparator))
+      return index.all();
+
+    return index.matchValues(index.getRatingIndex(), new BookIndex.ValueMatcher<Character>() {
+      public boolean matches(Character bookRating) {
+        return RatingFilter.this.matches(bookRating);
+      }
+    });
+  }
+
+  private boolean matches(char bookRating) {
     switch (comparator) {
       case '=':
         return bookRating == rating;
@@ -39,6 +53,5 @@ public class RatingFilter implements BookFilter {
       default:
         return false;
     }
-
   }
 }
@@ -1,9 +1,12 @@
 package com.gmail.dpierron.calibre.datamodel.filter;
 
 import com.gmail.dpierron.calibre.datamodel.Book;
+import com.gmail.dpierron.calibre.datamodel.Series;
 import com.gmail.dpierron.tools.Helper;
 
-public class SeriesFilter implements BookFilter {
+import java.util.BitSet;
+
+public class SeriesFilter implements IndexedBookFilter {
 
   /**
    * the filter string
@@ -28,15 +31,21 @@ public class SeriesFilter implements BookFilter {
       return true;
 
     if (Helper.isNotNullOrEmpty(book.getSeries())) {
-      if (contains) {
-        if (book.getSeries().getName().toUpperCase().contains(filterValue))
-          return true;
-      } else {
-        if (book.getSeries().getName().equalsIgnoreCase(filterValue))
-          return true;
-      }
+      if (FilterHelper.matches(book.getSeries().getName(), filterValue, contains))
+        return true;
     }
 
     return false;
   }
+
+  public BitSet getMatchingBooks(BookIndex index) {
+    if (Helper.isNullOrEmpty(filterValue))
+      return index.all();
+
+    return index.matchValues(index.getSeriesIndex(), new BookIndex.ValueMatcher<Series>() {
+      public boolean matches(Series series) {
+        return FilterHelper.matches(series.getName(), filterValue, contains);
+      }
+    });
+  }
 }
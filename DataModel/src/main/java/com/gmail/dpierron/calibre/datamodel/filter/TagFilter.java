@@ -4,7 +4,9 @@ import com.gmail.dpierron.calibre.datamodel.Book;
 import com.gmail.dpierron.calibre.datamodel.Tag;
 import com.gmail.dpierron.tools.Helper;
 
-public class TagFilter implements BookFilter {
+import java.util.BitSet;
+
+public class TagFilter implements IndexedBookFilter {
 
   /** the filter string */
   private final String filterValue;
@@ -25,14 +27,20 @@ public class TagFilter implements BookFilter {
       return true;
 
     for (Tag tag : book.getTags()) {
-      if (contains) {
-        if (tag.getName().toUpperCase().contains(filterValue))
-          return true;
-      } else {
-        if (tag.getName().equalsIgnoreCase(filterValue))
-          return true;
-      }
+      if (FilterHelper.matches(tag.getName(), filterValue, contains))
+        return true;
     }
     return false;
   }
+
+  public BitSet getMatchingBooks(BookIndex index) {
+    if (Helper.isNullOrEmpty(filterValue))
+      return index.all();
+
+    return index.matchValues(index.getTagIndex(), new BookIndex.ValueMatcher<Tag>() {
+      public boolean matches(Tag tag) {
+        return FilterHelper.matches(tag.getName(), filterValue, contains);
+      }
+    });
+  }
 }
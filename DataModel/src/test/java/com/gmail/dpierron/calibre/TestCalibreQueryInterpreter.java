@@ -5,6 +5,7 @@ import com.gmail.dpierron.calibre.configuration.ReadOnlyConfigurationInterface;
 import com.gmail.dpierron.calibre.datamodel.Book;
 import com.gmail.dpierron.calibre.datamodel.DataModel;
 import com.gmail.dpierron.calibre.datamodel.filter.BookFilter;
+import com.gmail.dpierron.calibre.datamodel.filter.BookIndex;
 import com.gmail.dpierron.calibre.datamodel.filter.CalibreQueryInterpreter;
 import com.gmail.dpierron.calibre.datamodel.filter.FilterHelper;
 import com.gmail.dpierron.calibre.datamodel.filter.PassthroughFilter;
@@ -19,6 +20,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.LinkedList;
 import java.util.List;
 
 public class TestCalibreQueryInterpreter {
@@ -109,6 +111,26 @@ public class TestCalibreQueryInterpreter {
     }
   }
 
+  @Test
+  public void testIndexMatchesBookByBook() throws CalibreSavedSearchInterpretException {
+    final String[] CALIBRE_QUERIES = {
+        "tags:\"=State:ToRead\" and not (tags:\"=Length:SHORT\")",
+        "not tags:\"=Interest:1\" or (rating:>2 and languages:\"=French\")",
+        "authors:\"Asimov\" or series:\"Fleet\" or publisher:\"Flammarion\"",
+        "not (formats:\"=EPUB\" and series:true)",
+    };
+    BookIndex index = new BookIndex(DataModel.getListOfBooks());
+    for (String query : CALIBRE_QUERIES) {
+      BookFilter bf = new CalibreQueryInterpreter(query).interpret();
+      List<Book> expected = new LinkedList<Book>();
+      for (Book book : DataModel.getListOfBooks()) {
+        if (bf.didBookPassThroughFilter(book))
+          expected.add(book);
+      }
+      Assert.assertEquals(query, expected, FilterHelper.filter(bf, index));
+    }
+  }
+
   @Test
   public void testPublisher() throws CalibreSavedSearchInterpretException {/* Publisher */
     {
@@ -0,0 +1,107 @@
+package com.gmail.dpierron.calibre.cache;
+/**
+ * Compare the throughput of the ways of calculating file checksums.
+ *
+ * This is not run as part of the normal tests as it takes a while.
+ * To run it use something like:
+ *    java -cp <classpath> com.gmail.dpierron.calibre.cache.ChecksumBenchmark [folder]
+ *
+ * A set of 1000 files of mixed sizes (from a few KB up to several MB,
+ * roughly the mix found in a Calibre library) is generated in the given
+ * folder (or the temporary folder) and each method is timed over the set.
+ * Each method is run twice and the second timing reported so that all
+ * methods see the files in the OS file cache.
+ */
+
+import java.io.*;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.CheckedInputStream;
+
+public class ChecksumBenchmark {
+
+  private final static int FILE_COUNT = 1000;
+
+  public static void main(String[] args) throws IOException {
+    File folder = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"), "c2o_checksum_benchmark");
+    File[] files = createFiles(folder);
+    long totalBytes = 0;
+    for (File f : files) {
+      totalBytes += f.length();
+    }
+    System.out.println(FILE_COUNT + " files, " + (totalBytes / (1024 * 1024)) + " MB");
+
+    for (int pass = 0; pass < 2; pass++) {
+      long start = System.nanoTime();
+      for (File f : files) {
+        oldChecksum(f);
+      }
+      report(pass, "Adler32 (old 128 byte stream)", totalBytes, System.nanoTime() - start);
+      for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+        start = System.nanoTime();
+        for (File f : files) {
+          FileInputStream fis = new FileInputStream(f);
+          try {
+            CachedFile.calculateChecksum(fis.getChannel(), algorithm);
+          } finally {
+            fis.close();
+          }
+        }
+        report(pass, algorithm.name(), totalBytes, System.nanoTime() - start);
+      }
+    }
+
+    for (File f : files) {
+      f.delete();
+    }
+    folder.delete();
+  }
+
+  private static void report(int pass, String name, long bytes, long nanos) {
+    if (pass == 0) {
+      return;
+    }
+    double seconds = nanos / 1e9;
+    System.out.println(String.format("%-32s %8.0f ms %8.1f MB/s", name, seconds * 1000, bytes / (1024.0 * 1024.0) / seconds));
+  }
+
+  /**
+   * The method used by CachedFile.getCrc() before the checksum changes
+   */
+  private static long oldChecksum(File f) throws IOException {
+    CheckedInputStream cis = new CheckedInputStream(new FileInputStream(f), new Adler32());
+    try {
+      byte[] buf = new byte[128];
+      while (cis.read(buf) >= 0) {
+      }
+      return cis.getChecksum().getValue();
+    } finally {
+      cis.close();
+    }
+  }
+
+  private static File[] createFiles(File folder) throws IOException {
+    folder.mkdirs();
+    Random random = new Random(1);
+    byte[] data = new byte[8 * 1024 * 1024];
+    random.nextBytes(data);
+    File[] files = new File[FILE_COUNT];
+    for (int i = 0; i < FILE_COUNT; i++) {
+      int size;
+      switch (i % 10) {
+        case 0:   size = 1024 * 1024 + random.nextInt(7 * 1024 * 1024); break;  // large (PDF/CBZ)
+        case 1:
+        case 2:   size = 256 * 1024 + random.nextInt(768 * 1024); break;        // medium (ePub/covers)
+        default:  size = 1024 + random.nextInt(64 * 1024); break;               // small (catalog pages/thumbnails)
+      }
+      files[i] = new File(folder, "file" + i + ".bin");
+      OutputStream os = new BufferedOutputStream(new FileOutputStream(files[i]));
+      try {
+        os.write(data, 0, size);
+      } finally {
+        os.close();
+      }
+    }
+    return files;
+  }
+}
@@ -0,0 +1,92 @@
+package com.gmail.dpierron.calibre.cache;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestChecksumAlgorithm {
+
+  private static long xxHash64(byte[] data) {
+    Checksum checksum = ChecksumAlgorithm.XXHASH64.newChecksum();
+    checksum.update(data, 0, data.length);
+    return checksum.getValue();
+  }
+
+  private static byte[] testData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+
+  @Test
+  public void testXxHash64() throws Exception {
+    // Reference values from the xxHash specification (seed 0)
+    assertEquals(0xEF46DB3751D8E999L, xxHash64(new byte[0]));
+    assertEquals(0xD24EC4F1A98C6E5BL, xxHash64("a".getBytes("US-ASCII")));
+    assertEquals(0x44BC2CF5AD770999L, xxHash64("abc".getBytes("US-ASCII")));
+    assertEquals(0xAFC184AD7938A354L, xxHash64(testData(1280)));
+
+    // Buffer version, starting part way through a stripe
+    byte[] data = testData(1280);
+    XxHash64 hash = new XxHash64();
+    hash.update(data, 0, 5);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+    buffer.put(data, 5, data.length - 5).flip();
+    hash.update(buffer);
+    assertEquals(0xAFC184AD7938A354L, hash.getValue());
+  }
+
+  @Test
+  public void testStreaming() {
+    // Feeding the data in odd sized pieces must give the same result as all at once
+    byte[] data = testData(1000);
+    for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+      Checksum whole = algorithm.newChecksum();
+      whole.update(data, 0, data.length);
+      Checksum pieces = algorithm.newChecksum();
+      int off = 0;
+      for (int len = 1; off < data.length; len += 7) {
+        int n = Math.min(len, data.length - off);
+        pieces.update(data, off, n);
+        off += n;
+      }
+      assertEquals(algorithm.name(), whole.getValue(), pieces.getValue());
+      pieces.reset();
+      for (byte b : data) {
+        pieces.update(b);
+      }
+      assertEquals(algorithm.name(), whole.getValue(), pieces.getValue());
+    }
+  }
+
+  @Test
+  public void testFileChecksum() throws IOException {
+    // Larger than the read buffer so that several reads are needed
+    byte[] data = testData(600 * 1024 + 13);
+    File file = File.createTempFile("c2o_checksum", ".tmp");
+    file.deleteOnExit();
+    FileOutputStream fos = new FileOutputStream(file);
+    fos.write(data);
+    fos.close();
+    for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+      Checksum expected = algorithm.newChecksum();
+      expected.update(data, 0, data.length);
+      FileInputStream fis = new FileInputStream(file);
+      try {
+        assertEquals(algorithm.name(), expected.getValue(), CachedFile.calculateChecksum(fis.getChannel(), algorithm));
+      } finally {
+        fis.close();
+      }
+    }
+    file.delete();
+  }
+}
@@ -33,14 +33,20 @@ public class DataModelTest {
 
   class FakeBook implements SplitableByLetter {
     String title;
+    String splitKey;
 
     FakeBook(String title) {
       this.title = title;
+      this.splitKey = DataModel.getSplitKey(title);
     }
 
     public String getTitleToSplitByLetter() {
       return title;
     }
+
+    public String getSplitKey() {
+      return splitKey;
+    }
   }
 
   Comparator<FakeBook> comparator = new Comparator<FakeBook>() {
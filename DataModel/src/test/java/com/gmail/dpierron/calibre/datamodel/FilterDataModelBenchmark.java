@@ -0,0 +1,99 @@
+package com.gmail.dpierron.calibre.datamodel;
+
+import com.gmail.dpierron.calibre.datamodel.filter.BookFilter;
+import com.gmail.dpierron.tools.IntMap;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Times DataModel.filterDataModel() against a large synthetic library
+ * from which most of the books are filtered out.
+ *
+ * This is not a unit test (the name does not match the surefire patterns),
+ * run it by hand with the test classpath, optionally giving the number of books.
+ */
+public class FilterDataModelBenchmark {
+
+  private static final int DEFAULT_BOOKS = 100000;
+  private static final int RUNS = 5;
+
+  public static void main(String[] args) throws Exception {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOOKS;
+    for (int run = 1; run <= RUNS; run++) {
+      createDataModel(count);
+      long start = System.currentTimeMillis();
+      // keep one book in ten
+      DataModel.filterDataModel(new BookFilter() {
+        public boolean didBookPassThroughFilter(Book book) {
+          return book.getIntId() % 10 == 0;
+        }
+      });
+      long elapsed = System.currentTimeMillis() - start;
+      System.out.println("Run " + run + ": filtered " + count + " books in " + elapsed + "ms, leaving "
+          + DataModel.getListOfBooks().size() + " books, "
+          + DataModel.getListOfAuthors().size() + " authors, "
+          + DataModel.getListOfTags().size() + " tags, "
+          + DataModel.getListOfSeries().size() + " series, "
+          + DataModel.getListOfPublishers().size() + " publishers");
+      if (DataModel.getListOfBooks().size() != count / 10) {
+        throw new IllegalStateException("Unexpected number of books left after filtering");
+      }
+    }
+  }
+
+  /**
+   * Populate the data model with books spread over authors, tags, series and publishers.
+   * Every by-book map is preset so that no database access is attempted.
+   *
+   * @param count
+   */
+  private static void createDataModel(int count) throws Exception {
+    DataModel.reset();
+    List<Tag> tags = new LinkedList<Tag>();
+    List<Author> authors = new LinkedList<Author>();
+    List<Series> series = new LinkedList<Series>();
+    List<Publisher> publishers = new LinkedList<Publisher>();
+    for (int i = 0; i < count / 20; i++) {
+      authors.add(new Author(Integer.toString(i), "Author " + i, "Author, " + i));
+      series.add(new Series(Integer.toString(i), "Series " + i, "Series " + i));
+    }
+    for (int i = 0; i < count / 100; i++) {
+      tags.add(new Tag(Integer.toString(i), "Tag " + i));
+      publishers.add(new Publisher(Integer.toString(i), "Publisher " + i, "Publisher " + i));
+    }
+    BookRating[] ratings = BookRating.values();
+    Date now = new Date();
+    List<Book> books = new LinkedList<Book>();
+    for (int i = 0; i < count; i++) {
+      String id = Integer.toString(i);
+      Book book = new Book(i, "uuid-" + id, "Title " + id, "Title " + id, "path/" + id, (float) (i % 7),
+          now, now, now, null, null, ratings[i % ratings.length]);
+      // Authors, series and publishers are shared by consecutive books, so most of them disappear
+      book.addAuthor(authors.get(i / 20));
+      book.setSeries(series.get((i / 20) % series.size()));
+      book.setPublisher(publishers.get(i % publishers.size()));
+      book.getTags().add(tags.get(i % tags.size()));
+      book.getTags().add(tags.get((i / 100) % tags.size()));
+      books.add(book);
+    }
+    setField("listOfBooks", books);
+    setField("listOfTags", tags);
+    setField("listOfAuthors", authors);
+    setField("listOfSeries", series);
+    setField("listOfPublishers", publishers);
+    setField("mapOfTagsByBookId", new IntMap<List<Tag>>());
+    setField("mapOfSeriesByBookId", new IntMap<List<Series>>());
+    setField("mapOfAuthorsByBookId", new IntMap<List<Author>>());
+    setField("mapOfCommentsByBookId", new IntMap<List<String>>());
+    setField("mapOfEBookFilesByBookId", new IntMap<List<EBookFile>>());
+  }
+
+  private static void setField(String name, Object value) throws Exception {
+    Field field = DataModel.class.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(null, value);
+  }
+}
@@ -0,0 +1,158 @@
+package com.gmail.dpierron.calibre.datamodel;
+
+import com.gmail.dpierron.calibre.configuration.Configuration;
+import com.gmail.dpierron.calibre.configuration.ReadOnlyConfigurationInterface;
+import com.gmail.dpierron.tools.Helper;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times loading the data model from a large synthetic library and reports
+ * the heap that the loaded model occupies.
+ *
+ * The library is made by copying a Calibre metadata.db and duplicating its
+ * books (with their authors, tags, series and publishers) the given number of times.
+ *
+ * This is not a unit test (the name does not match the surefire patterns),
+ * run it by hand with the test classpath:
+ *   LoadDataModelBenchmark path/to/metadata.db [copies]
+ */
+public class LoadDataModelBenchmark {
+
+  private static final int DEFAULT_COPIES = 100;
+  private static final int RUNS = 3;
+  // Added to the ids of each copy, so must be larger than any id in the source database
+  private static final long ID_OFFSET = 1000000;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: LoadDataModelBenchmark path/to/metadata.db [copies]");
+      return;
+    }
+    int copies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_COPIES;
+    final File folder = createLibrary(new File(args[0]), copies);
+    Configuration.setConfiguration(new ReadOnlyConfigurationInterface() {
+      public File getDatabaseFolder() {
+        return folder;
+      }
+    });
+
+    for (int run = 1; run <= RUNS; run++) {
+      DataModel.reset();
+      long before = usedHeap();
+      long start = System.currentTimeMillis();
+      DataModel.preloadDataModel();
+      long elapsed = System.currentTimeMillis() - start;
+      long after = usedHeap();
+      System.out.println("Run " + run + ": loaded " + DataModel.getListOfBooks().size() + " books, "
+          + DataModel.getListOfAuthors().size() + " authors, "
+          + DataModel.getListOfTags().size() + " tags, "
+          + DataModel.getListOfSeries().size() + " series in " + elapsed + "ms, data model uses "
+          + ((after - before) / (1024 * 1024)) + "MB of heap");
+    }
+    Helper.delete(folder, false);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Build the synthetic library in a temporary folder
+   *
+   * @param source The metadata.db to copy
+   * @param copies The number of copies of each book to hold
+   * @return       The folder holding the new metadata.db
+   */
+  private static File createLibrary(File source, int copies) throws Exception {
+    File folder = File.createTempFile("c2o_benchmark", "");
+    folder.delete();
+    folder.mkdirs();
+    File database = new File(folder, "metadata.db");
+    Helper.copy(source, database);
+
+    Class.forName("org.sqlite.JDBC");
+    Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getAbsolutePath());
+    try {
+      Statement statement = connection.createStatement();
+      // The Calibre triggers use functions that are only defined by Calibre itself
+      List<String> triggers = new ArrayList<String>();
+      ResultSet set = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='trigger'");
+      while (set.next()) {
+        triggers.add(set.getString(1));
+      }
+      for (String trigger : triggers) {
+        statement.executeUpdate("DROP TRIGGER " + trigger);
+      }
+
+      connection.setAutoCommit(false);
+      for (int copy = 1; copy < copies; copy++) {
+        long offset = copy * ID_OFFSET;
+        String suffix = " #" + copy;
+        copyRows(statement, "books", offset, "uuid", suffix);
+        copyRows(statement, "authors", offset, "name", suffix);
+        copyRows(statement, "tags", offset, "name", suffix);
+        copyRows(statement, "series", offset, "name", suffix);
+        copyRows(statement, "publishers", offset, "name", suffix);
+        copyRows(statement, "books_authors_link", offset, null, null, "book", "author");
+        copyRows(statement, "books_tags_link", offset, null, null, "book", "tag");
+        copyRows(statement, "books_series_link", offset, null, null, "book", "series");
+        copyRows(statement, "books_publishers_link", offset, null, null, "book", "publisher");
+        copyRows(statement, "books_ratings_link", offset, null, null, "book");
+        copyRows(statement, "books_languages_link", offset, null, null, "book");
+        copyRows(statement, "data", offset, null, null, "book");
+        copyRows(statement, "comments", offset, null, null, "book");
+      }
+      connection.commit();
+    } finally {
+      connection.close();
+    }
+    return folder;
+  }
+
+  /**
+   * Duplicate all the original rows of a table.
+   *
+   * @param statement
+   * @param table
+   * @param offset       Added to the id column and to the other columns that hold ids
+   * @param uniqueColumn If not null, a column that must be kept unique by appending the suffix
+   * @param suffix
+   * @param idColumns    The columns that hold the ids of other rows
+   */
+  private static void copyRows(Statement statement, String table, long offset, String uniqueColumn, String suffix,
+                               String... idColumns) throws SQLException {
+    Map<String, String> expressions = new HashMap<String, String>();
+    expressions.put("id", "id+" + offset);
+    for (String column : idColumns) {
+      expressions.put(column, column + "+" + offset);
+    }
+    if (uniqueColumn != null) {
+      expressions.put(uniqueColumn, uniqueColumn + "||'" + suffix + "'");
+    }
+    List<String> names = new ArrayList<String>();
+    ResultSet set = statement.executeQuery("PRAGMA table_info(" + table + ")");
+    while (set.next()) {
+      names.add(set.getString("name"));
+    }
+    StringBuilder select = new StringBuilder();
+    for (String name : names) {
+      select.append(select.length() == 0 ? "" : ",").append(expressions.containsKey(name) ? expressions.get(name) : name);
+    }
+    statement.executeUpdate("INSERT INTO " + table + " (" + Helper.concatenateList(",", names) + ") SELECT "
+        + select + " FROM " + table + " WHERE id < " + ID_OFFSET);
+  }
+}
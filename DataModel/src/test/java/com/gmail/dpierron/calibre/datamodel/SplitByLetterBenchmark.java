@@ -0,0 +1,107 @@
+package com.gmail.dpierron.calibre.datamodel;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Times DataModel.splitByLetter() against the previous implementation,
+ * which normalized every string and compiled the diacritic pattern on each
+ * split.  Each run splits the same list several times, as the catalog does
+ * for every letter page at every split level.
+ *
+ * This is not a unit test (the name does not match the surefire patterns),
+ * run it by hand with the test classpath, optionally giving the number of titles.
+ */
+public class SplitByLetterBenchmark {
+
+  private static final int DEFAULT_TITLES = 100000;
+  private static final int RUNS = 5;
+  private static final int SPLITS_PER_RUN = 10;
+  private static final String[] WORDS = {"Été", "Ångström", "Über", "Mortal", "More", "Morris", "Éléphant", "Zoë", "Brontë", "Citroën"};
+
+  private static final Comparator<Tag> comparator = new Comparator<Tag>() {
+    public int compare(Tag o1, Tag o2) {
+      return o1.getName().compareTo(o2.getName());
+    }
+  };
+
+  public static void main(String[] args) throws Exception {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TITLES;
+    List<Tag> tags = new ArrayList<Tag>(count);
+    for (int i = 0; i < count; i++) {
+      tags.add(new Tag(Integer.toString(i), WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length] + " " + i));
+    }
+
+    for (int run = 1; run <= RUNS; run++) {
+      long start = System.currentTimeMillis();
+      int oldLetters = 0;
+      for (int i = 0; i < SPLITS_PER_RUN; i++)
+        oldLetters = previousSplitByLetter(tags, comparator).size();
+      long previous = System.currentTimeMillis() - start;
+
+      start = System.currentTimeMillis();
+      int newLetters = 0;
+      for (int i = 0; i < SPLITS_PER_RUN; i++)
+        newLetters = DataModel.splitByLetter(tags, comparator).size();
+      long current = System.currentTimeMillis() - start;
+
+      System.out.println("Run " + run + ": " + SPLITS_PER_RUN + " splits of " + count + " titles, previous "
+          + previous + "ms (" + oldLetters + " letters), current " + current + "ms (" + newLetters + " letters)");
+      if (oldLetters != newLetters) {
+        throw new IllegalStateException("Split results differ");
+      }
+    }
+  }
+
+  /**
+   * The splitByLetter() implementation as it was before the split keys were cached.
+   */
+  private static <T extends SplitableByLetter> Map<String, List<T>> previousSplitByLetter(List<T> objects, Comparator<T> comparator) {
+    Map<String, List<T>> splitMap = new HashMap<String, List<T>>();
+    List<String> stringsToSplit = new ArrayList<String>(objects.size());
+    String commonPart = null;
+    for (T object : objects) {
+      String string = object.getTitleToSplitByLetter();
+      String temp = Normalizer.normalize(string, Normalizer.Form.NFD);
+      Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+      string = pattern.matcher(temp).replaceAll("");
+      stringsToSplit.add(string);
+      if (commonPart == null) {
+        commonPart = string.toUpperCase();
+      } else if (commonPart.length() > 0) {
+        String tempCommonPart = commonPart;
+        while (tempCommonPart.length() > 0 && !string.toUpperCase().startsWith(tempCommonPart)) {
+          tempCommonPart = tempCommonPart.substring(0, tempCommonPart.length() - 1);
+        }
+        commonPart = tempCommonPart.toUpperCase();
+      }
+    }
+    int firstDifferentCharPosition = commonPart.length();
+    Iterator<String> strings = stringsToSplit.iterator();
+    for (T object : objects) {
+      String string = strings.next();
+      String discriminantPart;
+      if (firstDifferentCharPosition + 1 >= string.length())
+        discriminantPart = string.toUpperCase();
+      else
+        discriminantPart = string.substring(0, firstDifferentCharPosition + 1).toUpperCase();
+      List<T> list = splitMap.get(discriminantPart);
+      if (list == null) {
+        list = new ArrayList<T>();
+        splitMap.put(discriminantPart, list);
+      }
+      list.add(object);
+    }
+    for (List<T> list : splitMap.values()) {
+      Collections.sort(list, comparator);
+    }
+    return splitMap;
+  }
+}
@@ -1,5 +1,6 @@
 package com.gmail.dpierron.calibre.configuration;
 
+import com.gmail.dpierron.calibre.cache.ChecksumAlgorithm;
 import com.gmail.dpierron.calibre.datamodel.DataModel;
 import com.gmail.dpierron.calibre.datamodel.Language;
 import com.gmail.dpierron.calibre.opds.Constants;
@@ -138,6 +139,10 @@ public class ConfigurationHolder extends PropertiesBasedConfiguration implements
   private final static String PROPERTY_NAME_ZIP_CATALOG = "ZipCatalog";
   private final static String PROPERTY_NAME_ZIP_OMIT_XML = "ZipOmitXml";
   private final static String PROPERTY_NAME_SecurityCode = "SecurityCode";
+  private final static String PROPERTY_NAME_WORKERTHREADS = "WorkerThreads";
+  private final static String PROPERTY_NAME_CHECKSUMALGORITHM = "ChecksumAlgorithm";
+  private final static String PROPERTY_NAME_GZIPSEARCHDATABASE = "GzipSearchDatabase";
+  private final static String PROPERTY_NAME_SHARDSEARCHDATABASE = "ShardSearchDatabase";
 
   final static Logger logger = Logger.getLogger(ConfigurationHolder.class);
 
@@ -1465,4 +1470,36 @@ public class ConfigurationHolder extends PropertiesBasedConfiguration implements
     setProperty(PROPERTY_NAME_SecurityCode, code);
   }
 
+  public Integer getWorkerThreads() {
+    Integer i = getInteger(PROPERTY_NAME_WORKERTHREADS);
+    return (i == null) ? defaults.getWorkerThreads() : i;
+  }
+  public void setWorkerThreads(Integer workerThreads) {
+    setProperty(PROPERTY_NAME_WORKERTHREADS, workerThreads);
+  }
+
+  public ChecksumAlgorithm getChecksumAlgorithm() {
+    String s = getProperty(PROPERTY_NAME_CHECKSUMALGORITHM);
+    return (s == null) ? defaults.getChecksumAlgorithm() : ChecksumAlgorithm.fromName(s);
+  }
+  public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+    setProperty(PROPERTY_NAME_CHECKSUMALGORITHM, checksumAlgorithm);
+  }
+
+  public Boolean getGzipSearchDatabase() {
+    Boolean b = getBoolean(PROPERTY_NAME_GZIPSEARCHDATABASE);
+    return (b == null) ? defaults.getGzipSearchDatabase() : b;
+  }
+  public void setGzipSearchDatabase(Boolean gzipSearchDatabase) {
+    setProperty(PROPERTY_NAME_GZIPSEARCHDATABASE, gzipSearchDatabase);
+  }
+
+  public Boolean getShardSearchDatabase() {
+    Boolean b = getBoolean(PROPERTY_NAME_SHARDSEARCHDATABASE);
+    return (b == null) ? defaults.getShardSearchDatabase() : b;
+  }
+  public void setShardSearchDatabase(Boolean shardSearchDatabase) {
+    setProperty(PROPERTY_NAME_SHARDSEARCHDATABASE, shardSearchDatabase);
+  }
+
 }
@@ -3,6 +3,7 @@ package com.gmail.dpierron.calibre.configuration;
 /**
  * These are the default setting for the Calibre2opds configuration
  */
+import com.gmail.dpierron.calibre.cache.ChecksumAlgorithm;
 import com.gmail.dpierron.tools.i18n.Localization;
 import com.gmail.dpierron.calibre.opds.indexer.Index;
 
@@ -421,4 +422,20 @@ public final class DefaultConfigurationSettings extends DefaultConfiguration imp
     return false;
   }
 
+  public Integer getWorkerThreads() {
+    return 1;
+  }
+
+  public ChecksumAlgorithm getChecksumAlgorithm() {
+    return ChecksumAlgorithm.ADLER32;
+  }
+
+  public Boolean getGzipSearchDatabase() {
+    return false;
+  }
+
+  public Boolean getShardSearchDatabase() {
+    return false;
+  }
+
 }
@@ -10,6 +10,7 @@ package com.gmail.dpierron.calibre.configuration;
  *          ??? function.
  */
 
+import com.gmail.dpierron.calibre.cache.ChecksumAlgorithm;
 import com.gmail.dpierron.calibre.opds.indexer.Index;
 import com.gmail.dpierron.tools.Composite;
 
@@ -228,4 +229,12 @@ public interface GetConfigurationInterface extends ReadOnlyConfigurationInterfac
   public String getCatalogCustomColumns();
 
   public String getSecurityCode();
+
+  public Integer getWorkerThreads();
+
+  public ChecksumAlgorithm getChecksumAlgorithm();
+
+  public Boolean getGzipSearchDatabase();
+
+  public Boolean getShardSearchDatabase();
 }
@@ -10,6 +10,8 @@ package com.gmail.dpierron.calibre.configuration;
  * ITIMPI:  Not sure what the purpose is of defining this interface?
  */
 
+import com.gmail.dpierron.calibre.cache.ChecksumAlgorithm;
+
 import java.io.File;
 import java.util.List;
 import java.util.Locale;
@@ -210,4 +212,12 @@ public interface SetConfigurationInterface extends GetConfigurationInterface {
   public void setCatalogCustomColumns(String value);
 
   public void setSecurityCode (String code);
+
+  public void setWorkerThreads(Integer value);
+
+  public void setChecksumAlgorithm(ChecksumAlgorithm value);
+
+  public void setGzipSearchDatabase(Boolean value);
+
+  public void setShardSearchDatabase(Boolean value);
 }
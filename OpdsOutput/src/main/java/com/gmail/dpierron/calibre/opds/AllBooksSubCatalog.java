@@ -103,22 +103,13 @@ public class AllBooksSubCatalog extends BooksSubCatalog {
 
           if ((series1 == null) && (series2 == null)) {
             // both series are null, we need to compare the book titles (as always...)
-            String title1;
-            String title2;
-            if (currentProfile.getSortUsingTitle()) {
-              title1 = o1.getTitle();
-              title2 = o2.getTitle();
-            } else {
-              title1 = o1.getTitle_Sort();
-              title2 = o2.getTitle_Sort();
-            }
-            // logger.trace("comparing title '" + title1.toString() + "' to '" + title2.toString() + "'");
+            // The book sort key is built from the title or title_sort as set in the profile
             try {
-              int result = Helper.checkedCollatorCompareIgnoreCase(title1, title2, collator);
+              int result = Helper.checkedCollationKeyCompare(o1.getSortKey(), o2.getSortKey());
               // logger.trace("return=" + result);
               return result;
             } catch (Exception e) {
-              logger.error("Error sorting between titles '" + title1.toString() + "' and '" + title2.toString() + "'");
+              logger.error("Error sorting between titles '" + o1.getTitleToSplitByLetter() + "' and '" + o2.getTitleToSplitByLetter() + "'");
               return 0;
             }
           }
@@ -153,22 +144,13 @@ public class AllBooksSubCatalog extends BooksSubCatalog {
             // series index the same, so we need to sort on the book title
             // both series are null, we need to compare the book titles (as always...)
             // logger.trace("Same series and series index");
-            String title1;
-            String title2;
-            if (currentProfile.getSortUsingTitle()) {
-              title1 = o1.getTitle();
-              title2 = o2.getTitle();
-            } else {
-              title1 = o1.getTitle_Sort();
-              title2 = o2.getTitle_Sort();
-            }
-            // logger.trace("comparing title '" + title1.toString() + "' to '" + title2.toString() + "'");
+            // The book sort key is built from the title or title_sort as set in the profile
             try {
-              int result = Helper.checkedCollatorCompareIgnoreCase(title1, title2, collator);
+              int result = Helper.checkedCollationKeyCompare(o1.getSortKey(), o2.getSortKey());
               // logger.trace("return=" + result);
               return result;
             } catch (Exception e) {
-              logger.error("Error sorting between titles '" + title1.toString() + "' and '" + title2.toString() + "'");
+              logger.error("Error sorting between titles '" + o1.getTitleToSplitByLetter() + "' and '" + o2.getTitleToSplitByLetter() + "'");
               // logger.trace("return 0");
               return 0;
             }
@@ -20,12 +20,10 @@ import org.apache.log4j.Logger;
 import org.jdom.Element;
 
 import java.io.IOException;
-import java.text.Collator;
 import java.util.*;
 
 public class AuthorsSubCatalog extends BooksSubCatalog {
   private final static Logger logger = Logger.getLogger(AuthorsSubCatalog.class);
-  private final static Collator collator = Collator.getInstance(ConfigurationManager.getLocale());
   private Map<Author, List<Book>> mapOfBooksByAuthor;     // Cached information for efficency
   private List<Author> authors;                           // Cached information for efficiency
 
@@ -52,26 +50,25 @@ public class AuthorsSubCatalog extends BooksSubCatalog {
 
   private void initMapOfBooksByAuthor() {
     mapOfBooksByAuthor = new HashMap<Author, List<Book>>();
-    authors = new LinkedList<Author>();
+    authors = new ArrayList<Author>();
     for (Book book : getBooks()) {
       for (Author author : book.getAuthors()) {
         List<Book> currentbooks = mapOfBooksByAuthor.get(author);
         if (currentbooks == null) {
-          currentbooks = new LinkedList<Book>();
+          currentbooks = new ArrayList<Book>();
           mapOfBooksByAuthor.put(author, currentbooks);
+          // First time this author has been seen
+          authors.add(author);
         }
         currentbooks.add(book);
-        if (!authors.contains(author))
-          authors.add(author);
       }
     }
     // sort the authors by name
     // We can use configuration parameters to sort by either auth_sort or author
     Collections.sort(authors, new Comparator<Author>() {
       public int compare(Author o1, Author o2) {
-        String name1 = (o1 == null ? "" : o1.getTitleToSplitByLetter());
-        String name2 = (o2 == null ? "" : o2.getTitleToSplitByLetter());
-        return  Helper.checkedCollatorCompareIgnoreCase(name1, name2,collator);
+        return Helper.checkedCollationKeyCompare((o1 == null ? null : o1.getSortKey()),
+                                                 (o2 == null ? null : o2.getSortKey()));
       }
     });
   }
@@ -157,7 +154,7 @@ public class AuthorsSubCatalog extends BooksSubCatalog {
                                              pFilename);
     } else {
       logger.debug("NOT splitting by letter");
-      result = new LinkedList<Element>();
+      result = new ArrayList<Element>();
       for (int i = from; i < listauthors.size(); i++) {
         if ((splitOption != SplitOption.DontSplitNorPaginate)
         && ((i - from) >= maxBeforePaginate)) {
@@ -236,7 +233,7 @@ public class AuthorsSubCatalog extends BooksSubCatalog {
     if (Helper.isNotNullOrEmpty(sTitle))
       sTitle = sTitle + ", ";
 
-    List<Element> result = new LinkedList<Element>();
+    List<Element> result = new ArrayList<Element>();
     SortedSet<String> letters = new TreeSet<String>(mapOfAuthorsByLetter.keySet());
     Element element;
     for (String letter : letters) {
@@ -277,7 +274,7 @@ public class AuthorsSubCatalog extends BooksSubCatalog {
 
       if (currentProfile.getSplitByAuthorInitialGoToBooks()) {
         logger.debug("getting all books by all the authors in this letter");
-        List<Book> books = new LinkedList<Book>();
+        List<Book> books = new ArrayList<Book>();
         for (Author author : authorsInThisLetter) {
           books.addAll(mapOfBooksByAuthor.get(author));
         }
@@ -345,8 +342,8 @@ public class AuthorsSubCatalog extends BooksSubCatalog {
     if (!isInDeepLevel())
       CatalogManager.callback.incStepProgressIndicatorPosition();
 
-    List listOfBooksInSeries = new LinkedList<Book>();
-    List listOfBooksNotInSeries = new LinkedList<Book>();
+    List listOfBooksInSeries = new ArrayList<Book>();
+    List listOfBooksNotInSeries = new ArrayList<Book>();
     // We only need to worry about series if they are being listed under the author.
     if (currentProfile.getShowSeriesInAuthorCatalog()) {
       for (Book book : authorbooks) {
@@ -69,7 +69,7 @@ public abstract class BooksSubCatalog extends SubCatalog {
   void sortBooksByTitle(List<Book> books) {
     Collections.sort(books, new Comparator<Book>() {
       public int compare(Book o1, Book o2) {
-        return Helper.checkedCollatorCompareIgnoreCase(o1.getTitleToSplitByLetter(), o2.getTitleToSplitByLetter(), collator);
+        return Helper.checkedCollationKeyCompare(o1.getSortKey(), o2.getSortKey());
       }
     });
   }
@@ -81,10 +81,10 @@ public abstract class BooksSubCatalog extends SubCatalog {
         String s1 = o1.getTitleToSplitByLetter();
         String s2 = o2.getTitleToSplitByLetter();
         if (! s1.equals(s2)) {
-           return Helper.checkedCollatorCompareIgnoreCase(s1, s2, collator);
+           return Helper.checkedCollationKeyCompare(o1.getSortKey(), o2.getSortKey());
         }
         // If authors equal compare on title.
-        return Helper.checkedCollatorCompareIgnoreCase(o1.getTitleToSplitByLetter(), o2.getTitleToSplitByLetter(), collator);
+        return Helper.checkedCollationKeyCompare(o1.getSortKey(), o2.getSortKey());
       }
 
     });
@@ -266,7 +266,7 @@ public abstract class BooksSubCatalog extends SubCatalog {
                                            options);
     } else {
       // Paginated listing
-      result = new LinkedList<Element>();
+      result = new ArrayList<Element>();
       String progressText = Breadcrumbs.getProgressText(breadcrumbs);
       progressText += " (" + Summarizer.getBookWord(listbooks.size()) + ")";
       CatalogManager.callback.showMessage(progressText.toString());
@@ -364,7 +364,7 @@ public abstract class BooksSubCatalog extends SubCatalog {
     if (Helper.isNotNullOrEmpty(sTitle))
       sTitle += ", ";
 
-    List<Element> result = new LinkedList<Element>();
+    List<Element> result = new ArrayList<Element>();
     SortedSet<String> letters = new TreeSet<String>(mapOfBooksByLetter.keySet());
     for (String letter : letters) {
       // generate the letter file
@@ -442,7 +442,7 @@ public abstract class BooksSubCatalog extends SubCatalog {
 
     if (pBreadcrumbs.size() > 1) inSubDir = true;
 
-    List<Element> result = new LinkedList<Element>();
+    List<Element> result = new ArrayList<Element>();
     SortedSet<DateRange> ranges = new TreeSet<DateRange>(mapOfBooksByDate.keySet());
     for (DateRange range : ranges) {
       // generate the range file
@@ -608,7 +608,12 @@ public abstract class BooksSubCatalog extends SubCatalog {
               logger.trace("addImageLink: resizedImage set to be generated (new cover)");
             }
           }
-          iManager.generateImage(resizedImageFile, calibreCoverFile.exists() ? calibreCoverFile : defaultCoverFile);
+          // The image can be generated in the background unless it is about to be embedded
+          if (useExternalImages) {
+            iManager.queueImage(resizedImageFile, calibreCoverFile.exists() ? calibreCoverFile : defaultCoverFile);
+          } else {
+            iManager.generateImage(resizedImageFile, calibreCoverFile.exists() ? calibreCoverFile : defaultCoverFile);
+          }
         }
       }
     } else {
@@ -1117,7 +1122,7 @@ public abstract class BooksSubCatalog extends SubCatalog {
 
       List<CustomColumnType>bookDetailsCustomColumnTypes = CatalogManager.getBookDetailsCustomColumns();
       if (bookDetailsCustomColumnTypes != null && bookDetailsCustomColumnTypes.size() > 0) {
-        List<CustomColumnValue> values = DataModel.getMapOfCustomColumnValuesByBookId().get(book.getId().toString());
+        List<CustomColumnValue> values = DataModel.getMapOfCustomColumnValuesByBookId().get(book.getIntId());
         for (CustomColumnType columnType : bookDetailsCustomColumnTypes) {
           String textValue = "";
           String dataType = columnType.getDatatype();
@@ -22,13 +22,22 @@ import com.gmail.dpierron.calibre.gui.GenerationStoppedException;
 import com.gmail.dpierron.calibre.trook.TrookSpecificSearchDatabaseManager;
 import com.gmail.dpierron.tools.i18n.Localization;
 import com.gmail.dpierron.calibre.opds.indexer.IndexManager;
+import com.gmail.dpierron.calibre.opf.EpubMetadataCache;
 import com.gmail.dpierron.calibre.opf.OpfOutput;
 import com.gmail.dpierron.tools.Helper;
 import org.apache.log4j.Logger;
 import org.jdom.Element;
 
 import java.io.*;
+import java.text.Collator;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -63,6 +72,11 @@ public class Catalog {
 
   private PrintWriter syncLogFile;           // File to be used for the Sync log
 
+  // When sync copies are done in parallel these hold the worker pool and the copies
+  // that have been handed to it.  Null if copies are done directly by syncFiles().
+  private ExecutorService copyExecutor;
+  private List<Future<Void>> copyFutures;
+
   // The following are used to simplify code and to avoid continually referring to the profile
   private File generateFolder = null;     // Location where catalog is generated
   private File targetFolder = null;       // Location where final catalog will be copied to (if reuired)
@@ -257,7 +271,7 @@ public class Catalog {
    * @param dst
    * @throws IOException
    */
-  private void syncFiles(CachedFile src, CachedFile dst) throws IOException {
+  private void syncFiles(final CachedFile src, final CachedFile dst) throws IOException {
 
     if (logger.isTraceEnabled()) logger.trace("syncFiles (" + src + "," + dst + ")");
 
@@ -526,20 +540,119 @@ public class Catalog {
         msgCount++;
 
         if (syncFilesDetail && logger.isDebugEnabled()) logger.debug("Copying file " + src.getName() + " to " + dst.getAbsolutePath());
-        try {
-          Helper.copy(src, dst);
-          dst.setCachedValues(true, src.lastModified(), src.length(), src.getCrc(), src.isDirectory());
-        } catch (java.io.FileNotFoundException e) {
-          // We ignore failed attempts to copy a file, although we log them
-          // This allows for the user to have made changes to the library while
-          // Calibre2opds is generating a library without the whole run failing.
-          logger.warn("Unable to to copy file " + src);
-          if (logger.isDebugEnabled()) logger.debug(e.toString());
+        if (copyExecutor == null) {
+          copyFile(src, dst);
+        } else {
+          // All the decisions (and stats) above are made on this thread,
+          // only the copy itself is handed over to the worker pool.
+          copyFutures.add(copyExecutor.submit(new Callable<Void>() {
+            public Void call() throws IOException {
+              copyFile(src, dst);
+              return null;
+            }
+          }));
         }
       }
     }  // End of File Handling section
   }
 
+  /**
+   * Copy a single file, and then set the cached values of the copy to match the source
+   *
+   * @param src
+   * @param dst
+   * @throws IOException
+   */
+  private void copyFile(CachedFile src, CachedFile dst) throws IOException {
+    try {
+      Helper.copy(src, dst);
+      dst.setCachedValues(true, src.lastModified(), src.length(), src.getCrc(), src.isDirectory());
+    } catch (java.io.FileNotFoundException e) {
+      // We ignore failed attempts to copy a file, although we log them
+      // This allows for the user to have made changes to the library while
+      // Calibre2opds is generating a library without the whole run failing.
+      logger.warn("Unable to to copy file " + src);
+      if (logger.isDebugEnabled()) logger.debug(e.toString());
+    }
+  }
+
+  /**
+   * Start a pool of threads to do the file copies needed by syncFiles()
+   *
+   * @param threads Number of threads to use
+   */
+  private void startCopyPool(int threads) {
+    copyFutures = new ArrayList<Future<Void>>();
+    copyExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        // Daemon threads so that an aborted run can never leave the program hanging
+        Thread t = new Thread(r, "c2o-sync");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Wait until all copies handed to the copy pool have completed.
+   *
+   * This must be done before anything that relies on the copied
+   * files being present (such as zipping a catalog folder).
+   *
+   * @throws IOException The first unexpected error from any of the copies
+   */
+  private void waitForCopies() throws IOException {
+    if (copyExecutor == null) {
+      return;
+    }
+    logger.debug("Waiting for " + copyFutures.size() + " file copies to complete");
+    // The list is only cleared once all are done so that stopCopyPool()
+    // can still cancel the copies not yet started if generation is stopped
+    for (Future<Void> future : copyFutures) {
+      callback.checkIfContinueGenerating();
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IOException(cause.toString());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for file copies");
+      }
+    }
+    copyFutures.clear();
+  }
+
+  /**
+   * Shut down the copy pool (if it is running) abandoning any copies not yet started.
+   *
+   * Copies already in progress are left to finish as interrupting a
+   * FileChannel transfer closes the channel and leaves a truncated file.
+   */
+  private void stopCopyPool() {
+    if (copyExecutor == null) {
+      return;
+    }
+    for (Future<Void> future : copyFutures) {
+      future.cancel(false);
+    }
+    copyExecutor.shutdown();
+    try {
+      // Give any copies in progress the chance to finish before the temporary files are deleted
+      copyExecutor.awaitTermination(30, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    copyExecutor = null;
+    copyFutures = null;
+  }
+
   /**
    * @param book
    * @return
@@ -549,11 +662,96 @@ public class Catalog {
     if (epubFile == null)
       return false;
     File opfFile = new File(book.getBookFolder(), "metadata.opf");
-    if (!opfFile.exists())
-      return true;          // ITIMPI:   Should this perhaps return false?
-    long opfDate = opfFile.lastModified();
-    long epubDate = epubFile.getFile().lastModified();
-    return (opfDate > epubDate);
+    if (opfFile.exists()) {
+      long opfDate = opfFile.lastModified();
+      long epubDate = epubFile.getFile().lastModified();
+      if (opfDate <= epubDate)
+        return false;
+    }
+    // ITIMPI:   If there is no metadata.opf should this perhaps return false?
+    // Even if the dates say so, there is nothing to do if the ePub already holds the
+    // metadata of the book (this can be checked without opening the ePub)
+    return !EpubMetadataCache.isUpToDate(book, new OpfOutput(book).getMetadataFingerprint());
+  }
+
+  /**
+   * Reprocess the ePub metadata of the books in parallel.
+   *
+   * Each book is unzipped, has its OPF updated and is zipped again by one
+   * of the worker threads.   The results are collected here in the order of
+   * the books so that progress and cancellation are handled on this thread.
+   * When generation is stopped the books not yet started are abandoned, but
+   * those in progress are left to finish as the workers must not be
+   * interrupted while an ePub file is being replaced.
+   *
+   * The CachedFile of every ePub is looked up here before any work is handed
+   * out, as CachedFileManager is not thread safe:  the workers then only ever
+   * read the cache and never add to it.
+   *
+   * @param books   The books to check
+   * @param threads Number of threads to use
+   * @return        The number of books whose ePub was reprocessed
+   */
+  private long reprocessEpubMetadata(List<Book> books, int threads) {
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        // Daemon threads so that an aborted run can never leave the program hanging
+        Thread t = new Thread(r, "c2o-epub");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    long count = 0;
+    List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(books.size());
+    for (Book book : books) {
+      EBookFile epubFile = book.getEpubFile();
+      if (epubFile != null) {
+        epubFile.getFile();
+      }
+    }
+    try {
+      for (final Book book : books) {
+        futures.add(executor.submit(new Callable<Boolean>() {
+          public Boolean call() throws IOException {
+            if (!shouldReprocessEpubMetadata(book)) {
+              return false;
+            }
+            new OpfOutput(book).processEPubFile();
+            return true;
+          }
+        }));
+      }
+      Iterator<Book> bookIterator = books.iterator();
+      for (Future<Boolean> future : futures) {
+        Book book = bookIterator.next();
+        callback.checkIfContinueGenerating();
+        callback.incStepProgressIndicatorPosition();
+        try {
+          if (future.get()) {
+            callback.showMessage(book.getAuthors() + ": " + book.getTitle());
+            count++;
+          }
+        } catch (ExecutionException e) {
+          String message = Localization.Main.getText("gui.error.tools.processEpubMetadataOfAllBooks", book.getTitle(), e.getCause().getMessage());
+          logger.error(message, e.getCause());
+          count++;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    } finally {
+      for (Future<Boolean> future : futures) {
+        future.cancel(false);
+      }
+      executor.shutdown();
+      try {
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return count;
   }
 
   /**
@@ -624,6 +822,86 @@ public class Catalog {
     }
   }
 
+  /**
+   * Add a source/target pair to the list of files whose checksums are to be prefetched.
+   *
+   * Each CachedFile object is only allowed to appear in one pair so that no
+   * file is checked twice.  Any pair that would break this is left to be
+   * handled by syncFiles() in the normal way.
+   *
+   * @param pairs     The list being built
+   * @param seen      The CachedFile objects already in the list
+   * @param src
+   * @param dst
+   */
+  private void addChecksumPair(List<CachedFile[]> pairs, Set<CachedFile> seen, CachedFile src, CachedFile dst) {
+    if (seen.contains(src) || seen.contains(dst)) {
+      return;
+    }
+    seen.add(src);
+    seen.add(dst);
+    pairs.add(new CachedFile[] {src, dst});
+  }
+
+  /**
+   * Calculate in parallel the checksums that syncFiles() is going to need.
+   *
+   * syncFiles() only compares checksums when the target exists, has the
+   * same length and is older than the source, so the same tests are applied
+   * here.  The results are held in the CachedFile objects so when syncFiles()
+   * gets to the file it finds them already calculated.   This is most useful
+   * when the target is on a NAS where the latency of each access dominates.
+   *
+   * @param pairs   The source/target pairs (each CachedFile in only one pair)
+   * @param threads Number of threads to use
+   */
+  private void prefetchChecksums(List<CachedFile[]> pairs, int threads) {
+    long prefetchStart = System.currentTimeMillis();
+    logger.debug("STARTED: Prefetching checksums for " + pairs.size() + " files");
+    callback.showMessage(Localization.Main.getText("info.step.prefetchingcrc"));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    int count = 0;
+    try {
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(pairs.size());
+      for (final CachedFile[] pair : pairs) {
+        futures.add(executor.submit(new Callable<Boolean>() {
+          public Boolean call() {
+            CachedFile src = pair[0];
+            CachedFile dst = pair[1];
+            if (!src.exists() || !dst.exists() || src.isDirectory()
+            ||  src.length() != dst.length()
+            ||  src.lastModified() <= dst.lastModified()) {
+              return false;
+            }
+            src.getCrc();
+            dst.getCrc();
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        callback.checkIfContinueGenerating();
+        try {
+          if (future.get()) {
+            count++;
+          }
+        } catch (ExecutionException e) {
+          // Not fatal - syncFiles() will simply try again
+          logger.warn("prefetchChecksums: " + e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    callback.showMessage("");
+    logger.debug("COMPLETED: Prefetching checksums (" + count + " pairs needed checking)");
+    logger.info(Localization.Main.getText("info.step.prefetchingcrc") + ": "
+                + Localization.Main.getText("info.step.donein", System.currentTimeMillis() - prefetchStart));
+  }
+
   /**
    * -----------------------------------------------
    * Control the overall catalog generation process
@@ -645,6 +923,7 @@ public class Catalog {
     CatalogManager.thumbnailManager.reset();
     CatalogManager.coverManager.reset();
     CachedFileManager.reset();
+    EpubMetadataCache.reset();
 
     Localization.Main.setProfileLanguage(currentProfile.getLanguage());
     Localization.Enum.setProfileLanguage(currentProfile.getLanguage());
@@ -909,6 +1188,7 @@ public class Catalog {
           CachedFileManager.setCacheFolder(catalogFolder);
           break;
       }
+      CachedFile.setChecksumAlgorithm(currentProfile.getChecksumAlgorithm());
       long loadCacheStart = System.currentTimeMillis();
       if (checkCRC) {
         if (logger.isTraceEnabled()) logger.trace("Loading Cache");
@@ -923,6 +1203,11 @@ public class Catalog {
       logger.info(Localization.Main.getText("info.step.donein", System.currentTimeMillis() - loadCacheStart));
       CatalogManager.recordRamUsage("After loading (and deleting cache");
 
+      if (currentProfile.getReprocessEpubMetadata()) {
+        EpubMetadataCache.setCacheFolder(currentProfile.getDeviceMode() == DeviceMode.Nook ? targetFolder : catalogFolder);
+        EpubMetadataCache.loadCache();
+      }
+
       // copy the resource files to the catalog folder
       // We check in the following order:
       //  - Configuration folder
@@ -948,14 +1233,20 @@ public class Catalog {
       DataModel.setLibrarySortAuthor(ConfigurationManager.getCurrentProfile().getSortUsingAuthor());
       DataModel.setLibrarySortTitle(ConfigurationManager.getCurrentProfile().getSortUsingTitle());
       DataModel.setLibrarySortSeries(ConfigurationManager.getCurrentProfile().getSortSeriesUsingLibrarySort());
+      DataModel.setCollator(Collator.getInstance(ConfigurationManager.getLocale()));
+      DataModel.setPreloadThreads(ConfigurationManager.getCurrentProfile().getWorkerThreads());
       // CatalogManager.getTagsToIgnore();
+      long loadDatabaseStart = System.currentTimeMillis();
       DataModel.preloadDataModel();    // Get mandatory database fields
       logger.trace("COMPLETED preloading Datamodel");
+      logger.info(Localization.Main.getText("info.step.loadingdatabase") + ": "
+                  + Localization.Main.getText("info.step.donein", System.currentTimeMillis() - loadDatabaseStart));
       callback.showMessage("");
 
       CatalogManager.recordRamUsage("After loading DataModel");
       List<Book> books = DataModel.getListOfBooks();
       callback.setDatabaseCount(Summarizer.getBookWord(books.size()));
+      EpubMetadataCache.setLibraryBooks(books);
 
       // Database read optimizations
       // (ony read in optional databitems if weneed them later)
@@ -1122,6 +1413,14 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
       //      Standard sub-catalogs for a folder level
 
       logger.debug("Starter generating top level catalog");
+      // The XSLT transforms to HTML can overlap with building the following pages
+      if (currentProfile.getGenerateHtml() && currentProfile.getWorkerThreads() > 1) {
+        HtmlManager.startWorkers(currentProfile.getWorkerThreads());
+      }
+      // ... as can generating resized covers and thumbnails
+      if (currentProfile.getWorkerThreads() > 1) {
+        ImageManager.startWorkers(currentProfile.getWorkerThreads());
+      }
       LevelSubCatalog levelSubCatalog = new LevelSubCatalog(books,currentProfile.getCatalogTitle());
       levelSubCatalog.setCatalogLevel("");      // Empty level for top level sub-catalogs
       levelSubCatalog.setCatalogType("");       // No type for top level sub-catalog!
@@ -1138,6 +1437,8 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
           null,           // Splitoption
           "");            // icon
       levelSubCatalog = null; // Maybe not necessary - but forced free may help release resources earlier
+      HtmlManager.stopWorkers();
+      ImageManager.stopWorkers();
       // If we get this far any new images required should already be generated
       // so record the fact by writing out new imageheight files.
       if (currentProfile.getCoverResize())        CatalogManager.coverManager.writeImageHeightFile();
@@ -1160,23 +1461,28 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
       callback.startReprocessingEpubMetadata(DataModel.getListOfBooks().size());
       countMetadata = 0;
       if (currentProfile.getReprocessEpubMetadata()) {
-        for (Book book : DataModel.getListOfBooks()) {
-          callback.checkIfContinueGenerating();
-          callback.incStepProgressIndicatorPosition();
-          if (shouldReprocessEpubMetadata(book)) {
-            try {
-              callback.showMessage(book.getAuthors() + ": " + book.getTitle());
-              new OpfOutput(book).processEPubFile();
-            } catch (IOException e) {
-              String message = Localization.Main.getText("gui.error.tools.processEpubMetadataOfAllBooks", book.getTitle(), e.getMessage());
-              logger.error(message, e);
+        if (currentProfile.getWorkerThreads() > 1) {
+          countMetadata = reprocessEpubMetadata(DataModel.getListOfBooks(), currentProfile.getWorkerThreads());
+        } else {
+          for (Book book : DataModel.getListOfBooks()) {
+            callback.checkIfContinueGenerating();
+            callback.incStepProgressIndicatorPosition();
+            if (shouldReprocessEpubMetadata(book)) {
+              try {
+                callback.showMessage(book.getAuthors() + ": " + book.getTitle());
+                new OpfOutput(book).processEPubFile();
+              } catch (IOException e) {
+                String message = Localization.Main.getText("gui.error.tools.processEpubMetadataOfAllBooks", book.getTitle(), e.getMessage());
+                logger.error(message, e);
+              }
+              countMetadata++;
             }
-            countMetadata++;
           }
         }
       }
       callback.endReprocessingEpubMetadata();
-      logger.debug("COMPLETED: Processing ePub Metadata");
+      logger.debug("COMPLETED: Processing ePub Metadata (" + countMetadata + " processed, "
+                   + EpubMetadataCache.getSkippedCount() + " already up to date)");
       callback.checkIfContinueGenerating();
 
       if (syncLog)
@@ -1192,6 +1498,41 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
                     = copyDateMisses
                     = copyCrcUnchecked = 0;
 
+      // If we are going to be comparing checksums then calculate the ones
+      // that will be needed in parallel before starting the copy process.
+      // The pairs must match those syncFiles() is called for below.
+      int workerThreads = currentProfile.getWorkerThreads();
+      if (checkCRC && workerThreads > 1) {
+        List<CachedFile[]> pairs = new ArrayList<CachedFile[]>();
+        Set<CachedFile> seen = Collections.newSetFromMap(new IdentityHashMap<CachedFile, Boolean>());
+        if ((currentProfile.getDeviceMode() != DeviceMode.Default)
+        && (!currentProfile.getOnlyCatalogAtTarget())) {
+          for (String pathToCopy : CatalogManager.getListOfFilesPathsToCopy()) {
+            addChecksumPair(pairs, seen,
+                            CachedFileManager.addCachedFile(currentProfile.getDatabaseFolder(), pathToCopy),
+                            CachedFileManager.addCachedFile(targetFolder, pathToCopy));
+          }
+        }
+        List<File> imageTargetFolders = new ArrayList<File>();
+        if (currentProfile.getDeviceMode() == DeviceMode.Nas
+        || (currentProfile.getDeviceMode() == DeviceMode.Nook && ! currentProfile.getZipTrookCatalog())) {
+          imageTargetFolders.add(currentProfile.getOnlyCatalogAtTarget() ? targetFolder
+                                                                         : new File(targetFolder, CatalogManager.getCatalogFolderName()));
+        }
+        if (currentProfile.getCopyToDatabaseFolder()) {
+          imageTargetFolders.add(new File(libraryFolder, CatalogManager.getCatalogFolderName()));
+        }
+        for (File imageTargetFolder : imageTargetFolders) {
+          for (Map.Entry<String, CachedFile> entry : CatalogManager.getMapOfCatalogImages().entrySet()) {
+            addChecksumPair(pairs, seen, entry.getValue(), CachedFileManager.addCachedFile(imageTargetFolder, entry.getKey()));
+          }
+        }
+        prefetchChecksums(pairs, workerThreads);
+      }
+      if (workerThreads > 1) {
+        startCopyPool(workerThreads);
+      }
+
       // copy the catalogs
       // (and books, if the target folder is set) to the destination folder
 
@@ -1209,6 +1550,7 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
           CachedFile targetFile = CachedFileManager.addCachedFile(targetFolder, pathToCopy);
           syncFiles(sourceFile, targetFile);
         }
+        waitForCopies();
         logger.debug("COMPLETED: syncFiles eBook files to target");
         callback.checkIfContinueGenerating();
 
@@ -1302,6 +1644,7 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
         if (logger.isTraceEnabled())
           logger.trace("copy '" + indexFile + "' to '" + catalogFile + "'");
         syncFiles(new CachedFile(indexFile.getAbsolutePath()), new CachedFile(catalogFile.getAbsolutePath()));
+        waitForCopies();
         File targetCatalogZipFile = new File(targetFolder, Constants.TROOK_CATALOG_FILENAME);
         // Start by deleting any existing ZIP file
         if (targetCatalogZipFile.exists()) {
@@ -1327,6 +1670,9 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
         syncFiles(new CachedFile(generateFolder.getAbsolutePath()), new CachedFile(targetCatalogFolder.getAbsolutePath()));
         logger.debug("START: Copy images to Destination catalog folder");
         syncImages(new CachedFile(targetCatalogFolder.getAbsolutePath()));
+        // With a ZIP catalog the images are also copied into the generate folder,
+        // so they must be complete before that folder is walked again.
+        waitForCopies();
         logger.debug("COMPLETED: Copy images to Destination catalog folder");
         break;
       case Default:
@@ -1344,8 +1690,11 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
         logger.debug("COMPLETED: Copy Catalog Folder to Database Folder");
         logger.debug("START: Copy images to Database catalog folder");
         syncImages(new CachedFile(libraryCatalogFolder.getAbsolutePath()));
+        waitForCopies();
         logger.debug("COMPLETED: Copy images to Database catalog folder");
       }
+      waitForCopies();
+      stopCopyPool();
       callback.endCopyCatToTarget();
       callback.checkIfContinueGenerating();
 
@@ -1380,6 +1729,7 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
       CachedFileManager.saveCache(generateFolder.getPath(), callback);
       logger.info(Localization.Main.getText("info.step.savedcache", CachedFileManager.getSaveCount(), CachedFileManager.getIgnoredCount()));
       logger.info(Localization.Main.getText("info.step.donein", System.currentTimeMillis() - saveCacheStart));
+      EpubMetadataCache.saveCache();
 
       callback.checkIfContinueGenerating();
 
@@ -1409,6 +1759,10 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
       logger.info(String.format("%8d  ", countMetadata) + Localization.Main.getText("stats.run.metadata"));
       logger.info(String.format("%8d  ", CatalogManager.thumbnailManager.getCountOfImagesGenerated()) + Localization.Main.getText("stats.run.thumbnails"));
       logger.info(String.format("%8d  ", CatalogManager.coverManager.getCountOfImagesGenerated()) + Localization.Main.getText("stats.run.covers"));
+      if (! currentProfile.getExternalImages()) {
+        logger.info(String.format("%8d  ", ImageManager.getBase64CacheHits()) + Localization.Main.getText("stats.run.base64hits"));
+        logger.info(String.format("%8d  ", ImageManager.getBase64CacheMisses()) + Localization.Main.getText("stats.run.base64misses"));
+      }
       logger.info("");
       logger.info(Localization.Main.getText("stats.copy.header"));
       logger.info(String.format("%8d  ", copyExistHits) + Localization.Main.getText("stats.copy.notexist"));
@@ -1458,6 +1812,9 @@ nextCC: for (CustomCatalogEntry customCatalog : customCatalogs) {
       logger.error("*************************************************");
       logger.error(" ");
     } finally {
+      HtmlManager.abortWorkers();
+      ImageManager.abortWorkers();
+      stopCopyPool();
       // make sure the temp files are deleted whatever happens
       long deleteFilesStart = System.currentTimeMillis();
       logger.info(Localization.Main.getText("info.step.deletingfiles"));
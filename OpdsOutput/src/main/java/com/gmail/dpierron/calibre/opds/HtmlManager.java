@@ -6,6 +6,10 @@ package com.gmail.dpierron.calibre.opds;
  *  The process uses an XSLT transform on the DOM document.  A number
  *  of different transformation variants are possible according to the
  *  document type that is being handled
+ *
+ *  The transforms can optionally be done by a pool of worker threads
+ *  so that they overlap with the building of the following pages.
+ *  Once handed to the pool a document must not be changed again.
  */
 
 import com.gmail.dpierron.calibre.configuration.ConfigurationManager;
@@ -21,6 +25,11 @@ import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class HtmlManager {
   public enum FeedType {
@@ -29,25 +38,117 @@ public class HtmlManager {
     MainCatalog
   }
   private final static Logger logger = Logger.getLogger(HtmlManager.class);
-  private static long timeInHtml = 0;
+  private static AtomicLong timeInHtml = new AtomicLong();
+  // Set while HTML generation is being done by worker threads
+  private static ThreadPoolExecutor workers;
+  private static IOException workerError;
 
   public HtmlManager() {
-    timeInHtml = 0;
+    timeInHtml.set(0);
   }
 
   public long getTimeInHtml() {
-    return timeInHtml;
+    return timeInHtml.get();
+  }
+
+  /**
+   * Start a pool of threads to do the HTML generation.
+   *
+   * The queue of waiting documents is kept short so that memory use stays
+   * bounded:  if it is full then the caller does the transform itself.
+   *
+   * @param threads Number of threads to use
+   */
+  public static void startWorkers(int threads) {
+    workerError = null;
+    workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                     new ArrayBlockingQueue<Runnable>(threads * 2),
+                                     new ThreadFactory() {
+                                       public Thread newThread(Runnable r) {
+                                         Thread t = new Thread(r, "c2o-html");
+                                         t.setDaemon(true);
+                                         return t;
+                                       }
+                                     },
+                                     new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /**
+   * Wait for all HTML generation handed to the worker threads to complete,
+   * and then stop the threads.
+   *
+   * @throws IOException The first error (if any) from writing a file
+   */
+  public static void stopWorkers() throws IOException {
+    if (workers == null) {
+      return;
+    }
+    workers.shutdown();
+    try {
+      while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+        CatalogManager.callback.checkIfContinueGenerating();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // Make sure nothing is left running if we are aborting
+      workers.shutdownNow();
+      workers = null;
+    }
+    if (workerError != null) {
+      IOException e = workerError;
+      workerError = null;
+      throw e;
+    }
+  }
+
+  /**
+   * Stop the worker threads (if running) abandoning any work not yet done
+   */
+  public static void abortWorkers() {
+    if (workers != null) {
+      workers.shutdownNow();
+      workers = null;
+    }
   }
 
-  public static void generateHtmlFromDOM(Document document, File outputFile, FeedType feedType) throws IOException {
+  /**
+   * Generate the HTML file for a document.
+   *
+   * The output file is always created before returning, although if worker
+   * threads are in use it may not be complete until stopWorkers() is called.
+   *
+   * @param document
+   * @param outputFile
+   * @param feedType
+   * @throws IOException
+   */
+  public static void generateHtmlFromDOM(final Document document, final File outputFile, final FeedType feedType) throws IOException {
+    final FileOutputStream fos = new FileOutputStream(outputFile);
+    if (workers == null) {
+      transform(document, outputFile, feedType, fos);
+      return;
+    }
+    workers.execute(new Runnable() {
+      public void run() {
+        try {
+          transform(document, outputFile, feedType, fos);
+        } catch (IOException e) {
+          logger.error("Error writing " + outputFile.getAbsolutePath(), e);
+          synchronized (HtmlManager.class) {
+            if (workerError == null) workerError = e;
+          }
+        }
+      }
+    });
+  }
 
-    FileOutputStream fos = null;
+  private static void transform(Document document, File outputFile, FeedType feedType, FileOutputStream fos) throws IOException {
     try {
       // create the same file as html
       long now = System.currentTimeMillis();
 
       JDOMSource source = new JDOMSource(document);
-      fos = new FileOutputStream(outputFile);
       StreamResult streamResult = new StreamResult(fos);
       try {
         Transformer transformer = null;
@@ -77,10 +178,9 @@ public class HtmlManager {
       } catch (TransformerException e) {
         logger.error(Localization.Main.getText("error.cannotTransform", outputFile.getAbsolutePath()), e);
       }
-      timeInHtml += (System.currentTimeMillis() - now);
+      timeInHtml.addAndGet(System.currentTimeMillis() - now);
     } finally {
-      if (fos != null)
-        fos.close();
+      fos.close();
     }
 
   }
@@ -4,11 +4,20 @@ import com.gmail.dpierron.tools.i18n.Localization;
 import org.apache.log4j.Logger;
 
 import javax.imageio.ImageIO;
-import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 
+/**
+ * Load an image, resize it and save the result.
+ *
+ * This is done entirely with ImageIO and Java2D so that no Swing/AWT
+ * toolkit is needed (and so it works on a headless system).  The image
+ * is loaded synchronously so there is no need to wait for it to arrive,
+ * and it is reduced in a series of bilinear steps that at most halve
+ * the size each time.   This gives a result similar to SCALE_SMOOTH for
+ * a small fraction of the cost.
+ */
 public class ImageFile {
   private final static Logger logger = Logger.getLogger(ImageFile.class);
 
@@ -19,71 +28,97 @@ public class ImageFile {
   public static final String IMAGE_JPG = "jpg";
   public static final String IMAGE_PNG = "png";
 
-  private ImageIcon image;
-  private ImageIcon thumb;
+  private BufferedImage image;
+  private BufferedImage thumb;
 
   public ImageFile(String fileName) {
-    image = new ImageIcon(fileName);
-    if (!isImageLoaded()) {
-      try {
-        Thread.sleep(500);
-      } catch (InterruptedException e) {
-        // I don't give a tiny rat's ass
-      }
-      if (!isImageLoaded())
-        CatalogManager.callback.errorOccured(Localization.Main.getText("error.loadingImage", fileName), null);
+    Exception exception = null;
+    try {
+      image = ImageIO.read(new File(fileName));
+    } catch (Exception e) {
+      exception = e;
     }
+    // ImageIO returns null (rather than throwing) if it has no reader for the format
+    if (!isImageLoaded())
+      CatalogManager.callback.errorOccured(Localization.Main.getText("error.loadingImage", fileName), exception);
   }
 
   public boolean isImageLoaded() {
-    return (image != null && image.getImageLoadStatus() == MediaTracker.COMPLETE);
+    return (image != null && image.getWidth() > 0 && image.getHeight() > 0);
   }
 
   public Image getImage(int size, int dir) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    // Keep the aspect ratio (calculated the same way as getScaledInstance)
+    int targetWidth;
+    int targetHeight;
     if (dir == HORIZONTAL) {
-      thumb = new ImageIcon(image.getImage().getScaledInstance(size, -1, Image.SCALE_SMOOTH));
+      targetWidth = size;
+      targetHeight = Math.max(1, (int) ((long) height * size / width));
     } else {
-      thumb = new ImageIcon(image.getImage().getScaledInstance(-1, size, Image.SCALE_SMOOTH));
+      targetWidth = Math.max(1, (int) ((long) width * size / height));
+      targetHeight = size;
     }
-    return thumb.getImage();
+    thumb = resize(image, targetWidth, targetHeight);
+    return thumb;
+  }
+
+  /**
+   * Resize an image to the given size.
+   *
+   * When reducing, the size is at most halved at each step as a single
+   * bilinear step would skip most of the source pixels and give a
+   * poor (aliased) result.
+   *
+   * @param source
+   * @param targetWidth
+   * @param targetHeight
+   * @return  RGB image of the requested size
+   */
+  private static BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+    BufferedImage result = source;
+    int width = source.getWidth();
+    int height = source.getHeight();
+    do {
+      if (width > targetWidth) {
+        width = Math.max(targetWidth, width / 2);
+      } else {
+        width = targetWidth;
+      }
+      if (height > targetHeight) {
+        height = Math.max(targetHeight, height / 2);
+      } else {
+        height = targetHeight;
+      }
+      // Always draw at least once so that the result is RGB (as is needed for a JPEG)
+      BufferedImage step = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = step.createGraphics();
+      try {
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(result, 0, 0, width, height, null);
+      } finally {
+        g.dispose();
+      }
+      result = step;
+    } while (width != targetWidth || height != targetHeight);
+    return result;
   }
 
   public void saveImage(File file, String imageType) {
     if (thumb != null) {
-      BufferedImage bi = new BufferedImage(thumb.getIconWidth(), thumb.getIconHeight(), BufferedImage.TYPE_INT_RGB);
-      Graphics g = bi.getGraphics();
-      g.drawImage(thumb.getImage(), 0, 0, null);
-      int nbTries = 20;
       Exception exception = null;
-      while (nbTries > 0) {
-        boolean error = false;
-        try {
-          ImageIO.write(bi, imageType, file);
-        } catch (Exception e) {
-          String msg = "error occurred while writing image " + file.getName() + " - trying again (" + (nbTries) + " remaining)";
-          if (nbTries < 10)
-            logger.warn(msg, e);
-          else
-            logger.debug(msg, e);
-
-          if (exception == null)
-            exception = e;
-          error = true;
-        }
-        if (!error) {
-          nbTries = 0;
-          exception = null;
-        } else {
-          nbTries--;
-          try {
-            Thread.sleep(10); // wait 10ms
-          } catch (InterruptedException e) {
-            // I don't give a tiny rat's ass
-          }
-        }
+      try {
+        if (!ImageIO.write(thumb, imageType, file))
+          exception = new IllegalArgumentException("No ImageIO writer for image type " + imageType);
+      } catch (Exception e) {
+        exception = e;
       }
-      if (exception != null)
+      if (exception != null) {
+        logger.warn("error occurred while writing image " + file.getName(), exception);
         CatalogManager.callback.errorOccured(Localization.Main.getText("error.savingImage", file.getAbsolutePath()), exception);
+      }
     } else {
       CatalogManager.callback.errorOccured(Localization.Main.getText("error.generatingImage", file.getAbsolutePath()), null);
     }
@@ -12,6 +12,16 @@ import com.gmail.dpierron.tools.Helper;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public abstract class ImageManager {
@@ -21,8 +31,37 @@ public abstract class ImageManager {
 
   private int imageHeight = 1;
   private boolean imageSizeChanged;     // Set true to force regeneration of images
-  private long timeInImages;
-  private static int countOfImagesGenerated;
+  private final AtomicLong timeInImages = new AtomicLong();
+  private final AtomicInteger countOfImagesGenerated = new AtomicInteger();
+  // Images handed to the worker threads (only ever used from the calling thread)
+  private Set<String> queuedImages = new HashSet<String>();
+  // Set while image generation is being done by worker threads (shared by all image managers)
+  private static ThreadPoolExecutor workers;
+
+  private final static char[] BASE64_CODE =
+      ("ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "abcdefghijklmnopqrstuvwxyz" + "0123456789" + "+/").toCharArray();
+  // Upper limit on the size of the cache of encoded images (in characters)
+  private final static long BASE64_CACHE_MAX_CHARS = 16 * 1024 * 1024;
+  // Encoded images (shared by all image managers) with the least recently used first
+  private static LinkedHashMap<String, EncodedImage> base64Cache = new LinkedHashMap<String, EncodedImage>(256, 0.75f, true);
+  private static long base64CacheChars;
+  private static long base64CacheHits;
+  private static long base64CacheMisses;
+
+  /**
+   * An image encoded as a data URI, along with the file details it was encoded from
+   */
+  private static class EncodedImage {
+    final long length;
+    final long lastModified;
+    final String uri;
+
+    EncodedImage(long length, long lastModified, String uri) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.uri = uri;
+    }
+  }
 
   abstract String getResizedFilename();
   abstract String getResizedFilenameOld(Book book);
@@ -73,8 +112,69 @@ public abstract class ImageManager {
 
   public void reset () {
     // generatedImages = new HashMap<File, File>();
-    countOfImagesGenerated = 0;
-    timeInImages = 0;
+    countOfImagesGenerated.set(0);
+    timeInImages.set(0);
+    queuedImages = new HashSet<String>();
+    synchronized (ImageManager.class) {
+      base64Cache.clear();
+      base64CacheChars = 0;
+      base64CacheHits = 0;
+      base64CacheMisses = 0;
+    }
+  }
+
+  /**
+   * Start a pool of threads to do the image generation.
+   *
+   * The pool is shared by the cover and thumbnail managers.  The queue of
+   * waiting images is kept short:  if it is full then the caller generates
+   * the image itself.
+   *
+   * @param threads Number of threads to use
+   */
+  public static void startWorkers(int threads) {
+    workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                     new ArrayBlockingQueue<Runnable>(threads * 4),
+                                     new ThreadFactory() {
+                                       public Thread newThread(Runnable r) {
+                                         Thread t = new Thread(r, "c2o-images");
+                                         t.setDaemon(true);
+                                         return t;
+                                       }
+                                     },
+                                     new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /**
+   * Wait for all images handed to the worker threads to be generated,
+   * and then stop the threads.
+   */
+  public static void stopWorkers() {
+    if (workers == null) {
+      return;
+    }
+    workers.shutdown();
+    try {
+      while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+        CatalogManager.callback.checkIfContinueGenerating();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // Make sure nothing is left running if we are aborting
+      workers.shutdownNow();
+      workers = null;
+    }
+  }
+
+  /**
+   * Stop the worker threads (if running) abandoning any images not yet done
+   */
+  public static void abortWorkers() {
+    if (workers != null) {
+      workers.shutdownNow();
+      workers = null;
+    }
   }
 
   public final static ThumbnailManager newThumbnailManager() {
@@ -141,64 +241,149 @@ public abstract class ImageManager {
    * Get the contents of the specified file as base64 string
    * so that we can embed the image in the xml/html file
    *
+   * The same image is typically embedded in many catalog pages so the
+   * most recently used results are cached.   A cached result is only used
+   * if the file length and date are unchanged.
+   *
    * @return
    */
   public String getFileToBase64Uri (File f) {
-    final String base64code = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
-        + "abcdefghijklmnopqrstuvwxyz" + "0123456789" + "+/";
-
-    int length = (int)f.length();
-    int paddingCount = (3 - (length % 3)) % 3;
-
-    byte[] data = new byte[length + 2];
-    // Preset potential padding bytes to null
-    for (int i = 0 ; i < 2; i++) {
-      data[length+(i)] = 0;
+    // Use the CachedFile values if we have them to avoid going to disk
+    long length = f.length();
+    long lastModified = f.lastModified();
+    String key = f.getPath();
+    synchronized (ImageManager.class) {
+      EncodedImage cached = base64Cache.get(key);
+      if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+        base64CacheHits++;
+        return cached.uri;
+      }
+      base64CacheMisses++;
     }
+
+    byte[] data = new byte[(int)length];
     try {
       DataInputStream in = new DataInputStream(new FileInputStream(f));
-      in.readFully(data,0,length);
-      in.close();
-    } catch (EOFException eof) {
-      // Ignore this error as we got all the data!
-      // However this is still unexpected so lets log it when tracing
-      if (logger.isTraceEnabled())  logger.trace("Unexpected EOF reading " + f);
+      try {
+        in.readFully(data);
+      } finally {
+        in.close();
+      }
     } catch (IOException e) {
       // Errors are unexpected - set dummy URI if that is the case
       logger.warn("Unable to embed cover file " + f.getAbsolutePath() + "(IO Exception " + e.getMessage() + ")");
       return Constants.PARENT_PATH_PREFIX + Constants.DEFAULT_IMAGE_FILENAME;
     }
-    // process 3 bytes at a time, churning out 4 output bytes
-    StringBuffer encoded = new StringBuffer("");
-    for (int i = 0; i < length; i += 3) {
-      int j = ((data[i] & 0xff) << 16) +
-              ((data[i + 1] & 0xff) << 8) +
-               (data[i + 2] & 0xff);
-      encoded = encoded.append("" + base64code.charAt((j >> 18) & 0x3f) +
-                               "" + base64code.charAt((j >> 12) & 0x3f) +
-                               "" + base64code.charAt((j >> 6) & 0x3f) +
-                               "" + base64code.charAt(j & 0x3f));
-    }
-    data = null;        // <ay not be necessary - but lets help garbage collector
-    // Add final padding characters
-    for (int i = paddingCount ; i > 0 ; i--) {
-      encoded.setCharAt(encoded.length() - i, '=');
-    }
-    return "data:image/"
+    String uri = "data:image/"
             // take image type from file extenson
             + f.getName().substring(f.getName().lastIndexOf('.')+1) + ";base64,"
-            + encoded.toString();
+            + new String(toBase64(data));
+
+    synchronized (ImageManager.class) {
+      EncodedImage previous = base64Cache.put(key, new EncodedImage(length, lastModified, uri));
+      if (previous != null) {
+        base64CacheChars -= previous.uri.length();
+      }
+      base64CacheChars += uri.length();
+      // Drop the least recently used entries until we are back within the limit
+      Iterator<EncodedImage> it = base64Cache.values().iterator();
+      while (base64CacheChars > BASE64_CACHE_MAX_CHARS && it.hasNext()) {
+        base64CacheChars -= it.next().uri.length();
+        it.remove();
+      }
+    }
+    return uri;
+  }
+
+  /**
+   * Encode data as base64 (with padding)
+   *
+   * @param data
+   * @return
+   */
+  private static char[] toBase64(byte[] data) {
+    char[] encoded = new char[((data.length + 2) / 3) * 4];
+    int whole = data.length - data.length % 3;
+    int o = 0;
+    // process 3 bytes at a time, churning out 4 output chars
+    for (int i = 0; i < whole; i += 3) {
+      int j = ((data[i] & 0xff) << 16) | ((data[i + 1] & 0xff) << 8) | (data[i + 2] & 0xff);
+      encoded[o++] = BASE64_CODE[(j >>> 18) & 0x3f];
+      encoded[o++] = BASE64_CODE[(j >>> 12) & 0x3f];
+      encoded[o++] = BASE64_CODE[(j >>> 6) & 0x3f];
+      encoded[o++] = BASE64_CODE[j & 0x3f];
+    }
+    // Add final padding characters
+    int remaining = data.length - whole;
+    if (remaining > 0) {
+      int j = (data[whole] & 0xff) << 16;
+      if (remaining == 2) {
+        j |= (data[whole + 1] & 0xff) << 8;
+      }
+      encoded[o++] = BASE64_CODE[(j >>> 18) & 0x3f];
+      encoded[o++] = BASE64_CODE[(j >>> 12) & 0x3f];
+      encoded[o++] = remaining == 2 ? BASE64_CODE[(j >>> 6) & 0x3f] : '=';
+      encoded[o] = '=';
+    }
+    return encoded;
+  }
+
+  public static synchronized long getBase64CacheHits() {
+    return base64CacheHits;
+  }
+
+  public static synchronized long getBase64CacheMisses() {
+    return base64CacheMisses;
   }
 
   /**
    *    * generate a single image file
    *
+   * The image file is complete when this method returns.
+   *
    * @param imageFile   File for written fir output image
    * @param coverFile   File to be read for input image
    */
   public void generateImage(CachedFile imageFile, CachedFile coverFile) {
     assert imageFile != null && coverFile.exists();
     assert coverFile != null;
+    // bug #732821 Ensure file added to those cached for copying
+    CachedFileManager.addCachedFile(imageFile);
+    createImage(imageFile, coverFile);
+  }
+
+  /**
+   * Request that a single image file is generated.
+   *
+   * If worker threads are in use the image is generated in the background
+   * and will not be available until stopWorkers() has been called, so this
+   * must not be used for images whose contents are needed straight away.
+   * An image that has already been requested during this run is not
+   * requested again as the file will not exist until it has been written.
+   *
+   * @param imageFile   File for written fir output image
+   * @param coverFile   File to be read for input image
+   */
+  public void queueImage(final CachedFile imageFile, final CachedFile coverFile) {
+    if (workers == null) {
+      generateImage(imageFile, coverFile);
+      return;
+    }
+    assert imageFile != null && coverFile.exists();
+    if (!queuedImages.add(imageFile.getPath())) {
+      if (logger.isTraceEnabled()) logger.trace("queueImage: already queued " + imageFile.getAbsolutePath());
+      return;
+    }
+    // The file cache is not thread safe, so this must be done on the calling thread
+    CachedFileManager.addCachedFile(imageFile);
+    workers.execute(new Runnable() {
+      public void run() {
+        createImage(imageFile, coverFile);
+      }
+    });
+  }
+
+  private void createImage(CachedFile imageFile, CachedFile coverFile) {
     logger.debug("generateImage: " + imageFile.getAbsolutePath());
     long now = System.currentTimeMillis();
     try {
@@ -208,27 +393,26 @@ public abstract class ImageManager {
 
       ct.getImage(imageHeight, ImageFile.VERTICAL);
       ct.saveImage(imageFile, ImageFile.IMAGE_JPEG);
-      // bug #732821 Ensure file added to those cached for copying
-      CachedFile cf = CachedFileManager.addCachedFile(imageFile);
       if (logger.isTraceEnabled())
         logger.trace("generateImages: added new thumbnail file " + imageFile.getAbsolutePath() + " to list of files to copy");
-      countOfImagesGenerated++;         // Update count of files processed
+      countOfImagesGenerated.incrementAndGet();         // Update count of files processed
     } catch (Exception e) {
       CatalogManager.callback.errorOccured(Localization.Main.getText("error.generatingImage", imageFile.getAbsolutePath()), e);
       if (logger.isTraceEnabled())  logger.trace(e);
     } catch (Throwable t) {
          logger.warn("Unexpected error trying to generate image " + coverFile.getAbsolutePath() + "\n" + t );
+    } finally {
+      timeInImages.addAndGet(System.currentTimeMillis() - now);
+      imageFile.clearCachedInformation();
     }
-    timeInImages += (System.currentTimeMillis() - now);
-    imageFile.clearCachedInformation();
   }
 
   public long getTimeInImages() {
-    return timeInImages;
+    return timeInImages.get();
   }
 
   public int getCountOfImagesGenerated() {
-    return countOfImagesGenerated;
+    return countOfImagesGenerated.get();
   }
 
 }
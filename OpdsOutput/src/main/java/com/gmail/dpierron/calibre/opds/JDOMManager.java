@@ -12,6 +12,7 @@ import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
 import org.w3c.tidy.Tidy;
 
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
@@ -20,6 +21,7 @@ import java.io.*;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 
@@ -31,25 +33,47 @@ public class JDOMManager {
   private static final String FULLENTRY_XSL = "fullentry.xsl";
 
   private static JDOMFactory factory;
-  private static XMLOutputter outputter;
-  private static XMLOutputter serializer;
+  // SAXBuilder and XMLOutputter are not thread-safe either, so each thread
+  // that parses or writes XML (such as the ePub metadata workers) gets its own.
+  private static ThreadLocal<XMLOutputter> outputter = new ThreadLocal<XMLOutputter>();
+  private static ThreadLocal<XMLOutputter> serializer = new ThreadLocal<XMLOutputter>();
   private static TransformerFactory transformerFactory;
-  private static Transformer bookFullEntryTransformer;
-  private static Transformer catalogTransformer;
-  private static Transformer headerTransformer;
-  private static Transformer mainTransformer;
-  private static SAXBuilder sb;
+  // The stylesheets are compiled once, but as Transformers are not
+  // thread-safe each thread that generates HTML gets its own set.
+  private static HashMap<String, Templates> templates = new HashMap<String, Templates>();
+  private static ThreadLocal<Transformer> bookFullEntryTransformer = new ThreadLocal<Transformer>();
+  private static ThreadLocal<Transformer> catalogTransformer = new ThreadLocal<Transformer>();
+  private static ThreadLocal<Transformer> headerTransformer = new ThreadLocal<Transformer>();
+  private static ThreadLocal<Transformer> mainTransformer = new ThreadLocal<Transformer>();
+  private static ThreadLocal<SAXBuilder> sb = new ThreadLocal<SAXBuilder>();
 
   public static void reset() {
     factory = null;
-    outputter = null;
-    serializer = null;
+    outputter = new ThreadLocal<XMLOutputter>();
+    serializer = new ThreadLocal<XMLOutputter>();
     transformerFactory = null;
-    bookFullEntryTransformer = null;
-    catalogTransformer = null;
-    headerTransformer = null;
-    mainTransformer = null;
-    sb = null;
+    templates = new HashMap<String, Templates>();
+    bookFullEntryTransformer = new ThreadLocal<Transformer>();
+    catalogTransformer = new ThreadLocal<Transformer>();
+    headerTransformer = new ThreadLocal<Transformer>();
+    mainTransformer = new ThreadLocal<Transformer>();
+    sb = new ThreadLocal<SAXBuilder>();
+  }
+
+  /**
+   * Get the compiled form of a stylesheet, compiling it if this has not already been done
+   *
+   * @param xsl The name of the stylesheet resource
+   * @return
+   * @throws TransformerConfigurationException
+   */
+  private static synchronized Templates getTemplates(String xsl) throws TransformerConfigurationException {
+    Templates result = templates.get(xsl);
+    if (result == null) {
+      result = getTransformerFactory().newTemplates(new StreamSource(ConfigurationManager.getResourceAsStream(xsl)));
+      templates.put(xsl, result);
+    }
+    return result;
   }
 
   /**
@@ -58,27 +82,29 @@ public class JDOMManager {
    * @return
    */
   public static Transformer getHeaderTransformer() {
-    if (headerTransformer == null) {
+    Transformer transformer = headerTransformer.get();
+    if (transformer == null) {
       try {
-        headerTransformer = getTransformerFactory().newTransformer(new StreamSource(ConfigurationManager.getResourceAsStream(HEADER_XSL)));
-        setParametersOnCatalog(headerTransformer);
-        setIntroParameters(headerTransformer);
+        transformer = getTemplates(HEADER_XSL).newTransformer();
+        setParametersOnCatalog(transformer);
+        setIntroParameters(transformer);
         // Add book count if not generating ALl Books (which gives count if present)
         // headerTransformer.setParameter("programName", Constants.PROGNAME);
         // headerTransformer.setParameter("programVersion", Constants.PROGVERSION + Constants.BZR_VERSION);
  //        headerTransformer.setParameter("bookCount", Localization.Main.getText("bookword.many", DataModel.getListOfBooks().size()));
          String dateGenerated =
              DateFormat.getDateInstance(DateFormat.DEFAULT, ConfigurationManager.getCurrentProfile().getLanguage()).format(new Date());
-        headerTransformer.setParameter("i18n.dateGenerated",
+        transformer.setParameter("i18n.dateGenerated",
              Constants.PROGNAME + " " + Constants.PROGVERSION + " " + Constants.BZR_VERSION + ": "
              + Localization.Main.getText("i18n.dateGenerated",dateGenerated)
              + "  ("+ Localization.Main.getText("bookword.many", DataModel.getListOfBooks().size()) +")");
+        headerTransformer.set(transformer);
       } catch (TransformerConfigurationException e) {
         logger.error("getHeaderTransformer(): Error while configuring header transformer", e);
-        headerTransformer = null;
+        transformer = null;
       }
     }
-    return headerTransformer;
+    return transformer;
   }
 
   public enum Namespace {
@@ -146,17 +172,19 @@ public class JDOMManager {
   }
 
   public static Transformer getCatalogTransformer() {
-    if (catalogTransformer == null) {
+    Transformer transformer = catalogTransformer.get();
+    if (transformer == null) {
       try {
-        catalogTransformer = getTransformerFactory().newTransformer(new StreamSource(ConfigurationManager.getResourceAsStream(CATALOG_XSL)));
-        setParametersOnCatalog(catalogTransformer);
-        catalogTransformer.setParameter("programName", "");  // Set to empty for all pages except top level
+        transformer = getTemplates(CATALOG_XSL).newTransformer();
+        setParametersOnCatalog(transformer);
+        transformer.setParameter("programName", "");  // Set to empty for all pages except top level
+        catalogTransformer.set(transformer);
       } catch (TransformerConfigurationException e) {
         logger.error("getCatalogTransformer(): Error while configuring catalog transformer", e);
-        catalogTransformer = null;
+        transformer = null;
      }
     }
-    return catalogTransformer;
+    return transformer;
   }
 
   /**
@@ -165,16 +193,18 @@ public class JDOMManager {
    * @return
    */
   public static Transformer getBookFullEntryTransformer() {
-    if (bookFullEntryTransformer == null) {
+    Transformer transformer = bookFullEntryTransformer.get();
+    if (transformer == null) {
       try {
-        bookFullEntryTransformer = getTransformerFactory().newTransformer(new StreamSource(ConfigurationManager.getResourceAsStream(FULLENTRY_XSL)));
-        setParametersOnCatalog(bookFullEntryTransformer);
+        transformer = getTemplates(FULLENTRY_XSL).newTransformer();
+        setParametersOnCatalog(transformer);
+        bookFullEntryTransformer.set(transformer);
       } catch (TransformerConfigurationException e) {
         logger.error("getCatalogTransformer(): Error while configuring book full entry transformer", e);
-        bookFullEntryTransformer = null;
+        transformer = null;
       }
     }
-    return bookFullEntryTransformer;
+    return transformer;
   }
 
   /**
@@ -183,17 +213,19 @@ public class JDOMManager {
    * @return
    */
   public static Transformer getMainCatalogTransformer() {
-    if (mainTransformer == null) {
+    Transformer transformer = mainTransformer.get();
+    if (transformer == null) {
       try {
-        mainTransformer = getTransformerFactory().newTransformer(new StreamSource(ConfigurationManager.getResourceAsStream(CATALOG_XSL)));
-        setParametersOnCatalog(mainTransformer);
-        setIntroParameters(mainTransformer);
+        transformer = getTemplates(CATALOG_XSL).newTransformer();
+        setParametersOnCatalog(transformer);
+        setIntroParameters(transformer);
+        mainTransformer.set(transformer);
       } catch (TransformerConfigurationException e) {
         logger.error("getMainCatalogTransformer(): Error while configuring catalog transformer", e);
-        mainTransformer = null;
+        transformer = null;
       }
     }
-    return mainTransformer;
+    return transformer;
   }
 
   /**
@@ -237,7 +269,7 @@ public class JDOMManager {
     return transformer;
   }
 
-  public static TransformerFactory getTransformerFactory() {
+  public static synchronized TransformerFactory getTransformerFactory() {
     if (transformerFactory == null) {
       transformerFactory = TransformerFactory.newInstance();
     }
@@ -256,22 +288,30 @@ public class JDOMManager {
   }
 
   public static SAXBuilder getSaxBuilder() {
-    if (sb == null) {
-      sb = new SAXBuilder();
+    SAXBuilder result = sb.get();
+    if (result == null) {
+      result = new SAXBuilder();
+      sb.set(result);
     }
-    return sb;
+    return result;
   }
 
   public static XMLOutputter getOutputter() {
-    if (outputter == null)
-      outputter = new XMLOutputter(Format.getPrettyFormat());
-    return outputter;
+    XMLOutputter result = outputter.get();
+    if (result == null) {
+      result = new XMLOutputter(Format.getPrettyFormat());
+      outputter.set(result);
+    }
+    return result;
   }
 
   public static XMLOutputter getSerializer() {
-    if (serializer == null)
-      serializer = new XMLOutputter(Format.getCompactFormat());
-    return serializer;
+    XMLOutputter result = serializer.get();
+    if (result == null) {
+      result = new XMLOutputter(Format.getCompactFormat());
+      serializer.set(result);
+    }
+    return result;
   }
 
   public static Element rootElement(String name, Namespace namespace, Namespace... declaredNamespaces) {
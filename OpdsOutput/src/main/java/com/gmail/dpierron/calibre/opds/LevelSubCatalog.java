@@ -7,6 +7,7 @@ import com.gmail.dpierron.calibre.configuration.CustomCatalogEntry;
 import com.gmail.dpierron.calibre.configuration.Icons;
 import com.gmail.dpierron.calibre.datamodel.*;
 import com.gmail.dpierron.calibre.datamodel.filter.BookFilter;
+import com.gmail.dpierron.calibre.datamodel.filter.BookIndex;
 import com.gmail.dpierron.calibre.datamodel.filter.FilterHelper;
 import com.gmail.dpierron.tools.i18n.Localization;
 import com.gmail.dpierron.tools.Composite;
@@ -21,6 +22,9 @@ public class LevelSubCatalog extends SubCatalog {
   private final static Logger logger = Logger.getLogger(LevelSubCatalog.class);
 
   private String title;
+  // Index of the books used for the custom and featured catalog filters
+  private BookIndex bookIndex;
+  private List<Book> bookIndexBooks;
 
   public LevelSubCatalog(List<Book> books, String title) {
     super(books);
@@ -28,6 +32,20 @@ public class LevelSubCatalog extends SubCatalog {
     setStuffToFilterOut(new Vector<Object>() {{add("dummy");}}); // needed to make SubCatalog.isInDeepLevel() know that we're a deep level
   }
 
+  /**
+   * Get the index used to apply search filters to the books at this level.
+   * It is built once and shared by all the custom catalogs.
+   *
+   * @return
+   */
+  private BookIndex getBookIndex() {
+    if (bookIndex == null || bookIndexBooks != getBooks()) {
+      bookIndexBooks = getBooks();
+      bookIndex = new BookIndex(bookIndexBooks);
+    }
+    return bookIndex;
+  }
+
   /**
    *   Generation of Custom catalogs is broken into its own routine as
    *   we may want to generate them in front of standard sections, or after
@@ -119,7 +137,7 @@ public class LevelSubCatalog extends SubCatalog {
 
             // internal custom catalog (search based)
 
-            List<Book> customCatalogBooks = FilterHelper.filter(customCatalogBookFilter, getBooks());
+            List<Book> customCatalogBooks = FilterHelper.filter(customCatalogBookFilter, getBookIndex());
             int nb = customCatalogBooks.size();
             String s;
             switch ((int)nb) {
@@ -227,7 +245,7 @@ public class LevelSubCatalog extends SubCatalog {
 
     if (CatalogManager.featuredBooksFilter != null) {
       logger.debug("STARTED: Generating Featured catalog");
-      List<Book> featuredBooks = FilterHelper.filter(CatalogManager.featuredBooksFilter, getBooks());
+      List<Book> featuredBooks = FilterHelper.filter(CatalogManager.featuredBooksFilter, getBookIndex());
       if (featuredBooks.size() == 0) {
         logger.warn("No books found for Featured Books section");
       } else {
@@ -30,7 +30,7 @@ public class RatingsSubCatalog extends BooksSubCatalog {
 
   List<BookRating> getRatings() {
     if (ratings == null) {
-      ratings = new LinkedList<BookRating>();
+      ratings = new ArrayList<BookRating>();
       for (Book book : getBooks()) {
         if (!ratings.contains(book.getRating()))
           ratings.add(book.getRating());
@@ -56,7 +56,7 @@ public class RatingsSubCatalog extends BooksSubCatalog {
       for (Book book : getBooks()) {
         List<Book> books = mapOfBooksByRating.get(book.getRating());
         if (books == null) {
-          books = new LinkedList<Book>();
+          books = new ArrayList<Book>();
           BookRating rating = book.getRating();
           if (rating != null)
             mapOfBooksByRating.put(rating, books);
@@ -74,7 +74,7 @@ public class RatingsSubCatalog extends BooksSubCatalog {
 
     boolean inSubDir = getCatalogLevel().length() > 0 || pBreadcrumbs.size() > 1;
     if (books == null)
-      books = new LinkedList<Book>();
+      books = new ArrayList<Book>();
 
     String filename = getCatalogBaseFolderFileName() + Constants.TYPE_SEPARATOR + rating.getId();
     String title = LocalizationHelper.getEnumConstantHumanName(rating);
@@ -116,7 +116,7 @@ public class RatingsSubCatalog extends BooksSubCatalog {
 
     // list the entries (or split them)
     List<Element> result;
-    result = new LinkedList<Element>();
+    result = new ArrayList<Element>();
     for (int i = 0; i < BookRating.sortedRatings().length; i++) {
       BookRating rating = BookRating.sortedRatings()[i];
       Breadcrumbs breadcrumbs = Breadcrumbs.addBreadcrumb(pBreadcrumbs, title, urlExt);
@@ -19,12 +19,10 @@ import org.apache.log4j.Logger;
 import org.jdom.Element;
 
 import java.io.IOException;
-import java.text.Collator;
 import java.util.*;
 
 public class SeriesSubCatalog extends BooksSubCatalog {
   private final static Logger logger = Logger.getLogger(SeriesSubCatalog.class);
-  private final static Collator collator = Collator.getInstance(ConfigurationManager.getLocale());
   private List<Series> series;
   private Map<Series, List<Book>> mapOfBooksBySerie;
 
@@ -51,9 +49,10 @@ public class SeriesSubCatalog extends BooksSubCatalog {
    */
   public List<Series> getSeries() {
     if (series == null) {
-      series = new LinkedList<Series>();
+      series = new ArrayList<Series>();
+      Set<Series> seen = new HashSet<Series>();
       for (Book book : getBooks()) {
-        if (book.getSeries() != null && !series.contains(book.getSeries()))
+        if (book.getSeries() != null && seen.add(book.getSeries()))
           series.add(book.getSeries());
       }
 
@@ -63,9 +62,8 @@ public class SeriesSubCatalog extends BooksSubCatalog {
       Collections.sort(series, new Comparator<Series>() {
 
         public int compare(Series o1, Series o2) {
-          return Helper.checkedCollatorCompare((o1 == null ? "" : o1.getTitleToSplitByLetter()),
-                                               (o2 == null ? "" : o2.getTitleToSplitByLetter()),
-                                               collator);
+          return Helper.checkedCollationKeyCompare((o1 == null ? null : o1.getSortKey()),
+                                                   (o2 == null ? null : o2.getSortKey()));
         }
       });
 
@@ -82,7 +80,7 @@ public class SeriesSubCatalog extends BooksSubCatalog {
       for (Book book : getBooks()) {
         List<Book> books = mapOfBooksBySerie.get(book.getSeries());
         if (books == null) {
-          books = new LinkedList<Book>();
+          books = new ArrayList<Book>();
           Series serie = book.getSeries();
           if (serie != null)
             mapOfBooksBySerie.put(serie, books);
@@ -179,7 +177,7 @@ public class SeriesSubCatalog extends BooksSubCatalog {
                                             addTheSeriesWordToTheTitle);
     } else {
       // list the series list
-      result = new LinkedList<Element>();
+      result = new ArrayList<Element>();
       for (int i = from; i < listSeries.size(); i++) {
         if ((splitOption != SplitOption.DontSplitNorPaginate) && ((i - from) >= maxBeforePaginate)) {
           // TODO #c2o-208   Add Previous, First and Last links if needed
@@ -345,7 +343,7 @@ public class SeriesSubCatalog extends BooksSubCatalog {
     if (Helper.isNotNullOrEmpty(sTitle))
       sTitle = sTitle + ", ";
 
-    List<Element> result = new LinkedList<Element>();
+    List<Element> result = new ArrayList<Element>();
     SortedSet<String> letters = new TreeSet<String>(mapOfSeriesByLetter.keySet());
     for (String letter : letters) {
       // generate the letter file
@@ -733,9 +733,7 @@ public abstract class SubCatalog {
       return;
     }
 
-    // Create as a DOM object
-    // TODO  Check if there might be a cheaper way to do this not using DOM?
-    String test = feed.toString();
+    // Create as a DOM object (needed for the XSLT transform to HTML)
     Document document = new Document();
     document.addContent(feed);
 
@@ -114,7 +114,7 @@ public class TagListSubCatalog extends TagsSubCatalog {
                                           pFilename);
     } else {
       logger.debug("no split by letter");
-      result = new LinkedList<Element>();
+      result = new ArrayList<Element>();
       for (int i = from; i < listTags.size(); i++) {
         if ((splitOption != SplitOption.DontSplitNorPaginate) && ((i - from) >= maxBeforePaginate)) {
           Element nextLink = getListOfTags(pBreadcrumbs,
@@ -177,7 +177,7 @@ public class TagListSubCatalog extends TagsSubCatalog {
     if (Helper.isNotNullOrEmpty(sTitle))
       sTitle += ", ";
 
-    List<Element> result = new LinkedList<Element>();
+    List<Element> result = new ArrayList<Element>();
     SortedSet<String> letters = new TreeSet<String>(mapOfTagsByLetter.keySet());
     // assert baseFilename.endsWith(Constants.XML_EXTENSION);
     for (String letter : letters) {
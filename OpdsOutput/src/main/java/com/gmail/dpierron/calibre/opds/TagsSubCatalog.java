@@ -15,12 +15,10 @@ import org.apache.log4j.Logger;
 import org.jdom.Element;
 
 import java.io.IOException;
-import java.text.Collator;
 import java.util.*;
 
 public abstract class TagsSubCatalog extends BooksSubCatalog {
   private final static Logger logger = Logger.getLogger(TagsSubCatalog.class);
-  private final static Collator collator = Collator.getInstance(ConfigurationManager.getLocale());
 
   private List<Tag> tags;
   private Map<Tag, List<Book>> mapOfBooksByTag;
@@ -50,7 +48,7 @@ public abstract class TagsSubCatalog extends BooksSubCatalog {
 
     if (Helper.isNotNullOrEmpty(tagsToRemove)) {
       // make a copy of the books because RemoveSelectedTagsFilter actually removes tags from the Book objects
-      result = new LinkedList<Book>();
+      result = new ArrayList<Book>();
       for (Book originalBook : originalBooks) {
         Book newBook = originalBook.copy();
         result.add(newBook);
@@ -66,11 +64,12 @@ public abstract class TagsSubCatalog extends BooksSubCatalog {
    */
   List<Tag> getTags() {
     if (tags == null) {
-      tags = new LinkedList<Tag>();
+      tags = new ArrayList<Tag>();
+      Set<Tag> seen = new HashSet<Tag>();
       for (Book book : getBooks()) {
         for (Tag tag : book.getTags()) {
           if (! CatalogManager.getTagsToIgnore().contains(tag)
-          &&  ! tags.contains(tag)) {
+          &&  seen.add(tag)) {
             tags.add(tag);
           }
         }
@@ -82,9 +81,8 @@ public abstract class TagsSubCatalog extends BooksSubCatalog {
       Collections.sort(tags, new Comparator<Tag>() {
 
         public int compare(Tag o1, Tag o2) {
-          String title1 = (o1 == null ? "" : o1.getName().toUpperCase());
-          String title2 = (o2 == null ? "" : o2.getName().toUpperCase());
-          return collator.compare(title1, title2);
+          return Helper.checkedCollationKeyCompare((o1 == null ? null : o1.getSortKey()),
+                                                   (o2 == null ? null : o2.getSortKey()));
         }
       });
     return tags;
@@ -97,7 +95,7 @@ public abstract class TagsSubCatalog extends BooksSubCatalog {
         for (Tag tag : book.getTags()) {
           List<Book> books = mapOfBooksByTag.get(tag);
           if (books == null) {
-            books = new LinkedList<Book>();
+            books = new ArrayList<Book>();
             mapOfBooksByTag.put(tag, books);
           }
           books.add(book);
@@ -2,12 +2,10 @@ package com.gmail.dpierron.calibre.opds;
 
 import com.gmail.dpierron.calibre.datamodel.Book;
 import com.gmail.dpierron.calibre.datamodel.EBookFile;
-
-import java.util.HashMap;
-import java.util.Map;
+import com.gmail.dpierron.tools.IntMap;
 
 public class ThumbnailManager extends ImageManager {
-  Map<String, String> mapOfThumbnailUrlByBookId = new HashMap<String, String>();
+  IntMap<String> mapOfThumbnailUrlByBookId = new IntMap<String>();
 
   // CONSTRUCTOS
 
@@ -58,7 +56,7 @@ public class ThumbnailManager extends ImageManager {
    * @param url
    */
   public void addBook(Book book, String url) {
-    mapOfThumbnailUrlByBookId.put(book.getId(), url);
+    mapOfThumbnailUrlByBookId.put(book.getIntId(), url);
   }
 
   /**
@@ -67,7 +65,7 @@ public class ThumbnailManager extends ImageManager {
    * @return
    */
   public String getThumbnailUrl(Book book) {
-    return mapOfThumbnailUrlByBookId.get(book.getId());
+    return mapOfThumbnailUrlByBookId.get(book.getIntId());
   }
 
 }
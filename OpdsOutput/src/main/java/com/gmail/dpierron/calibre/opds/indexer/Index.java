@@ -3,19 +3,28 @@ package com.gmail.dpierron.calibre.opds.indexer;
 import com.gmail.dpierron.calibre.configuration.ConfigurationManager;
 import com.gmail.dpierron.calibre.datamodel.Author;
 import com.gmail.dpierron.calibre.datamodel.Book;
-import com.gmail.dpierron.calibre.datamodel.DataModel;
 import com.gmail.dpierron.calibre.datamodel.Tag;
 import com.gmail.dpierron.tools.Helper;
+import com.gmail.dpierron.tools.IntMap;
 import org.apache.log4j.Logger;
 
 import java.io.*;
 import java.rmi.dgc.VMID;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * The index of all the catalog items (books, authors, series, etc.)
  * composing the catalog, with the keywords to search them full-text
+ *
+ * The index is held in a compact form as it can get very large when the
+ * comments are indexed:
+ *  - each distinct keyword is held once in a dictionary and given an ordinal
+ *    in the order it was first seen (which is also its id in the export)
+ *  - each book indexed is given an ordinal, its urls are held once in a side table
+ *  - the postings of a keyword are a single int array, each entry being the
+ *    book ordinal and the item type packed together, in the order they were indexed
  */
 public class Index {
   // TODO Make this configurabel?
@@ -27,25 +36,72 @@ public class Index {
   // TODO make a language dependent
   private final static Collection<String> keywordsToIgnore = Arrays.asList("and", "the", "not");
 
-  Map<String, Keyword> mapOfKeywords;
+  private static final ItemType[] ITEM_TYPES = ItemType.values();
+  // Number of low bits of a posting holding the item type
+  private static final int TYPE_BITS = 3;
+  private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+  private static final int INITIAL_KEYWORDS = 1024;
+  private static final int INITIAL_POSTINGS = 4;
+  // Number of leading characters of the keywords used to split the index in shards
+  private static final int SHARD_PREFIX_LENGTH = 2;
+
+  // The keyword dictionary
+  private Map<String, Integer> keywordOrdinals;
+  private String[] keywords;
+  private int keywordCount;
+  // The postings of each keyword, by keyword ordinal
+  private int[][] postings;
+  private int[] postingCounts;
+  // A bit per item type the keyword has postings for, by keyword ordinal
+  private byte[] typeMasks;
+  // Keywords removed from this index by filterIndex()
+  private BitSet removed;
+  private int removedCount;
+
+  // The side table of the books indexed, by book ordinal
+  private IntMap<Integer> bookOrdinals;
+  private List<Book> books;
+  private List<String> bookUrls;
+  private List<String> bookThumbnailUrls;
 
   /**
    *
    */
   public Index() {
     super();
-    mapOfKeywords = new TreeMap<String, Keyword>();
+    keywordOrdinals = new HashMap<String, Integer>();
+    keywords = new String[INITIAL_KEYWORDS];
+    postings = new int[INITIAL_KEYWORDS][];
+    postingCounts = new int[INITIAL_KEYWORDS];
+    typeMasks = new byte[INITIAL_KEYWORDS];
+    removed = new BitSet();
+    bookOrdinals = new IntMap<Integer>();
+    books = new ArrayList<Book>();
+    bookUrls = new ArrayList<String>();
+    bookThumbnailUrls = new ArrayList<String>();
   }
 
   /**
+   * Make a copy that shares the keywords and postings of the index,
+   * but has its own set of removed keywords.   Only used by filterIndex()
+   * once all the books have been indexed.
    *
    * @param toCopy
    */
   private Index(Index toCopy) {
-    this();
-    mapOfKeywords = new TreeMap<String, Keyword>();
-    if (toCopy.mapOfKeywords != null)
-      mapOfKeywords.putAll(toCopy.mapOfKeywords);
+    super();
+    keywordOrdinals = toCopy.keywordOrdinals;
+    keywords = toCopy.keywords;
+    keywordCount = toCopy.keywordCount;
+    postings = toCopy.postings;
+    postingCounts = toCopy.postingCounts;
+    typeMasks = toCopy.typeMasks;
+    removed = (BitSet) toCopy.removed.clone();
+    removedCount = toCopy.removedCount;
+    bookOrdinals = toCopy.bookOrdinals;
+    books = toCopy.books;
+    bookUrls = toCopy.bookUrls;
+    bookThumbnailUrls = toCopy.bookThumbnailUrls;
   }
 
   /**
@@ -53,9 +109,7 @@ public class Index {
    * @return
    */
   public long size() {
-    if (mapOfKeywords == null)
-      return 0;
-    return mapOfKeywords.size();
+    return keywordCount - removedCount;
   }
 
   /**
@@ -123,47 +177,88 @@ public class Index {
     return result;
   }
 
+  /**
+   * Get the ordinal of a keyword, adding it to the dictionary if it is new
+   *
+   * @param word
+   * @return
+   */
+  private int getKeywordOrdinal(String word) {
+    Integer ordinal = keywordOrdinals.get(word);
+    if (ordinal != null)
+      return ordinal;
+    if (keywordCount == keywords.length) {
+      int capacity = keywords.length * 2;
+      keywords = Arrays.copyOf(keywords, capacity);
+      postings = Arrays.copyOf(postings, capacity);
+      postingCounts = Arrays.copyOf(postingCounts, capacity);
+      typeMasks = Arrays.copyOf(typeMasks, capacity);
+    }
+    keywords[keywordCount] = word;
+    keywordOrdinals.put(word, keywordCount);
+    return keywordCount++;
+  }
+
   /**
    *
    * @param pKeyword
    * @param type
-   * @param bookEntry
+   * @param bookOrdinal
    */
-  public void addItem(String pKeyword, ItemType type, BookEntry bookEntry) {
-    Keyword keyword;
+  private void addItem(String pKeyword, ItemType type, int bookOrdinal) {
     String word = prepareKeywordForIndexing(pKeyword);
     if (Helper.isNullOrEmpty(word))
       return;
-    if (mapOfKeywords == null) {
-      mapOfKeywords = new TreeMap<String, Keyword>();
-      keyword = new Keyword(1, word);
-      keyword.addCatalogItem(type, bookEntry);
-    } else {
-      keyword = mapOfKeywords.get(word);
-      if (keyword == null) {
-        keyword = new Keyword(mapOfKeywords.size(), word);
-        keyword.addCatalogItem(type, bookEntry);
-        mapOfKeywords.put(word, keyword);
-      } else {
-        keyword.addCatalogItem(type, bookEntry);
-      }
+    int ordinal = getKeywordOrdinal(word);
+    int[] list = postings[ordinal];
+    int count = postingCounts[ordinal];
+    if (list == null) {
+      list = new int[INITIAL_POSTINGS];
+      postings[ordinal] = list;
+    } else if (count == list.length) {
+      list = Arrays.copyOf(list, count + (count >> 1) + 1);
+      postings[ordinal] = list;
     }
+    list[count] = (bookOrdinal << TYPE_BITS) | type.ordinal();
+    postingCounts[ordinal] = count + 1;
+    typeMasks[ordinal] |= 1 << type.ordinal();
   }
 
   /**
    * @param text
    * @param type
-   * @param bookEntry
+   * @param bookOrdinal
    * @param tags
    */
-  private void indexMultipleKeywords(String text, ItemType type, BookEntry bookEntry, boolean tags) {
+  private void indexMultipleKeywords(String text, ItemType type, int bookOrdinal, boolean tags) {
     List<String> keywords = splitStringIntoKeywords(text, tags);
     for (String keyword : keywords) {
 
-      addItem(keyword, type, bookEntry);
+      addItem(keyword, type, bookOrdinal);
     }
   }
 
+  /**
+   * Get the ordinal of a book, adding it to the side table if it is new.
+   * If a book is indexed more than once the urls given the first time are kept.
+   *
+   * @param book
+   * @param url
+   * @param thumbnailUrl
+   * @return
+   */
+  private int getBookOrdinal(Book book, String url, String thumbnailUrl) {
+    Integer ordinal = bookOrdinals.get(book.getIntId());
+    if (ordinal != null)
+      return ordinal;
+    ordinal = books.size();
+    books.add(book);
+    bookUrls.add(url);
+    bookThumbnailUrls.add(thumbnailUrl);
+    bookOrdinals.put(book.getIntId(), ordinal);
+    return ordinal;
+  }
+
   /**
    *
    * @param book
@@ -176,46 +271,48 @@ public class Index {
     if (book == null)
       return;
 
-    BookEntry bookEntry = new BookEntry(book, url, thumbnailUrl);
+    int bookOrdinal = getBookOrdinal(book, url, thumbnailUrl);
 
     // parse the book title
-    indexMultipleKeywords(book.getTitle(), ItemType.BookTitle, bookEntry, false);
+    indexMultipleKeywords(book.getTitle(), ItemType.BookTitle, bookOrdinal, false);
 
     // parse the book comments
     if (ConfigurationManager.getCurrentProfile().getIndexComments())
-      indexMultipleKeywords(Helper.removeHtmlElements(book.getComment()), ItemType.BookComment, bookEntry, false);
+      indexMultipleKeywords(Helper.removeHtmlElements(book.getComment()), ItemType.BookComment, bookOrdinal, false);
 
     // parse the book series
     if (book.getSeries() != null)
-      indexMultipleKeywords(book.getSeries().getName(), ItemType.Series, bookEntry, false);
+      indexMultipleKeywords(book.getSeries().getName(), ItemType.Series, bookOrdinal, false);
 
     // parse the book authors
     for (Author author : book.getAuthors()) {
-      indexMultipleKeywords(author.getName(), ItemType.Author, bookEntry, false);
+      indexMultipleKeywords(author.getName(), ItemType.Author, bookOrdinal, false);
     }
 
     // parse the book tags
     for (Tag tag : book.getTags()) {
-      indexMultipleKeywords(tag.getName(), ItemType.Tag, bookEntry, true);
+      indexMultipleKeywords(tag.getName(), ItemType.Tag, bookOrdinal, true);
     }
   }
 
   /**
+   * Get the ordinals of the keywords still in the index, in alphabetical order
    *
-   * @param text
-   * @return
-   */
-  private String parseForApostrophes(String text) {
-    return text.replace("'", "\\'");
-  }
-
-  /**
-   *
-   * @param text
    * @return
    */
-  private String parseForFrenchQuotes(String text) {
-    return text.replace("\"", "\\\"");
+  private int[] getSortedKeywordOrdinals() {
+    String[] words = new String[(int) size()];
+    int n = 0;
+    for (int ordinal = 0; ordinal < keywordCount; ordinal++) {
+      if (!removed.get(ordinal))
+        words[n++] = keywords[ordinal];
+    }
+    Arrays.sort(words);
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = keywordOrdinals.get(words[i]);
+    }
+    return result;
   }
 
   /**
@@ -245,16 +342,20 @@ public class Index {
     if (size() <= 10)
       return result;
 
-    // sort the keywords in a list, by number of uses
-    List<Keyword> keywords = new ArrayList<Keyword>(mapOfKeywords.size());
-    keywords.addAll(mapOfKeywords.values());
-    Collections.sort(keywords, new Comparator<Keyword>() {
-      public int compare(Keyword o1, Keyword o2) {
-        int o1Size = o1.catalogItems.size();
-        int o2Size = o2.catalogItems.size();
-        return o1Size - o2Size;
-      }
-    });
+    // sort the keywords in a list, by number of item types they are used for
+    // (a counting sort, so that keywords used as often stay in alphabetical order)
+    int[] sorted = getSortedKeywordOrdinals();
+    int[] starts = new int[ITEM_TYPES.length + 2];
+    for (int ordinal : sorted) {
+      starts[Integer.bitCount(typeMasks[ordinal]) + 1]++;
+    }
+    for (int i = 1; i < starts.length; i++) {
+      starts[i] += starts[i - 1];
+    }
+    int[] keywords = new int[sorted.length];
+    for (int ordinal : sorted) {
+      keywords[starts[Integer.bitCount(typeMasks[ordinal])]++] = ordinal;
+    }
 
     // compute how much keywords we must remove
     long nbKeywordsToRemove = size() - maxKeywords;
@@ -263,21 +364,20 @@ public class Index {
     int startingPosition = 0;
     int position = startingPosition;
     if (filterHint == FilterHintType.RemoveCommon) {
-      position = startingPosition = keywords.size() - 1;
+      position = startingPosition = keywords.length - 1;
     } else if (filterHint == FilterHintType.RemoveMedian) {
-      startingPosition = keywords.size() / 2;
+      startingPosition = keywords.length / 2;
       position = startingPosition - 1;
     }
 
-    while ((nbKeywordsToRemove > 0) && (position >= 0) && (position < keywords.size())) {
+    while ((nbKeywordsToRemove > 0) && (position >= 0) && (position < keywords.length)) {
       // remove the current keyword
-      Keyword keyword = keywords.get(position);
-      result.mapOfKeywords.remove(keyword.word);
+      result.remove(keywords[position]);
       // for the "remove median" case, remove the one to the same distance, on the opposite side of the middle
       if (filterHint == FilterHintType.RemoveMedian) {
         int oppositePosition = startingPosition + (startingPosition - position);
-        keyword = keywords.get(oppositePosition);
-        result.mapOfKeywords.remove(keyword.word);
+        if (oppositePosition < keywords.length)
+          result.remove(keywords[oppositePosition]);
         nbKeywordsToRemove = nbKeywordsToRemove - 2;
         position--;
       } else {
@@ -292,292 +392,361 @@ public class Index {
     return result;
   }
 
-/*
-  public void exportToJavascript(File exportFolder) throws FileNotFoundException {
-    List<String> sqlKeywords = new ArrayList<String>(mapOfKeywords.size());
-    List<String> sqlBooks = new ArrayList<String>(mapOfKeywords.size());
-    List<String> sqlCatalogItems = new ArrayList<String>(mapOfKeywords.size());
-    // clear the flag of all books
-    for (Book book : DataModel.getListOfBooks()) {
-      book.clearFlagged();
+  private void remove(int keywordOrdinal) {
+    if (!removed.get(keywordOrdinal)) {
+      removed.set(keywordOrdinal);
+      removedCount++;
     }
-    for (Keyword keyword : mapOfKeywords.values()) {
-      String kwId = Long.toString(keyword.id);
-      {
-        // add a line in the KEYWORDS table
-        String kwWord = keyword.word; // no need to search for apostrophes, the keywords are already cleaned-up and uppercase
-        String kwWeight = "" + keyword.catalogItems.size();
-        String sql =
-            "tx.executeSql('INSERT INTO KEYWORDS (KW_ID, KW_WORD, KW_WEIGHT) VALUES (?, ?, ?)', ['" + kwId + "', '" + kwWord + "', '" + kwWeight + "']);";
-        sqlKeywords.add(sql);
-      }
-      for (Map.Entry<ItemType, CatalogItem> catalogItemEntry : keyword.catalogItems.entrySet()) {
-        for (BookEntry bookEntry : catalogItemEntry.getValue().bookEntries) {
-          String bkId = bookEntry.book.getId();
-          int bookId = Integer.parseInt(bkId);
-          if (!bookEntry.book.isFlagged()) {
-            bookEntry.book.setFlagged();
-            {
-              // add a line in the BOOKS table
-              String bkTitle = parseForApostrophes(bookEntry.book.getTitle());
-              String bkUrl = bookEntry.url;
-              String bkCoverUrl = bookEntry.thumbnailUrl;
-              String sql =
-                  "tx.executeSql('INSERT INTO BOOKS (BK_ID, BK_TITLE, BK_URL, BK_COVER_URL) VALUES (?, ?, ?, ?)', ['" + bkId + "', '" + bkTitle + "', '" +
-                      bkUrl + "','" + bkCoverUrl + "']);";
-              sqlBooks.add(sql);
+  }
+
+  /**
+   * Writes one of the search database files as javascript functions
+   * returning an array of rows, each row being an array of strings.
+   * Most files hold a single function, named after the file.
+   *
+   * The rows are streamed straight to the file, the strings being escaped
+   * as they are written.   If wanted a gzip'ed copy of the file is written
+   * at the same time (with a .js.gz extension) for the web servers that
+   * can send it as is to the browsers that accept it.
+   */
+  private static class JavascriptArrayWriter {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private final Writer out;
+    private boolean inArray;
+    private boolean firstRow;
+
+    JavascriptArrayWriter(File exportFolder, String name, int rows, boolean gzip, String... keys) throws IOException {
+      this(exportFolder, name, gzip);
+      startArray("get" + Helper.toTitleCase(name), rows, keys);
+    }
+
+    JavascriptArrayWriter(File exportFolder, String name, boolean gzip) throws IOException {
+      OutputStream os = new FileOutputStream(new File(exportFolder, name + ".js"));
+      if (gzip) {
+        final OutputStream js = os;
+        final OutputStream gz;
+        FileOutputStream gzFile = null;
+        boolean opened = false;
+        try {
+          gzFile = new FileOutputStream(new File(exportFolder, name + ".js.gz"));
+          gz = new GZIPOutputStream(gzFile, BUFFER_SIZE);
+          opened = true;
+        } finally {
+          // Do not leave the files open if the gzip one could not be started
+          if (!opened) {
+            try {
+              if (gzFile != null) gzFile.close();
+            } finally {
+              js.close();
             }
           }
-          // add a line in the CATALOG_ITEMS table
-          {
-            String catType = catalogItemEntry.getKey().getCode();
-            String sql =
-                "tx.executeSql('INSERT INTO CATALOG_ITEMS (KW_ID, BK_ID, CAT_TYPE) VALUES (?, ?, ?)', ['" + kwId + "', '" + bkId + "', '" + catType + "']);";
-            sqlCatalogItems.add(sql);
-          }
         }
+        os = new OutputStream() {
+          public void write(int b) throws IOException {
+            js.write(b);
+            gz.write(b);
+          }
+          public void write(byte[] b, int off, int len) throws IOException {
+            js.write(b, off, len);
+            gz.write(b, off, len);
+          }
+          public void close() throws IOException {
+            try {
+              js.close();
+            } finally {
+              gz.close();
+            }
+          }
+        };
       }
+      out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"), BUFFER_SIZE);
     }
 
-    // output the SQL
-    File outputFile = new File(exportFolder, "database.js");
-    FileOutputStream fos = null;
-    PrintWriter pw = null;
-    try {
-      fos = new FileOutputStream(outputFile);
-      pw = new PrintWriter(fos);
-      pw.println("// inserting Books");
-      pw.println("console.log('inserting Books ');");
-      Collections.sort(sqlBooks);
-      for (String sql : sqlBooks) {
-        pw.println(sql);
+    void startArray(String functionName, int rows, String... keys) throws IOException {
+      if (inArray)
+        endArray();
+      inArray = true;
+      firstRow = true;
+      out.write("function " + functionName + " () {\n");
+      out.write(" // ");
+      for (int i = 0; i < keys.length; i++) {
+        if (i > 0)
+          out.write(", ");
+        out.write(keys[i]);
       }
-      pw.println("// end of Books");
-      pw.println("console.log('finished inserting Books ');");
-
-      pw.println("// inserting Keywords");
-      pw.println("console.log('inserting Keywords ');");
-      Collections.sort(sqlKeywords);
-      for (String sql : sqlKeywords) {
-        pw.println(sql);
+      out.write("\n // " + rows + " elements\n");
+      out.write(" return [\n");
+    }
+
+    void writeRow(String... values) throws IOException {
+      if (!firstRow)
+        out.write(",\n");
+      firstRow = false;
+      out.write("  [");
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0)
+          out.write(',');
+        out.write('\'');
+        writeEscaped(values[i]);
+        out.write('\'');
       }
-      pw.println("// end of Keywords");
-      pw.println("console.log('finished inserting Keywords ');");
-
-      pw.println("// inserting CatalogItems");
-      pw.println("console.log('inserting CatalogItems ');");
-      Collections.sort(sqlCatalogItems);
-      for (String sql : sqlCatalogItems) {
-        pw.println(sql);
+      out.write(']');
+    }
+
+    /**
+     * Write a string for use between single quotes in javascript
+     */
+    private void writeEscaped(String value) throws IOException {
+      String s = String.valueOf(value);
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        switch (c) {
+          case '\'':
+          case '\\':
+            out.write('\\');
+            out.write(c);
+            break;
+          case '\n':
+            out.write("\\n");
+            break;
+          case '\r':
+            out.write("\\r");
+            break;
+          case '\u2028':
+            out.write("\\u2028");
+            break;
+          case '\u2029':
+            out.write("\\u2029");
+            break;
+          default:
+            out.write(c);
+        }
       }
-      pw.println("// end of CatalogItems");
-      pw.println("console.log('finished inserting CatalogItems ');");
-    } finally {
-      if (pw != null)
-        pw.close();
     }
-  }
-*/
-/*
-  private void writeJsonArray(String name, List<String> strings, PrintWriter pw) {
-    pw.print("[");
-    Iterator<String> iterator = strings.iterator();
-    while (iterator.hasNext()) {
-      String string = iterator.next();
-      pw.print("'" + string + "'");
-      if (iterator.hasNext())
-        pw.print(",");
+
+    void endArray() throws IOException {
+      if (!firstRow)
+        out.write("\n");
+      out.write(" ];\n");
+      out.write("}\n");
+      inArray = false;
+    }
+
+    void close() throws IOException {
+      if (inArray)
+        endArray();
+      out.close();
     }
-    pw.print("]");
   }
-*/
-/*
-  private void writeJson(File exportFolder, String name, List<String> jsonData, List<String> jsonKeys) throws IOException {
-    File outputFile = new File(exportFolder, name + ".json");
-    FileOutputStream fos = null;
-    PrintWriter pw = null;
+
+  /**
+   * Write the identifier of the search database
+   *
+   * @param exportFolder
+   * @param gzip
+   * @param shards the number of shards the keywords are split in, 0 if they are not
+   * @throws IOException
+   */
+  private void exportIdentifier(File exportFolder, boolean gzip, int shards) throws IOException {
+    JavascriptArrayWriter identifier = new JavascriptArrayWriter(exportFolder, "identifier", 1, gzip, "id", "label", "date", "shards");
     try {
-      fos = new FileOutputStream(outputFile);
-      pw = new PrintWriter(fos);
-      pw.println("{");
-      writeJsonArray(name, jsonData, pw);
-      pw.println(",");
-      writeJsonArray("keys", jsonKeys, pw);
-      pw.println("}");
+      identifier.writeRow(new VMID().toString(),
+          ConfigurationManager.getCurrentProfile().getCatalogTitle(),
+          SimpleDateFormat.getInstance().format(new Date()),
+          Integer.toString(shards));
     } finally {
-      if (pw != null)
-        pw.close();
+      identifier.close();
     }
+  }
 
+  /**
+   * Write the postings of a keyword in the CATALOG_ITEMS array,
+   * grouped by item type in the order of the types
+   *
+   * @param out
+   * @param ordinal
+   * @param kwId
+   * @throws IOException
+   */
+  private void writeCatalogItems(JavascriptArrayWriter out, int ordinal, String kwId) throws IOException {
+    int[] list = postings[ordinal];
+    int count = postingCounts[ordinal];
+    for (ItemType type : ITEM_TYPES) {
+      if ((typeMasks[ordinal] & (1 << type.ordinal())) == 0)
+        continue;
+      String catType = type.getCode();
+      for (int i = 0; i < count; i++) {
+        if ((list[i] & TYPE_MASK) == type.ordinal())
+          out.writeRow(kwId, books.get(list[i] >>> TYPE_BITS).getId(), catType);
+      }
+    }
   }
- */
-/*
-  public void exportToJSON(File exportFolder) throws IOException {
-    List<String> jsonKeywords = new ArrayList<String>(mapOfKeywords.size());
-    List<String> jsonBooks = new ArrayList<String>(mapOfKeywords.size());
-    List<String> jsonCatalogItems = new ArrayList<String>(mapOfKeywords.size());
-    // clear the flag of all books
-    for (Book book : DataModel.getListOfBooks()) {
-      book.clearFlagged();
+
+  /**
+   * Write a row of the BOOKS array
+   *
+   * @param out
+   * @param bookOrdinal
+   * @throws IOException
+   */
+  private void writeBook(JavascriptArrayWriter out, int bookOrdinal) throws IOException {
+    out.writeRow(books.get(bookOrdinal).getId(), books.get(bookOrdinal).getTitle(), bookUrls.get(bookOrdinal), bookThumbnailUrls.get(bookOrdinal));
+  }
+
+  public void exportToJavascriptArrays(File exportFolder) throws IOException {
+    boolean gzip = ConfigurationManager.getCurrentProfile().getGzipSearchDatabase();
+    int[] sortedKeywords = getSortedKeywordOrdinals();
+
+    // count the rows first, as each file starts with its number of elements
+    boolean[] bookWritten = new boolean[books.size()];
+    int nbBooks = 0;
+    int nbCatalogItems = 0;
+    for (int ordinal : sortedKeywords) {
+      int[] list = postings[ordinal];
+      int count = postingCounts[ordinal];
+      nbCatalogItems += count;
+      for (int i = 0; i < count; i++) {
+        int bookOrdinal = list[i] >>> TYPE_BITS;
+        if (!bookWritten[bookOrdinal]) {
+          bookWritten[bookOrdinal] = true;
+          nbBooks++;
+        }
+      }
     }
-    for (Keyword keyword : mapOfKeywords.values()) {
-      String kwId = Long.toString(keyword.id);
-      {
+    // the books are written the first time one of their postings is met
+    Arrays.fill(bookWritten, false);
+
+    exportIdentifier(exportFolder, gzip, 0);
+
+    JavascriptArrayWriter jsBooks = null;
+    JavascriptArrayWriter jsKeywords = null;
+    JavascriptArrayWriter jsCatalogItems = null;
+    try {
+      jsBooks = new JavascriptArrayWriter(exportFolder, "books", nbBooks, gzip, "bkId", "bkTitle", "bkUrl", "bkThumbnailUrl");
+      jsKeywords = new JavascriptArrayWriter(exportFolder, "keywords", sortedKeywords.length, gzip, "kwId", "kwWord", "kwWeight");
+      jsCatalogItems = new JavascriptArrayWriter(exportFolder, "catalogitems", nbCatalogItems, gzip, "kwId", "bkId", "catType");
+      for (int ordinal : sortedKeywords) {
+        String kwId = Integer.toString(ordinal);
+        int[] list = postings[ordinal];
+        int count = postingCounts[ordinal];
         // add a line in the KEYWORDS table
-        String kwWord = keyword.word; // no need to search for apostrophes, the keywords are already cleaned-up and uppercase
-        String kwWeight = "" + keyword.catalogItems.size();
-        jsonKeywords.add(kwId);
-        jsonKeywords.add(kwWord);
-        jsonKeywords.add(kwWeight);
-      }
-      for (Map.Entry<ItemType, CatalogItem> catalogItemEntry : keyword.catalogItems.entrySet()) {
-        for (BookEntry bookEntry : catalogItemEntry.getValue().bookEntries) {
-          String bkId = bookEntry.book.getId();
-          int bookId = Integer.parseInt(bkId);
-          if (!bookEntry.book.isFlagged()) {
-            bookEntry.book.setFlagged();
-            {
-              // add a line in the BOOKS table
-              String bkTitle = parseForApostrophes(bookEntry.book.getTitle());
-              String bkUrl = bookEntry.url;
-              String bkCoverUrl = bookEntry.thumbnailUrl;
-              jsonBooks.add(bkId);
-              jsonBooks.add(bkTitle);
-              jsonBooks.add(bkUrl);
-              jsonBooks.add(bkCoverUrl);
-            }
-          }
-          // add a line in the CATALOG_ITEMS table
-          {
-            String catType = catalogItemEntry.getKey().getCode();
-            jsonCatalogItems.add(kwId);
-            jsonCatalogItems.add(bkId);
-            jsonCatalogItems.add(catType);
+        jsKeywords.writeRow(kwId, keywords[ordinal], Integer.toString(count));
+        // add the lines in the BOOKS table for the books not yet met
+        for (int i = 0; i < count; i++) {
+          int bookOrdinal = list[i] >>> TYPE_BITS;
+          if (!bookWritten[bookOrdinal]) {
+            bookWritten[bookOrdinal] = true;
+            writeBook(jsBooks, bookOrdinal);
           }
         }
+        // add the lines in the CATALOG_ITEMS table
+        writeCatalogItems(jsCatalogItems, ordinal, kwId);
       }
+    } finally {
+      if (jsBooks != null)
+        jsBooks.close();
+      if (jsKeywords != null)
+        jsKeywords.close();
+      if (jsCatalogItems != null)
+        jsCatalogItems.close();
     }
+  }
 
-    writeJson(exportFolder, "books", jsonBooks, new ArrayList<String>() {{
-      add("bkId");
-      add("bkTitle");
-      add("bkUrl");
-      add("bkCoverUrl");
-    }});
-    writeJson(exportFolder, "keywords", jsonKeywords, new ArrayList<String>() {{
-      add("kwId");
-      add("kwWord");
-      add("kwWeight");
-    }});
-    writeJson(exportFolder, "catalogitems", jsonCatalogItems, new ArrayList<String>() {{
-      add("kwId");
-      add("bkId");
-      add("catType");
-    }});
+  /**
+   * Get the prefix of a keyword used to choose its shard
+   *
+   * @param word
+   * @return
+   */
+  private static String getShardPrefix(String word) {
+    int length = word.codePointCount(0, word.length());
+    return word.substring(0, word.offsetByCodePoints(0, Math.min(length, SHARD_PREFIX_LENGTH)));
   }
-*/
+
   /**
-   * Create a Javascript file from the items passed in
+   * Export the index split in shards, each holding the keywords starting
+   * with the same prefix, so that the search page only has to download
+   * the shards for what is typed in.
    *
-   * TODO  See if rework can write files in-line?
+   * Each shard (shard_N.js) holds the keywords, their catalog items and the
+   * books these refer to (so a book can be in several shards).  The list of
+   * the shards and of their prefixes is written in shards.js, and the number
+   * of shards is given in the identifier.
    *
    * @param exportFolder
-   * @param name
-   * @param data
-   * @param keys
    * @throws IOException
    */
-  private void writeJavascript(File exportFolder, String name, List<String[]> data, List<String> keys) throws IOException {
-    File outputFile = new File(exportFolder, name + ".js");
-    FileOutputStream fos = null;
-    PrintWriter pw = null;
-    try {
-      fos = new FileOutputStream(outputFile);
-      pw = new PrintWriter(fos);
-      {
-        pw.println("function get" + Helper.toTitleCase(name) + " () {");
-        pw.print(" // ");
-        Iterator<String> iterator = keys.iterator();
-        while (iterator.hasNext()) {
-          String string = iterator.next();
-          pw.print(string);
-          if (iterator.hasNext())
-            pw.print(", ");
-        }
-        pw.println();
-        pw.println(" // " + data.size() + " elements");
-        pw.println(" return [");
-        Iterator<String[]> arrayIterator = data.iterator();
-        while (arrayIterator.hasNext()) {
-          String[] stringArray = arrayIterator.next();
-          pw.print("  [");
-          for (int i = 0; i < stringArray.length; i++) {
-            String string = stringArray[i];
-            pw.print("'" + string + "'");
-            if (i + 1 < stringArray.length)
-              pw.print(",");
-          }
-          pw.print("]");
-          if (arrayIterator.hasNext())
-            pw.print(",");
-            pw.println();
-        }
-        pw.println(" ];");
-        pw.println("}");
+  public void exportToJavascriptShards(File exportFolder) throws IOException {
+    boolean gzip = ConfigurationManager.getCurrentProfile().getGzipSearchDatabase();
+    int[] sortedKeywords = getSortedKeywordOrdinals();
+
+    // the keywords are sorted, so the keywords of a shard are next to each other
+    List<String> prefixes = new ArrayList<String>();
+    List<Integer> shardStarts = new ArrayList<Integer>();
+    for (int i = 0; i < sortedKeywords.length; i++) {
+      String prefix = getShardPrefix(keywords[sortedKeywords[i]]);
+      if (prefixes.isEmpty() || !prefix.equals(prefixes.get(prefixes.size() - 1))) {
+        prefixes.add(prefix);
+        shardStarts.add(i);
       }
-    } finally {
-      if (pw != null)
-        pw.close();
     }
+    shardStarts.add(sortedKeywords.length);
 
-  }
+    exportIdentifier(exportFolder, gzip, prefixes.size());
 
-  public void exportToJavascriptArrays(File exportFolder) throws IOException {
-    List<String[]> jsKeywords = new ArrayList<String[]>(mapOfKeywords.size());
-    List<String[]> jsBooks = new ArrayList<String[]>(mapOfKeywords.size());
-    List<String[]> jsCatalogItems = new ArrayList<String[]>(mapOfKeywords.size());
-    // clear the flag of all books
-    for (Book book : DataModel.getListOfBooks()) {
-      book.clearFlagged();
-    }
-    // TODO:  See if we can rework to write directly to files to reduce RAM usage
-    for (Keyword keyword : mapOfKeywords.values()) {
-      String kwId = Long.toString(keyword.id);
-      {
-        // add a line in the KEYWORDS table
-        String kwWord = keyword.word; // no need to search for apostrophes, the keywords are already cleaned-up and uppercase
-        String kwWeight = "" + keyword.size();
-        jsKeywords.add(new String[]{kwId, kwWord, kwWeight});
+    JavascriptArrayWriter jsShards = new JavascriptArrayWriter(exportFolder, "shards", prefixes.size(), gzip, "prefix", "shard", "keywords");
+    try {
+      for (int shard = 0; shard < prefixes.size(); shard++) {
+        jsShards.writeRow(prefixes.get(shard), Integer.toString(shard), Integer.toString(shardStarts.get(shard + 1) - shardStarts.get(shard)));
       }
-      for (Map.Entry<ItemType, CatalogItem> catalogItemEntry : keyword.catalogItems.entrySet()) {
-        for (BookEntry bookEntry : catalogItemEntry.getValue().bookEntries) {
-          String bkId = bookEntry.book.getId();
-          int bookId = Integer.parseInt(bkId);
-          if (!bookEntry.book.isFlagged()) {
-            bookEntry.book.setFlagged();
-            {
-              // add a line in the BOOKS table
-              String bkTitle = parseForApostrophes(bookEntry.book.getTitle());
-              String bkUrl = bookEntry.url;
-              String bkThumbnailUrl = bookEntry.thumbnailUrl;
-              jsBooks.add(new String[]{bkId, bkTitle, bkUrl, bkThumbnailUrl});
-            }
-          }
-          // add a line in the CATALOG_ITEMS table
-          {
-            String catType = catalogItemEntry.getKey().getCode();
-            jsCatalogItems.add(new String[]{kwId, bkId, catType});
+    } finally {
+      jsShards.close();
+    }
+
+    // the shard (plus one) a book was last counted or written for
+    int[] bookShard = new int[books.size()];
+    int[] shardBooks = new int[books.size()];
+    for (int shard = 0; shard < prefixes.size(); shard++) {
+      int start = shardStarts.get(shard);
+      int end = shardStarts.get(shard + 1);
+
+      // count the rows first, as each array starts with its number of elements
+      int nbBooks = 0;
+      int nbCatalogItems = 0;
+      for (int k = start; k < end; k++) {
+        int ordinal = sortedKeywords[k];
+        int[] list = postings[ordinal];
+        int count = postingCounts[ordinal];
+        nbCatalogItems += count;
+        for (int i = 0; i < count; i++) {
+          int bookOrdinal = list[i] >>> TYPE_BITS;
+          if (bookShard[bookOrdinal] != shard + 1) {
+            bookShard[bookOrdinal] = shard + 1;
+            shardBooks[nbBooks++] = bookOrdinal;
           }
         }
       }
+
+      String functionPrefix = "getShard" + shard;
+      JavascriptArrayWriter jsShard = new JavascriptArrayWriter(exportFolder, "shard_" + shard, gzip);
+      try {
+        jsShard.startArray(functionPrefix + "Books", nbBooks, "bkId", "bkTitle", "bkUrl", "bkThumbnailUrl");
+        for (int i = 0; i < nbBooks; i++) {
+          writeBook(jsShard, shardBooks[i]);
+        }
+        jsShard.startArray(functionPrefix + "Keywords", end - start, "kwId", "kwWord", "kwWeight");
+        for (int k = start; k < end; k++) {
+          int ordinal = sortedKeywords[k];
+          jsShard.writeRow(Integer.toString(ordinal), keywords[ordinal], Integer.toString(postingCounts[ordinal]));
+        }
+        jsShard.startArray(functionPrefix + "Catalogitems", nbCatalogItems, "kwId", "bkId", "catType");
+        for (int k = start; k < end; k++) {
+          int ordinal = sortedKeywords[k];
+          writeCatalogItems(jsShard, ordinal, Integer.toString(ordinal));
+        }
+      } finally {
+        jsShard.close();
+      }
     }
-    List<String[]> jsIdentifier = new LinkedList<String[]>();
-    jsIdentifier.add(new String[]{new VMID().toString(),
-        ConfigurationManager.getCurrentProfile().getCatalogTitle(),
-        SimpleDateFormat.getInstance().format(new Date())});
-    writeJavascript(exportFolder, "identifier", jsIdentifier, Helper.listThis("id", "label", "date"));
-    writeJavascript(exportFolder, "books", jsBooks, Helper.listThis("bkId", "bkTitle", "bkUrl", "bkThumbnailUrl"));
-    writeJavascript(exportFolder, "keywords", jsKeywords, Helper.listThis("kwId", "kwWord", "kwWeight"));
-    writeJavascript(exportFolder, "catalogitems", jsCatalogItems, Helper.listThis("kwId", "bkId", "catType"));
   }
 }
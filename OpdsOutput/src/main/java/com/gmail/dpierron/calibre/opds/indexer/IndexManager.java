@@ -54,11 +54,16 @@ public class IndexManager {
    * @throws IOException
    */
   public static void exportToJavascriptArrays() throws IOException {
-    Index index2 = index.filterIndex(ConfigurationManager.getCurrentProfile().getMaxKeywords(),
-        ConfigurationManager.getCurrentProfile().getIndexFilterAlgorithm());
     File searchFolder = new File(CatalogManager.getGenerateFolder(), "_search");
     searchFolder = new File(searchFolder, "database");
     searchFolder.mkdirs();
+    if (ConfigurationManager.getCurrentProfile().getShardSearchDatabase()) {
+      // Each shard is small enough, so there is no need to drop keywords
+      index.exportToJavascriptShards(searchFolder);
+      return;
+    }
+    Index index2 = index.filterIndex(ConfigurationManager.getCurrentProfile().getMaxKeywords(),
+        ConfigurationManager.getCurrentProfile().getIndexFilterAlgorithm());
     index2.exportToJavascriptArrays(searchFolder);
   }
 }
@@ -0,0 +1,243 @@
+package com.gmail.dpierron.calibre.opf;
+/**
+ * This class remembers the metadata last written into the ePub
+ * file of each book by OpfOutput, so that ePubs whose metadata is
+ * already up to date are not rewritten on every run.
+ *
+ * For every ePub that is processed we remember (keyed by the book uuid)
+ * a fingerprint of the metadata written into it, and the length and date
+ * of the ePub file once written.   If on a later run the fingerprint of
+ * the book metadata is the same and the ePub file has not been changed
+ * since, there is nothing to do and the ePub does not even need to be opened.
+ * Leaving the file alone also means its date does not change, so it is
+ * not copied again to the target by the sync step.
+ *
+ * The cache is saved alongside the CRC cache at the end of a run.
+ *
+ * NOTE:  There should only ever be one instance of this class, so all
+ *        global variables and methods are declared static.   The entries
+ *        are only used while synchronized as the ePubs can be processed
+ *        in parallel.
+ */
+
+import com.gmail.dpierron.calibre.datamodel.Book;
+import com.gmail.dpierron.calibre.datamodel.EBookFile;
+import com.gmail.dpierron.tools.Helper;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class EpubMetadataCache {
+
+  private final static Logger logger = Logger.getLogger(EpubMetadataCache.class);
+  private final static String CACHE_FILENAME = "c2o_epubmetadata";
+  private final static String CACHE_HEADER = "c2o_epubmetadata 1";
+  private final static String FIELD_SEPARATOR = "\t";
+
+  private static File cacheFile = null;
+  private static Map<String, Entry> entries = new HashMap<String, Entry>();
+  // The uuids of all the books in the library (before any filtering)
+  private static Set<String> libraryUuids = null;
+
+  private static long skippedCount = 0;
+
+  /**
+   * The information held for a single book
+   */
+  private static class Entry {
+    final String fingerprint;
+    final long length;
+    final long lastModified;
+
+    Entry(String fingerprint, long length, long lastModified) {
+      this.fingerprint = fingerprint;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+  }
+
+  public static synchronized void reset() {
+    cacheFile = null;
+    entries = new HashMap<String, Entry>();
+    libraryUuids = null;
+    skippedCount = 0;
+  }
+
+  /**
+   * Note the books that are in the library.   This must be called before the
+   * DataModel is filtered, so that books that are simply not in this catalog
+   * keep their entries.
+   *
+   * @param books All the books in the library
+   */
+  public static synchronized void setLibraryBooks(List<Book> books) {
+    libraryUuids = new HashSet<String>(Helper.hashCapacity(books.size()));
+    for (Book book : books) {
+      libraryUuids.add(book.getUuid());
+    }
+  }
+
+  /**
+   * Set the location for the cache file
+   *
+   * @param folder Folder to hold the cache.
+   *               This is the same folder as is used for the CRC cache.
+   */
+  public static synchronized void setCacheFolder(File folder) {
+    assert folder != null;
+    cacheFile = new File(folder, CACHE_FILENAME);
+    if (logger.isDebugEnabled()) logger.debug("ePub metadata cache file set to " + cacheFile.getPath());
+  }
+
+  /**
+   * Load the cache saved by the previous run (if there is one).
+   *
+   * N.B. the setCacheFolder() call must have been used
+   */
+  public static synchronized void loadCache() {
+    entries = new HashMap<String, Entry>();
+    skippedCount = 0;
+
+    if (cacheFile == null) {
+      if (logger.isTraceEnabled()) logger.trace("Aborting loadCache() as cache folder not set");
+      return;
+    }
+    if (!cacheFile.exists()) {
+      if (logger.isDebugEnabled()) logger.debug("Exiting loadCache() as ePub metadata cache file not present");
+      return;
+    }
+
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), "UTF-8"), 512 * 1024);
+      String line = reader.readLine();
+      if (!CACHE_HEADER.equals(line)) {
+        logger.info("ePub metadata cache ignored as it is not in the current format");
+        return;
+      }
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split(FIELD_SEPARATOR);
+        if (fields.length != 4) {
+          if (logger.isDebugEnabled()) logger.debug("loadCache: ignoring invalid line '" + line + "'");
+          continue;
+        }
+        entries.put(fields[0], new Entry(fields[1], Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+      }
+    } catch (NumberFormatException e) {
+      logger.warn("loadCache: ePub metadata cache file not loaded\n" + e);
+      entries.clear();
+    } catch (IOException e) {
+      logger.warn("loadCache: Exception trying to read ePub metadata cache: " + e);
+      entries.clear();
+    } finally {
+      try {
+        if (reader != null) reader.close();
+      } catch (IOException e) {
+        // do nothing
+      }
+    }
+    if (logger.isDebugEnabled()) logger.debug("ePub metadata cache Entries Loaded: " + entries.size());
+  }
+
+  /**
+   * Save the cache for use by the next run.
+   *
+   * Entries for books that are no longer in the library are dropped
+   * (if the books in the library have been set).
+   */
+  public static synchronized void saveCache() {
+    if (cacheFile == null) {
+      if (logger.isDebugEnabled()) logger.debug("Aborting saveCache() as cacheFile not set");
+      return;
+    }
+    if (libraryUuids != null) {
+      for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+        if (!libraryUuids.contains(it.next())) {
+          it.remove();
+        }
+      }
+    }
+    Helper.delete(cacheFile, false);
+    Writer writer = null;
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(cacheFile), "UTF-8"), 512 * 1024);
+      writer.write(CACHE_HEADER);
+      writer.write('\n');
+      for (Map.Entry<String, Entry> m : entries.entrySet()) {
+        Entry entry = m.getValue();
+        writer.write(m.getKey() + FIELD_SEPARATOR + entry.fingerprint + FIELD_SEPARATOR + entry.length + FIELD_SEPARATOR + entry.lastModified);
+        writer.write('\n');
+      }
+    } catch (IOException e) {
+      logger.warn("saveCache: Exception trying to write ePub metadata cache:\n" + e);
+    } finally {
+      try {
+        if (writer != null) writer.close();
+      } catch (IOException e) {
+        logger.warn("saveCache: Unexpected error\n" + e);
+      }
+    }
+    if (logger.isDebugEnabled()) logger.debug("saveCache: ePub metadata cache Entries Saved: " + entries.size());
+  }
+
+  /**
+   * Check whether the ePub of a book already holds the metadata with the given fingerprint
+   * (that is it was written with it and has not been changed since).
+   *
+   * @param book
+   * @param fingerprint
+   * @return
+   */
+  public static boolean isUpToDate(Book book, String fingerprint) {
+    EBookFile epubFile = book.getEpubFile();
+    if (epubFile == null || Helper.isNullOrEmpty(book.getUuid()))
+      return false;
+    Entry entry = getEntry(book.getUuid());
+    if (entry == null || !entry.fingerprint.equals(fingerprint))
+      return false;
+    // Not the CachedFile, whose values may not be those of the file as it is now
+    File file = new File(epubFile.getFile().getPath());
+    if (file.length() != entry.length || file.lastModified() != entry.lastModified)
+      return false;
+    if (logger.isTraceEnabled()) logger.trace("isUpToDate: ePub metadata unchanged for book " + book);
+    incSkippedCount();
+    return true;
+  }
+
+  /**
+   * Record the fingerprint of the metadata just written into the ePub of a book
+   *
+   * @param book
+   * @param fingerprint
+   */
+  public static void recordEpub(Book book, String fingerprint) {
+    EBookFile epubFile = book.getEpubFile();
+    if (epubFile == null || Helper.isNullOrEmpty(book.getUuid()))
+      return;
+    // Not the CachedFile, whose values may be the ones from before the ePub was written
+    File file = new File(epubFile.getFile().getPath());
+    putEntry(book.getUuid(), new Entry(fingerprint, file.length(), file.lastModified()));
+  }
+
+  private static synchronized Entry getEntry(String uuid) {
+    return entries.get(uuid);
+  }
+
+  private static synchronized void putEntry(String uuid, Entry entry) {
+    entries.put(uuid, entry);
+  }
+
+  private static synchronized void incSkippedCount() {
+    skippedCount++;
+  }
+
+  public static synchronized long getSkippedCount() {
+    return skippedCount;
+  }
+}
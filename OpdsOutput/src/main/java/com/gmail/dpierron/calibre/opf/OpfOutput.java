@@ -6,6 +6,7 @@ import com.gmail.dpierron.calibre.datamodel.*;
 import com.gmail.dpierron.calibre.opds.JDOMManager;
 import com.gmail.dpierron.calibre.opds.JDOMManager.Namespace;
 import com.gmail.dpierron.tools.Helper;
+import com.gmail.dpierron.tools.ZipRewriter;
 import org.apache.log4j.Logger;
 import org.jdom.*;
 
@@ -13,17 +14,19 @@ import java.io.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.zip.ZipEntry;
+import java.util.zip.CRC32;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 public class OpfOutput {
   private final static Logger logger = Logger.getLogger(OpfOutput.class);
-  private static final DateFormat CALIBRE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-  private static final DateFormat CALIBRE_TIME_FORMAT = new SimpleDateFormat("HH:mm:ss");
+  // Change this whenever what is written into the OPF changes, so that all the ePubs are processed again
+  private final static String FINGERPRINT_VERSION = "1";
 
   private Book book;
+  // Per instance as SimpleDateFormat is not thread-safe and books are processed in parallel
+  private final DateFormat calibreDateFormat = new SimpleDateFormat("yyyy-MM-dd");
+  private final DateFormat calibreTimeFormat = new SimpleDateFormat("HH:mm:ss");
   private boolean removeCss = false;
   private boolean restoreCss = false;
   private File defaultCss = null;
@@ -114,8 +117,8 @@ public class OpfOutput {
   private String convertDate(Date date) {
     if (date == null)
       return "";
-    String sDate = CALIBRE_DATE_FORMAT.format(date);
-    String sTime = CALIBRE_TIME_FORMAT.format(date);
+    String sDate = calibreDateFormat.format(date);
+    String sTime = calibreTimeFormat.format(date);
     return sDate + "T" + sTime;
   }
 
@@ -187,18 +190,66 @@ public class OpfOutput {
     }
   }
 
+  /**
+   * Work out a fingerprint of everything that processEPubFile() writes into the ePub.
+   * If it has not changed since the ePub was last processed there is nothing to do.
+   *
+   * @return
+   */
+  public String getMetadataFingerprint() {
+    StringBuilder sb = new StringBuilder(FINGERPRINT_VERSION);
+    sb.append('|').append(isRemoveCss()).append('|').append(isRestoreCss());
+    if (getDefaultCss() != null)
+      sb.append('|').append(getDefaultCss().getPath()).append(',').append(getDefaultCss().length()).append(',').append(getDefaultCss().lastModified());
+    sb.append('|').append(convertRatingToCalibreRating(book.getRating()));
+    if (book.getSeries() != null)
+      sb.append('|').append(book.getSeries().getName()).append(',').append(book.getSerieIndex());
+    sb.append('|').append(convertDate(book.getTimestamp()));
+    sb.append('|').append(book.getUuid());
+    if (book.getBookLanguages() != null) {
+      for (Language language : book.getBookLanguages()) {
+        sb.append('|').append(language.getIso3());
+      }
+    }
+    if (book.getAuthors() != null) {
+      for (Author author : book.getAuthors()) {
+        sb.append('|').append(author.getName()).append(',').append(author.getSort());
+      }
+    }
+    sb.append('|').append(book.getTitle());
+    if (book.getTags() != null) {
+      for (Tag tag : book.getTags()) {
+        sb.append('|').append(tag.getName());
+      }
+    }
+    CRC32 crc = new CRC32();
+    try {
+      crc.update(sb.toString().getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      crc.update(sb.toString().getBytes());
+    }
+    return Long.toHexString(crc.getValue());
+  }
+
   public void processEPubFile() throws IOException {
     if (book == null || book.getEpubFile() == null)
       return;
     File outputFile = File.createTempFile("calibre-epub-opfoutput", ".epub");
     try {
-      processEPubFile(outputFile);
+      boolean complete = processEPubFile(outputFile);
+      if (!complete) {
+        // Never replace the ePub in the library with a copy known to be damaged
+        logger.warn("ePub not updated as some of its entries could not be written for book " + book);
+        return;
+      }
       CachedFile epubfile = book.getEpubFile().getFile();
       Helper.copy(outputFile, epubfile);
       // Clear any cached information for this file as we have created a new one
       if (CachedFileManager.inCache(epubfile) != null) {
         epubfile.clearCachedInformation();
       }
+      // Remember what was written so that the ePub is left alone until this changes
+      EpubMetadataCache.recordEpub(book, getMetadataFingerprint());
     } catch (ZipException e ) {
       logger.warn("Failed to process EPUB metadata for book " + book);
     } finally {
@@ -206,140 +257,121 @@ public class OpfOutput {
     }
   }
 
-  public void processEPubFile(File outputFile) throws IOException {
+  /**
+   * Write a copy of the ePub of the book with its metadata updated
+   *
+   * @param outputFile
+   * @return true if every entry was written, false if any had to be left out
+   * @throws IOException
+   */
+  public boolean processEPubFile(File outputFile) throws IOException {
     if (book.getEpubFile() == null)
-      return;
+      return false;
     File inputFile = book.getEpubFile().getFile();
+    boolean complete = true;
 
     ZipFile zipInputFile = null;
-    ZipOutputStream zos = null;
+    ZipRewriter zipRewriter = null;
     try {
       try {
-        // Map<String, ZipEntry> cssFilesBackupMap = new HashMap<String, ZipEntry>();
+        // The OPF is read through ZipFile, but the new ePub is written by a ZipRewriter
+        // so that the entries left unchanged are copied without being recompressed
         zipInputFile = new ZipFile(inputFile);
         outputFile.getParentFile().mkdirs();
-        zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), 512 *1024));
-        Enumeration entries = zipInputFile.entries();
-        while (entries.hasMoreElements()) {
-          Object o = entries.nextElement();
-          if (o instanceof ZipEntry) {
-            ZipEntry zipEntry = (ZipEntry) o;
-            InputStream inputStream = zipInputFile.getInputStream(zipEntry);
-            if (zipEntry.getName().toUpperCase().endsWith("CONTENT.OPF")) {
-              // process the XML in the file
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(outputFile), 512 *1024);
+        try {
+          zipRewriter = new ZipRewriter(inputFile, os);
+        } finally {
+          if (zipRewriter == null)
+            os.close();
+        }
+        for (String entryName : zipRewriter.getEntryNames()) {
+          if (entryName.toUpperCase().endsWith("CONTENT.OPF")) {
+            // process the XML in the file
+            try {
+              InputStream inputStream = zipInputFile.getInputStream(zipInputFile.getEntry(entryName));
+              Document doc;
               try {
-                Document doc = JDOMManager.getSaxBuilder().build(inputStream);
-                try {
-                  doc.getRootElement().addNamespaceDeclaration(Namespace.Opf.getJdomNamespace());
-                } catch (org.jdom.IllegalAddException e) {
-                  logger.warn("processEbubFile: Unable to add namespace declaration '" + Namespace.Opf + "' for book: " + book.getTitle() + " (file " + inputFile + ")");
-                }
-                try {
-                  doc.getRootElement().addNamespaceDeclaration(Namespace.Dc.getJdomNamespace());
-                } catch (org.jdom.IllegalAddException e) {
-                  logger.warn("processEbubFile: Unable to add namespace declaration '" + Namespace.Dc + "' for book: " + book.getTitle() + " (file " + inputFile + ")");
-                }
-                try {
-                  doc.getRootElement().addNamespaceDeclaration(Namespace.DcTerms.getJdomNamespace());
-                } catch (org.jdom.IllegalAddException e) {
-                  logger.warn("processEbubFile: Unable to add namespace declaration '" + Namespace.DcTerms + "' for book: " + book.getTitle() + " (file " + inputFile + ")");
-                }
-                try {
-                  doc.getRootElement().addNamespaceDeclaration(Namespace.Calibre.getJdomNamespace());
-                } catch (org.jdom.IllegalAddException e) {
-                  logger.warn("processEbubFile: Unable to add namespace declaration '" + Namespace.Calibre + "' for book: " + book.getTitle() + " (file " + inputFile + ")");
-                }
-                Element metadata = doc.getRootElement().getChild("metadata", Namespace.Opf.getJdomNamespace());
-                if (metadata != null)
-                  processMetadataElement(metadata);
-                try {
-                  ZipEntry newEntry = new ZipEntry(zipEntry.getName());
-                  zos.putNextEntry(newEntry);
-                  JDOMManager.getOutputter().output(doc, zos);
-                } finally {
-                  zos.closeEntry();
-                }
-              } catch (IOException io) {
-                logger.error(io);
-                logger.error("... for book: " + book.getTitle() + " (file " + inputFile + ")");
+                doc = JDOMManager.getSaxBuilder().build(inputStream);
+              } finally {
+                inputStream.close();
               }
-            } else {
-              // copy the entry to the output file
-              BufferedInputStream in = null;
               try {
-                String filename = zipEntry.getName();
-                if (isRestoreCss()) { // check if we must restore the CSS files (rename them from .css_bak to .css)
-                  if (filename.toUpperCase().endsWith(".CSS_BAK")) {
-                    filename = filename.substring(0, filename.length() - 4);
-                  } else if (filename.toUpperCase().endsWith(".CSS")) {
-                    if (zipInputFile.getEntry(filename+"_BAK") != null)
-                      filename = null; // skip it
-                  }
-                } else if (isRemoveCss()) {  // check if we must remove the CSS files (rename them to .css_bak)
-                  if (filename.toUpperCase().endsWith(".CSS_BAK")) {
+                doc.getRootElement().addNamespaceDeclaration(Namespace.Opf.getJdomNamespace());
+              } catch (org.jdom.IllegalAddException e) {
+                logger.warn("processEbubFile: Unable to add namespace declaration '" + Namespace.Opf + "' for book: " + book.getTitle() + " (file " + inputFile + ")");
+              }
+              try {
+                doc.getRootElement().addNamespaceDeclaration(Namespace.Dc.getJdomNamespace());
+              } catch (org.jdom.IllegalAddException e) {
+                logger.warn("processEbubFile: Unable to add namespace declaration '" + Namespace.Dc + "' for book: " + book.getTitle() + " (file " + inputFile + ")");
+              }
+              try {
+                doc.getRootElement().addNamespaceDeclaration(Namespace.DcTerms.getJdomNamespace());
+              } catch (org.jdom.IllegalAddException e) {
+                logger.warn("processEbubFile: Unable to add namespace declaration '" + Namespace.DcTerms + "' for book: " + book.getTitle() + " (file " + inputFile + ")");
+              }
+              try {
+                doc.getRootElement().addNamespaceDeclaration(Namespace.Calibre.getJdomNamespace());
+              } catch (org.jdom.IllegalAddException e) {
+                logger.warn("processEbubFile: Unable to add namespace declaration '" + Namespace.Calibre + "' for book: " + book.getTitle() + " (file " + inputFile + ")");
+              }
+              Element metadata = doc.getRootElement().getChild("metadata", Namespace.Opf.getJdomNamespace());
+              if (metadata != null)
+                processMetadataElement(metadata);
+              ByteArrayOutputStream opf = new ByteArrayOutputStream();
+              JDOMManager.getOutputter().output(doc, opf);
+              zipRewriter.putEntry(entryName, opf.toByteArray());
+            } catch (IOException io) {
+              complete = false;
+              logger.error(io);
+              logger.error("... for book: " + book.getTitle() + " (file " + inputFile + ")");
+            }
+          } else {
+            // copy the entry to the output file
+            try {
+              String filename = entryName;
+              if (isRestoreCss()) { // check if we must restore the CSS files (rename them from .css_bak to .css)
+                if (filename.toUpperCase().endsWith(".CSS_BAK")) {
+                  filename = filename.substring(0, filename.length() - 4);
+                } else if (filename.toUpperCase().endsWith(".CSS")) {
+                  if (zipRewriter.hasEntry(filename+"_BAK"))
                     filename = null; // skip it
-                  } else if (filename.toUpperCase().endsWith(".CSS")) {
-                    // copy the default stylesheet if needed
-                    if (getDefaultCss() != null) {
-                      try {
-                        BufferedInputStream in2 = null;
-                        try {
-                          ZipEntry newEntry = new ZipEntry(filename);
-                          newEntry.setMethod(ZipEntry.DEFLATED);
-                          zos.putNextEntry(newEntry);
-                          byte[] data = new byte[1024];
-                          in2 = new BufferedInputStream(new FileInputStream(getDefaultCss()), 512 * 1024);
-                          int count;
-                          while ((count = in2.read(data, 0, data.length)) != -1) {
-                            zos.write(data, 0, count);
-                          }
-                        } finally {
-                          zos.closeEntry();
-                          if (in2 != null)
-                            in2.close();
-                        }
-                      } catch (IOException e) {
-                        logger.error(e);
-                        logger.error("... for book: " + book.getTitle() + " (cannot copy the default stylesheet)");
-                      }
-                    }
-                    filename += "_BAK";
-                    // don't duplicate entries
-                    if (zipInputFile.getEntry(filename) != null)
-                      filename = null;
-                  }
                 }
-                if (filename != null) {
-                  try {
-                    ZipEntry newEntry = new ZipEntry(filename);
-                    newEntry.setMethod(zipEntry.getMethod());
-                    if (newEntry.getMethod() == ZipEntry.STORED) {
-                      newEntry.setSize(zipEntry.getSize());
-                      newEntry.setCrc(zipEntry.getCrc());
+              } else if (isRemoveCss()) {  // check if we must remove the CSS files (rename them to .css_bak)
+                if (filename.toUpperCase().endsWith(".CSS_BAK")) {
+                  filename = null; // skip it
+                } else if (filename.toUpperCase().endsWith(".CSS")) {
+                  // copy the default stylesheet if needed
+                  if (getDefaultCss() != null) {
+                    try {
+                      zipRewriter.putEntry(filename, Helper.getBytesFromFile(getDefaultCss()));
+                    } catch (IOException e) {
+                      complete = false;
+                      logger.error(e);
+                      logger.error("... for book: " + book.getTitle() + " (cannot copy the default stylesheet)");
                     }
-                    zos.putNextEntry(newEntry);
-                    byte[] data = new byte[1024];
-                    in = new BufferedInputStream(inputStream, 512 * 1024);
-                    int count;
-                    while ((count = in.read(data, 0, data.length)) != -1) {
-                      zos.write(data, 0, count);
-                    }
-                  } finally {
-                    zos.closeEntry();
-                    if (in != null)
-                      in.close();
                   }
+                  filename += "_BAK";
+                  // don't duplicate entries
+                  if (zipRewriter.hasEntry(filename))
+                    filename = null;
                 }
-              } catch (IOException e) {
-                logger.error(e);
-                logger.error("... for book: " + book.getTitle() + " (file " + inputFile + ")");
               }
+              if (filename != null) {
+                // the entry is not changed (except maybe its name), so its compressed data is copied as is
+                zipRewriter.copyEntry(entryName, filename);
+              }
+            } catch (IOException e) {
+              complete = false;
+              logger.error(e);
+              logger.error("... for book: " + book.getTitle() + " (file " + inputFile + ")");
             }
           }
         }
       } finally {
-        if (zos != null) {
-          zos.close();
+        if (zipRewriter != null) {
+          zipRewriter.close();
         }
         if (zipInputFile != null) {
           zipInputFile.close();
@@ -357,5 +389,6 @@ public class OpfOutput {
       logger.warn(e);
       throw new IOException(e);
     }
+    return complete;
   }
 }
@@ -19,9 +19,15 @@ import java.util.*;
 public class TrookSpecificSearchDatabaseManager {
 
   private static final int MIN_KEYWORD_LEN = 3;
+  // Number of rows queued on the insert statements before they are sent to the database
+  private static final int BATCH_SIZE = 1000;
 
   private static File databaseFile = null;
   private static Connection connection = null;
+  private static PreparedStatement insertResult = null;
+  private static PreparedStatement insertKeyword = null;
+  private static PreparedStatement insertRelation = null;
+  private static int pendingRows = 0;
   private static Map<String, Long> keywords = new HashMap<String, Long>();
   private static List<Book> storedBooks = new LinkedList<Book>();
   private static List<Author> storedAuthors = new LinkedList<Author>();
@@ -47,13 +53,32 @@ public class TrookSpecificSearchDatabaseManager {
     return connection;
   }
 
+  /**
+   * Finish the bulk load and close the database.
+   *
+   * The rows still queued are written, the indexes are created now that
+   * the tables are loaded and the single transaction of the run is committed.
+   */
   public static void closeConnection() {
     if (connection != null) {
       try {
+        executeBatches();
+        Statement stat = connection.createStatement();
+        createIndexes(stat);
+        stat.close();
+        connection.commit();
+      } catch (SQLException e) {
+        logger.error(e);
+      }
+      try {
+        if (insertResult != null) insertResult.close();
+        if (insertKeyword != null) insertKeyword.close();
+        if (insertRelation != null) insertRelation.close();
         connection.close();
       } catch (SQLException e) {
         // Ignore any exception
       }
+      connection = null;
     }
   }
 
@@ -76,6 +101,10 @@ public class TrookSpecificSearchDatabaseManager {
       String url = databaseFile.toURI().getPath();
       connection = DriverManager.getConnection("jdbc:sqlite:" + url);
       Statement stat = connection.createStatement();
+      // The database is rebuilt from scratch on every run, so there is nothing to protect
+      // with a rollback journal or by syncing to disk while it is loaded
+      stat.execute("PRAGMA journal_mode=OFF;");
+      stat.execute("PRAGMA synchronous=OFF;");
       // drop the indexes
       stat.executeUpdate("DROP INDEX IF EXISTS KEYWORDS_RESULTS_RELATION_INDEX_ON_RESULTS;");
       stat.executeUpdate("DROP INDEX IF EXISTS KEYWORDS_RESULTS_RELATION_INDEX_ON_KEYWORD;");
@@ -89,11 +118,22 @@ public class TrookSpecificSearchDatabaseManager {
       stat.executeUpdate("CREATE TABLE keywords (keyword_id INTEGER PRIMARY KEY, keyword_value TEXT);");
       stat.executeUpdate("CREATE TABLE results (result_id INTEGER PRIMARY KEY, result_type TEXT, result_entry TEXT);");
       stat.executeUpdate("CREATE TABLE keywords_results_relation (keyword_id INTEGER, result_id INTEGER);");
-      // create the indexes
-      stat.executeUpdate("CREATE UNIQUE INDEX KEYWORDS_INDEX ON keywords(keyword_id ASC);");
-      stat.executeUpdate("CREATE UNIQUE INDEX RESULTS_INDEX ON results(result_id ASC);");
-      stat.executeUpdate("CREATE INDEX KEYWORDS_RESULTS_RELATION_INDEX_ON_KEYWORD ON keywords_results_relation(keyword_id ASC);");
-      stat.executeUpdate("CREATE INDEX KEYWORDS_RESULTS_RELATION_INDEX_ON_RESULTS ON keywords_results_relation(result_id ASC);");
+      stat.close();
+      // the indexes are only created in closeConnection() once the data is loaded
+      // and the whole load is a single transaction
+      connection.setAutoCommit(false);
+      insertResult = connection.prepareStatement("INSERT INTO results(result_id, result_type, result_entry) values (?, ?, ?);");
+      insertKeyword = connection.prepareStatement("INSERT INTO keywords(keyword_id, keyword_value) values (?, ?);");
+      insertRelation = connection.prepareStatement("INSERT INTO keywords_results_relation(keyword_id, result_id) values (?, ?);");
+      pendingRows = 0;
+      // the database is new, so forget what was stored in any previous run
+      keywords.clear();
+      storedBooks.clear();
+      storedAuthors.clear();
+      storedSeries.clear();
+      storedTags.clear();
+      keywordCounter = 0;
+      resultCounter = 0;
     } catch (ClassNotFoundException e) {
       logger.error(e);
     } catch (SQLException e) {
@@ -101,14 +141,37 @@ public class TrookSpecificSearchDatabaseManager {
     }
   }
 
+  private static void createIndexes(Statement stat) throws SQLException {
+    stat.executeUpdate("CREATE UNIQUE INDEX KEYWORDS_INDEX ON keywords(keyword_id ASC);");
+    stat.executeUpdate("CREATE UNIQUE INDEX RESULTS_INDEX ON results(result_id ASC);");
+    stat.executeUpdate("CREATE INDEX KEYWORDS_RESULTS_RELATION_INDEX_ON_KEYWORD ON keywords_results_relation(keyword_id ASC);");
+    stat.executeUpdate("CREATE INDEX KEYWORDS_RESULTS_RELATION_INDEX_ON_RESULTS ON keywords_results_relation(result_id ASC);");
+  }
 
+  /**
+   * Send the rows queued on the insert statements to the database.
+   */
+  private static void executeBatches() throws SQLException {
+    if (pendingRows == 0)
+      return;
+    insertResult.executeBatch();
+    insertKeyword.executeBatch();
+    insertRelation.executeBatch();
+    pendingRows = 0;
+  }
+
+  private static void rowAdded() throws SQLException {
+    if (++pendingRows >= BATCH_SIZE)
+      executeBatches();
+  }
 
   private static long addResult(String opdsEntry, ResultType type) throws SQLException {
-    PreparedStatement ps = getConnection().prepareStatement("INSERT INTO results(result_id, result_type, result_entry) values (?, ?, ?);");
-    ps.setLong(1, ++resultCounter);
-    ps.setString(2, type.name().toUpperCase(Locale.ENGLISH));
-    ps.setString(3, opdsEntry);
-    ps.execute();
+    getConnection();
+    insertResult.setLong(1, ++resultCounter);
+    insertResult.setString(2, type.name().toUpperCase(Locale.ENGLISH));
+    insertResult.setString(3, opdsEntry);
+    insertResult.addBatch();
+    rowAdded();
     return resultCounter;
   }
 
@@ -117,20 +180,20 @@ public class TrookSpecificSearchDatabaseManager {
     if (keywords.containsKey(keyword))
       return keywords.get(keyword);
     else {
-      PreparedStatement ps = getConnection().prepareStatement("INSERT INTO keywords(keyword_id, keyword_value) values (?, ?);");
-      ps.setLong(1, ++keywordCounter);
-      ps.setString(2, keyword);
-      ps.execute();
+      insertKeyword.setLong(1, ++keywordCounter);
+      insertKeyword.setString(2, keyword);
+      insertKeyword.addBatch();
+      rowAdded();
       keywords.put(keyword, keywordCounter);
     }
     return keywordCounter;
   }
 
   private static void addKeywordResultRelation(long keywordId, long resultId) throws SQLException {
-    PreparedStatement ps = getConnection().prepareStatement("INSERT INTO keywords_results_relation(keyword_id, result_id) values (?, ?);");
-    ps.setLong(1, keywordId);
-    ps.setLong(2, resultId);
-    ps.execute();
+    insertRelation.setLong(1, keywordId);
+    insertRelation.setLong(2, resultId);
+    insertRelation.addBatch();
+    rowAdded();
   }
 
   private static List<String> keywordize(String pKeywordString) {
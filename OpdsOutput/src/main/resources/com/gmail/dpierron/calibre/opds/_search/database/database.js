@@ -3,6 +3,9 @@ var default_number_of_keywords = 100;
 var v_booksLoaded = false;
 var v_keywordsLoaded = false;
 var v_catalogItemsLoaded = false;
+// The list of the shards ([prefix, shard, keywords]) when the database is split in shards
+var v_shards = null;
+var v_lookingFor = null;
 
 function createAndPopulateDB() {
     // Don't bother reloading the database if this one is considered as up to date
@@ -16,6 +19,12 @@ function loadDb() {
     cleanDb();
     createDb();
 
+    if (isSharded()) {
+        // the shards are loaded when the keywords they hold are looked for
+        loadIdentifier();
+        return;
+    }
+
     loadJs("database/books.js",booksLoaded);
     loadJs("database/keywords.js",keywordsLoaded);
     loadJs("database/catalogitems.js", catalogItemsLoaded);
@@ -73,16 +82,18 @@ function createDb() {
         tx.executeSql('CREATE TABLE IF NOT EXISTS KEYWORDS (KW_ID PRIMARY KEY, KW_WORD, KW_WEIGHT INT)');
         tx.executeSql('CREATE TABLE IF NOT EXISTS CATALOG_ITEMS (KW_ID, BK_ID, CAT_TYPE)');
         tx.executeSql('CREATE TABLE IF NOT EXISTS IDENTIFIER (ID, LABEL, DATE)');
+        tx.executeSql('CREATE TABLE IF NOT EXISTS LOADED_SHARDS (SHARD PRIMARY KEY)');
     });
 }
 
 
 function cleanDb() {
     db.transaction(function (tx) {
-        tx.executeSql('DROP TABLE BOOKS');
-        tx.executeSql('DROP TABLE KEYWORDS');
-        tx.executeSql('DROP TABLE CATALOG_ITEMS');
-        tx.executeSql('DROP TABLE IDENTIFIER');
+        tx.executeSql('DROP TABLE IF EXISTS BOOKS');
+        tx.executeSql('DROP TABLE IF EXISTS KEYWORDS');
+        tx.executeSql('DROP TABLE IF EXISTS CATALOG_ITEMS');
+        tx.executeSql('DROP TABLE IF EXISTS IDENTIFIER');
+        tx.executeSql('DROP TABLE IF EXISTS LOADED_SHARDS');
     });
 }
 
@@ -94,6 +105,8 @@ function loadJs(relativePath, callback ) {
 var oHead = document.getElementsByTagName('HEAD')[0];
 var oScript = document.createElement('script');
 oScript.type = 'text/javascript';
+// the database files are always written in UTF-8
+oScript.charset = 'utf-8';
 oScript.src = relativePath;
 // most browsers
 oScript.onload = function(){
@@ -172,6 +185,82 @@ console.log("finish loading catalogitems table");
 });
 }
 
+function isSharded() {
+    var identifier = getIdentifier();
+    return identifier[0].length > 3 && identifier[0][3] > 0;
+}
+
+function withShards(callback) {
+    if (v_shards != null) {
+        callback();
+        return;
+    }
+    loadJs("database/shards.js", function () {
+        v_shards = getShards();
+        callback();
+    });
+}
+
+// Load the shards holding the keywords starting with word, then call back
+function loadShardsFor(word, callback) {
+    withShards(function () {
+        var wanted = [];
+        if (word.length > 0) {
+            for (var i = 0; i < v_shards.length; i++) {
+                var prefix = v_shards[i][0];
+                if (word.indexOf(prefix) == 0 || prefix.indexOf(word) == 0) {
+                    wanted.push(v_shards[i][1]);
+                }
+            }
+        }
+        loadShards(wanted, callback);
+    });
+}
+
+function loadShards(shards, callback) {
+    if (shards.length == 0) {
+        callback();
+        return;
+    }
+    var shard = shards.shift();
+    db.readTransaction(function (tx) {
+        tx.executeSql("SELECT SHARD FROM LOADED_SHARDS WHERE SHARD = ?", [shard], function (tx, results) {
+            if (results.rows.length > 0) {
+                loadShards(shards, callback);
+            } else {
+                loadJs("database/shard_" + shard + ".js", function () {
+                    loadShard(shard, function () {
+                        loadShards(shards, callback);
+                    });
+                });
+            }
+        });
+    });
+}
+
+function loadShard(shard, callback) {
+    db.transaction(function (tx) {
+        console.log("populate shard " + shard);
+        var books = window["getShard" + shard + "Books"]();
+        for (var i = 0; i < books.length; i++) {
+            tx.executeSql('INSERT OR IGNORE INTO BOOKS (BK_ID, BK_TITLE, BK_URL, BK_THUMBNAIL_URL) VALUES (?, ?, ?, ?)',[books[i][0], books[i][1], books[i][2], books[i][3]]);
+        }
+        var keywords = window["getShard" + shard + "Keywords"]();
+        for (var i = 0; i < keywords.length; i++) {
+            tx.executeSql('INSERT OR IGNORE INTO KEYWORDS (KW_ID, KW_WORD,KW_WEIGHT) VALUES (?, ?, ?)',[keywords[i][0], keywords[i][1], keywords[i][2]]);
+        }
+        var catalogitems = window["getShard" + shard + "Catalogitems"]();
+        for (var i = 0; i < catalogitems.length; i++) {
+            tx.executeSql('INSERT INTO CATALOG_ITEMS (KW_ID, BK_ID, CAT_TYPE) VALUES (?, ?, ?)',[catalogitems[i][0], catalogitems[i][1], catalogitems[i][2]]);
+        }
+        tx.executeSql('INSERT OR IGNORE INTO LOADED_SHARDS (SHARD) VALUES (?)', [shard]);
+        console.log("finish loading shard " + shard);
+    }, function (error) {
+        console.log("Could not load shard " + shard + ": " + error.message);
+        callback();
+    }, callback);
+}
+
 function loadIdentifier() {
     db.transaction(function (tx) {
         console.log("populate identifier");
@@ -220,10 +309,27 @@ var diff;
 var dist;
 
 function getKeywordsWithSize(element, word) {
+    if (!isSharded()) {
+        showKeywordsWithSize(element, '%' + word + '%', word);
+        return;
+    }
+    // only the shards for the start of the word are loaded, so look for the keywords starting with it
+    word = word.replace(/^\s+|\s+$/g, '').toLowerCase();
+    v_lookingFor = word;
+    loadShardsFor(word, function () {
+        showKeywordsWithSize(element, word + '%', word);
+    });
+}
+
+function showKeywordsWithSize(element, pattern, word) {
     cleanSearch();
     element.innerHTML = "";
     db.transaction(function (tx) {
-        tx.executeSql("SELECT * FROM KEYWORDS WHERE KW_WORD like ? order by KW_WEIGHT desc",[ '%' + word + '%'], function (tx, results) {
+        tx.executeSql("SELECT * FROM KEYWORDS WHERE KW_WORD like ? order by KW_WEIGHT desc",[pattern], function (tx, results) {
+            if (isSharded() && word != v_lookingFor) {
+                // another word has been typed in since
+                return;
+            }
             var tagClouds = "";
             if (results.rows.length > 0) {
                 var keywords =[[]];
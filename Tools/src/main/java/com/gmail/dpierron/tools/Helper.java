@@ -8,7 +8,9 @@ import org.apache.log4j.Logger;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
 import java.rmi.dgc.VMID;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -868,15 +870,36 @@ public class Helper {
       if (maxSize < 0)
         maxSize = original.size();
       if (original.size() <= maxSize)
-        return new LinkedList<T>(original);
-      List<T> result = new LinkedList<T>();
-      for (int i = 0; i < maxSize; i++) {
-        result.add(original.get(i));
+        return new ArrayList<T>(original);
+      return new ArrayList<T>(original.subList(0, maxSize));
+    }
+  }
+
+  /**
+   * Release the spare capacity of array backed lists once they are fully loaded.
+   * Lists of other types are left unchanged.
+   *
+   * @param lists
+   */
+  public static void trimToSize(Collection<? extends List<?>> lists) {
+    for (List<?> list : lists) {
+      if (list instanceof ArrayList) {
+        ((ArrayList<?>) list).trimToSize();
       }
-      return result;
     }
   }
 
+  /**
+   * Get the initial capacity for a HashMap (or HashSet) that is to hold
+   * the given number of entries without needing to be resized.
+   *
+   * @param expectedSize
+   * @return
+   */
+  public static int hashCapacity(int expectedSize) {
+    return expectedSize < 3 ? 4 : (int) (expectedSize / 0.75f) + 1;
+  }
+
 
   public static String shorten(String s, int maxSize) {
     if (isNullOrEmpty(s) || maxSize < 2)
@@ -918,16 +941,72 @@ public class Helper {
     }
   */
 
+  // Largest block handed to transferTo() in one call (some platforms fail on very large transfers)
+  private final static long TRANSFER_BLOCK_SIZE = 8 * 1024 * 1024;
+
+  /**
+   * Copy a file.
+   *
+   * The copy is done channel to channel so that the operating system can
+   * move the data directly rather than it passing through a Java buffer.
+   *
+   * The data is written to a temporary file in the destination folder which
+   * is only renamed over the destination once complete, so a copy that fails
+   * or is interrupted never leaves a partly written destination file.
+   *
+   * @param src
+   * @param dst
+   * @throws IOException if the copy could not be completed (the destination is then unchanged)
+   */
   public static void copy(File src, File dst) throws IOException {
-    InputStream in = null;
+    File folder = dst.getAbsoluteFile().getParentFile();
+    if (!folder.exists()) {
+      folder.mkdirs();
+    }
+    File temp = File.createTempFile(".c2o_copy", ".tmp", folder);
+    boolean done = false;
     try {
-      in = new FileInputStream(src);
-      Helper.copy(in, dst);
+      FileInputStream in = null;
+      FileOutputStream out = null;
+      try {
+        in = new FileInputStream(src);
+        out = new FileOutputStream(temp);
+        FileChannel inChannel = in.getChannel();
+        FileChannel outChannel = out.getChannel();
+        long size = inChannel.size();
+        long position = 0;
+        while (position < size) {
+          long transferred = inChannel.transferTo(position, Math.min(size - position, TRANSFER_BLOCK_SIZE), outChannel);
+          if (transferred <= 0) {
+            break;
+          }
+          position += transferred;
+        }
+        if (position < size) {
+          throw new IOException("Only " + position + " of " + size + " bytes copied from " + src + " (was it truncated while being copied?)");
+        }
+      } finally {
+        try {
+          if (out != null)
+            out.close();
+        } finally {
+          if (in != null)
+            in.close();
+        }
+      }
+      // On some platforms a rename will not replace an existing file
+      if (!temp.renameTo(dst)) {
+        dst.delete();
+        if (!temp.renameTo(dst)) {
+          throw new IOException("Unable to rename " + temp + " to " + dst);
+        }
+      }
+      done = true;
     } finally {
-      if (in != null)
-        in.close();
+      if (!done) {
+        temp.delete();
+      }
     }
-
   }
 
   public static void copy(InputStream in, File dst) throws IOException {
@@ -1124,6 +1203,22 @@ public class Helper {
     return checkedCollatorCompare(s1.toUpperCase(), s2.toUpperCase(), locale);
   }
 
+  /**
+   * A checked compare of two precomputed collation keys.
+   * Null keys sort after non-null ones, as for checkedCollatorCompare.
+   * @param k1      First key to compare
+   * @param k2      Second key to compare
+   * @return
+   */
+  public static int checkedCollationKeyCompare (CollationKey k1, CollationKey k2) {
+    if (k1 == null) {
+      return (k2 == null) ? 0 : 1;
+    } else if (k2 == null) {
+      return -1;
+    }
+    return k1.compareTo(k2);
+  }
+
   public static ArrayList<File> listFilesIn(File dir) {
     ArrayList<File> result = new ArrayList<File>();
     if (dir != null && dir.isDirectory()) {
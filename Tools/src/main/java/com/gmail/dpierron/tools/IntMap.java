@@ -0,0 +1,169 @@
+package com.gmail.dpierron.tools;
+
+/**
+ * A hash map from int keys to (non null) values.
+ *
+ * Compared to a HashMap this avoids boxing (or converting to strings) the
+ * keys and creating an object per entry, so uses much less memory.   It is
+ * intended for the large maps keyed by database ids.
+ *
+ * The keys and values are held in parallel arrays using open addressing
+ * with linear probing.   A slot is free if its value is null, which is
+ * why null values cannot be stored.
+ *
+ * @param <V>
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IntMap<V> {
+  private static final int DEFAULT_EXPECTED_SIZE = 16;
+
+  private int[] keys;
+  private Object[] values;
+  private int size;
+  private int mask;
+  private int threshold;
+
+  public IntMap() {
+    this(DEFAULT_EXPECTED_SIZE);
+  }
+
+  /**
+   * @param expectedSize The number of entries that can be held before the map needs to grow
+   */
+  public IntMap(int expectedSize) {
+    int capacity = 4;
+    while (capacity * 3 / 4 < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    threshold = capacity * 3 / 4;
+  }
+
+  /**
+   * Spread the keys as database ids are often sequential
+   */
+  private int slot(int key) {
+    int h = key * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private int find(int key) {
+    int i = slot(key);
+    while (values[i] != null) {
+      if (keys[i] == key) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    int i = find(key);
+    return i < 0 ? null : (V) values[i];
+  }
+
+  public boolean containsKey(int key) {
+    return find(key) >= 0;
+  }
+
+  /**
+   * Set the value for a key.
+   *
+   * @param key
+   * @param value Must not be null
+   * @return      The previous value for the key (if any)
+   */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("Null value for key " + key);
+    }
+    int i = slot(key);
+    while (values[i] != null) {
+      if (keys[i] == key) {
+        V previous = (V) values[i];
+        values[i] = value;
+        return previous;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size > threshold) {
+      rehash(values.length << 1);
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    int gap = find(key);
+    if (gap < 0) {
+      return null;
+    }
+    V previous = (V) values[gap];
+    values[gap] = null;
+    size--;
+    // Move back any following entries that can no longer be reached past the gap
+    int i = (gap + 1) & mask;
+    while (values[i] != null) {
+      if (((i - slot(keys[i])) & mask) >= ((i - gap) & mask)) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        values[i] = null;
+        gap = i;
+      }
+      i = (i + 1) & mask;
+    }
+    return previous;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int j = slot(oldKeys[i]);
+        while (values[j] != null) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return A list of the values (in no particular order)
+   */
+  @SuppressWarnings("unchecked")
+  public List<V> values() {
+    List<V> result = new ArrayList<V>(size);
+    for (Object value : values) {
+      if (value != null) {
+        result.add((V) value);
+      }
+    }
+    return result;
+  }
+}
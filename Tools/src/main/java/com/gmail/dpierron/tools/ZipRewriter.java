@@ -0,0 +1,388 @@
+package com.gmail.dpierron.tools;
+
+/**
+ * Writes a new copy of a zip file, entry by entry.
+ *
+ * The entries that are copied unchanged (possibly under a new name) are
+ * written as the compressed bytes read from the source file, with their
+ * CRC and sizes, so they are never inflated and deflated again.   Only the
+ * entries given new content are compressed.   This makes rewriting a file
+ * such as an ePub, where only the OPF changes, mostly a matter of I/O.
+ *
+ * The entries are written in the order they are copied or put.   ZIP64
+ * files are not supported (as by java.util.zip.ZipFile before Java 7), and
+ * a ZipException is thrown when opening one.
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+public class ZipRewriter {
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int END_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xFFFF;
+  // General purpose flags
+  private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+  private static final int FLAG_UTF8 = 1 << 11;
+  private static final int METHOD_DEFLATED = 8;
+  private static final int VERSION_DEFLATED = 20;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte[] NO_BYTES = new byte[0];
+
+  /**
+   * An entry, as read from the central directory of the source file
+   * or as written to the new file
+   */
+  private static class Entry {
+    String name;
+    byte[] nameBytes;
+    int versionMadeBy;
+    int versionNeeded;
+    int flags;
+    int method;
+    int dosTime;
+    long crc;
+    long compressedSize;
+    long size;
+    byte[] extra;
+    byte[] comment;
+    int internalAttributes;
+    long externalAttributes;
+    long offset;
+
+    Entry copy() {
+      Entry result = new Entry();
+      result.name = name;
+      result.nameBytes = nameBytes;
+      result.versionMadeBy = versionMadeBy;
+      result.versionNeeded = versionNeeded;
+      result.flags = flags;
+      result.method = method;
+      result.dosTime = dosTime;
+      result.crc = crc;
+      result.compressedSize = compressedSize;
+      result.size = size;
+      result.extra = extra;
+      result.comment = comment;
+      result.internalAttributes = internalAttributes;
+      result.externalAttributes = externalAttributes;
+      return result;
+    }
+  }
+
+  private final RandomAccessFile source;
+  private final List<Entry> sourceEntries = new ArrayList<Entry>();
+  private final Map<String, Entry> sourceEntriesByName = new HashMap<String, Entry>();
+  private final OutputStream out;
+  private long written;
+  private final List<Entry> writtenEntries = new ArrayList<Entry>();
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+
+  /**
+   * @param sourceFile The zip file to copy the entries from
+   * @param out        Where to write the new zip file
+   * @throws IOException
+   */
+  public ZipRewriter(File sourceFile, OutputStream out) throws IOException {
+    source = new RandomAccessFile(sourceFile, "r");
+    try {
+      readCentralDirectory();
+    } catch (IOException e) {
+      source.close();
+      throw e;
+    }
+    this.out = out;
+  }
+
+  /**
+   * @return The names of the entries of the source file, in the order of its central directory
+   */
+  public List<String> getEntryNames() {
+    List<String> result = new ArrayList<String>(sourceEntries.size());
+    for (Entry entry : sourceEntries) {
+      result.add(entry.name);
+    }
+    return result;
+  }
+
+  public boolean hasEntry(String name) {
+    return sourceEntriesByName.containsKey(name);
+  }
+
+  /**
+   * Copy an entry of the source file as is
+   *
+   * @param name
+   * @throws IOException
+   */
+  public void copyEntry(String name) throws IOException {
+    copyEntry(name, name);
+  }
+
+  /**
+   * Copy an entry of the source file under a new name.
+   * The content is copied without being decompressed.
+   *
+   * @param name
+   * @param newName
+   * @throws IOException
+   */
+  public void copyEntry(String name, String newName) throws IOException {
+    Entry sourceEntry = sourceEntriesByName.get(name);
+    if (sourceEntry == null)
+      throw new ZipException("No entry " + name);
+
+    // find where the data starts, after the local header
+    byte[] localHeader = new byte[LOCAL_HEADER_SIZE];
+    source.seek(sourceEntry.offset);
+    source.readFully(localHeader);
+    if (getInt(localHeader, 0) != LOCAL_HEADER_SIGNATURE)
+      throw new ZipException("Invalid local header for entry " + name);
+    int nameLength = getShort(localHeader, 26);
+    byte[] localExtra = new byte[getShort(localHeader, 28)];
+    source.seek(sourceEntry.offset + LOCAL_HEADER_SIZE + nameLength);
+    source.readFully(localExtra);
+
+    Entry entry = sourceEntry.copy();
+    if (!newName.equals(name))
+      setName(entry, newName);
+    // the sizes and CRC are known, so they go in the local header rather than a data descriptor
+    entry.flags &= ~FLAG_DATA_DESCRIPTOR;
+    entry.extra = localExtra;
+    writeLocalHeader(entry);
+    long remaining = entry.compressedSize;
+    while (remaining > 0) {
+      int count = (int) Math.min(remaining, buffer.length);
+      source.readFully(buffer, 0, count);
+      write(buffer, 0, count);
+      remaining -= count;
+    }
+    entry.extra = sourceEntry.extra;
+    writtenEntries.add(entry);
+  }
+
+  /**
+   * Add an entry with the given (uncompressed) content, which is deflated
+   *
+   * @param name
+   * @param data
+   * @throws IOException
+   */
+  public void putEntry(String name, byte[] data) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        compressed.write(buffer, 0, count);
+      }
+    } finally {
+      deflater.end();
+    }
+
+    Entry entry = new Entry();
+    setName(entry, name);
+    entry.versionMadeBy = VERSION_DEFLATED;
+    entry.versionNeeded = VERSION_DEFLATED;
+    entry.method = METHOD_DEFLATED;
+    entry.dosTime = toDosTime(System.currentTimeMillis());
+    entry.crc = crc.getValue();
+    entry.compressedSize = compressed.size();
+    entry.size = data.length;
+    entry.extra = NO_BYTES;
+    entry.comment = NO_BYTES;
+    writeLocalHeader(entry);
+    compressed.writeTo(out);
+    written += compressed.size();
+    writtenEntries.add(entry);
+  }
+
+  /**
+   * Write the central directory of the new file, and close both files
+   *
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    try {
+      long centralDirectoryOffset = written;
+      for (Entry entry : writtenEntries) {
+        writeInt(CENTRAL_HEADER_SIGNATURE);
+        writeShort(entry.versionMadeBy);
+        writeShort(entry.versionNeeded);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.nameBytes.length);
+        writeShort(entry.extra.length);
+        writeShort(entry.comment.length);
+        writeShort(0);
+        writeShort(entry.internalAttributes);
+        writeInt(entry.externalAttributes);
+        writeInt(entry.offset);
+        write(entry.nameBytes, 0, entry.nameBytes.length);
+        write(entry.extra, 0, entry.extra.length);
+        write(entry.comment, 0, entry.comment.length);
+      }
+      long centralDirectorySize = written - centralDirectoryOffset;
+      if (writtenEntries.size() > 0xFFFF || written > 0xFFFFFFFFL)
+        throw new ZipException("Zip file too large");
+      writeInt(END_SIGNATURE);
+      writeShort(0);
+      writeShort(0);
+      writeShort(writtenEntries.size());
+      writeShort(writtenEntries.size());
+      writeInt(centralDirectorySize);
+      writeInt(centralDirectoryOffset);
+      writeShort(0);
+      out.flush();
+    } finally {
+      try {
+        out.close();
+      } finally {
+        source.close();
+      }
+    }
+  }
+
+  private void readCentralDirectory() throws IOException {
+    // the end of central directory record is followed by a comment of up to 64K
+    long length = source.length();
+    int tailLength = (int) Math.min(length, END_SIZE + MAX_COMMENT_SIZE);
+    byte[] tail = new byte[tailLength];
+    source.seek(length - tailLength);
+    source.readFully(tail);
+    int end = -1;
+    for (int i = tailLength - END_SIZE; i >= 0; i--) {
+      if (getInt(tail, i) == END_SIGNATURE) {
+        end = i;
+        break;
+      }
+    }
+    if (end == -1)
+      throw new ZipException("No end of central directory found");
+    int entries = getShort(tail, end + 10);
+    long centralDirectorySize = getInt(tail, end + 12) & 0xFFFFFFFFL;
+    long centralDirectoryOffset = getInt(tail, end + 16) & 0xFFFFFFFFL;
+    if (entries == 0xFFFF || centralDirectorySize == 0xFFFFFFFFL || centralDirectoryOffset == 0xFFFFFFFFL)
+      throw new ZipException("ZIP64 files are not supported");
+    if (centralDirectoryOffset + centralDirectorySize > length)
+      throw new ZipException("Invalid central directory");
+
+    byte[] directory = new byte[(int) centralDirectorySize];
+    source.seek(centralDirectoryOffset);
+    source.readFully(directory);
+    int position = 0;
+    for (int i = 0; i < entries; i++) {
+      if (position + CENTRAL_HEADER_SIZE > directory.length || getInt(directory, position) != CENTRAL_HEADER_SIGNATURE)
+        throw new ZipException("Invalid central directory");
+      Entry entry = new Entry();
+      entry.versionMadeBy = getShort(directory, position + 4);
+      entry.versionNeeded = getShort(directory, position + 6);
+      entry.flags = getShort(directory, position + 8);
+      entry.method = getShort(directory, position + 10);
+      entry.dosTime = getInt(directory, position + 12);
+      entry.crc = getInt(directory, position + 16) & 0xFFFFFFFFL;
+      entry.compressedSize = getInt(directory, position + 20) & 0xFFFFFFFFL;
+      entry.size = getInt(directory, position + 24) & 0xFFFFFFFFL;
+      int nameLength = getShort(directory, position + 28);
+      int extraLength = getShort(directory, position + 30);
+      int commentLength = getShort(directory, position + 32);
+      entry.internalAttributes = getShort(directory, position + 36);
+      entry.externalAttributes = getInt(directory, position + 38) & 0xFFFFFFFFL;
+      entry.offset = getInt(directory, position + 42) & 0xFFFFFFFFL;
+      if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.offset == 0xFFFFFFFFL)
+        throw new ZipException("ZIP64 files are not supported");
+      position += CENTRAL_HEADER_SIZE;
+      if (position + nameLength + extraLength + commentLength > directory.length)
+        throw new ZipException("Invalid central directory");
+      entry.nameBytes = Arrays.copyOfRange(directory, position, position + nameLength);
+      position += nameLength;
+      entry.extra = Arrays.copyOfRange(directory, position, position + extraLength);
+      position += extraLength;
+      entry.comment = Arrays.copyOfRange(directory, position, position + commentLength);
+      position += commentLength;
+      // as java.util.zip.ZipFile, the names are read as UTF-8
+      entry.name = new String(entry.nameBytes, "UTF-8");
+      // as with java.util.zip.ZipFile, only the first of any entries with the same name is seen
+      if (!sourceEntriesByName.containsKey(entry.name)) {
+        sourceEntries.add(entry);
+        sourceEntriesByName.put(entry.name, entry);
+      }
+    }
+  }
+
+  private void setName(Entry entry, String name) throws UnsupportedEncodingException {
+    entry.name = name;
+    entry.nameBytes = name.getBytes("UTF-8");
+    if (entry.nameBytes.length != name.length())
+      entry.flags |= FLAG_UTF8;
+  }
+
+  private void writeLocalHeader(Entry entry) throws IOException {
+    entry.offset = written;
+    writeInt(LOCAL_HEADER_SIGNATURE);
+    writeShort(entry.versionNeeded);
+    writeShort(entry.flags);
+    writeShort(entry.method);
+    writeInt(entry.dosTime);
+    writeInt(entry.crc);
+    writeInt(entry.compressedSize);
+    writeInt(entry.size);
+    writeShort(entry.nameBytes.length);
+    writeShort(entry.extra.length);
+    write(entry.nameBytes, 0, entry.nameBytes.length);
+    write(entry.extra, 0, entry.extra.length);
+  }
+
+  private static int toDosTime(long time) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980)
+      return (1 << 21) | (1 << 16);
+    return (year - 1980) << 25
+        | (calendar.get(Calendar.MONTH) + 1) << 21
+        | calendar.get(Calendar.DAY_OF_MONTH) << 16
+        | calendar.get(Calendar.HOUR_OF_DAY) << 11
+        | calendar.get(Calendar.MINUTE) << 5
+        | calendar.get(Calendar.SECOND) >> 1;
+  }
+
+  private static int getShort(byte[] b, int i) {
+    return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8);
+  }
+
+  private static int getInt(byte[] b, int i) {
+    return getShort(b, i) | (getShort(b, i + 2) << 16);
+  }
+
+  private void write(byte[] b, int off, int len) throws IOException {
+    out.write(b, off, len);
+    written += len;
+  }
+
+  private void writeShort(int v) throws IOException {
+    out.write(v & 0xFF);
+    out.write((v >>> 8) & 0xFF);
+    written += 2;
+  }
+
+  private void writeInt(long v) throws IOException {
+    writeShort((int) (v & 0xFFFF));
+    writeShort((int) ((v >>> 16) & 0xFFFF));
+  }
+}
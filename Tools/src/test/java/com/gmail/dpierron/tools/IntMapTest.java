@@ -0,0 +1,127 @@
+package com.gmail.dpierron.tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class IntMapTest {
+
+  /**
+   * Check every key in the given range, and the values, against the reference map
+   */
+  private static void check(Map<Integer, String> expected, IntMap<String> map, int minKey, int maxKey) {
+    assertEquals(expected.size(), map.size());
+    for (int key = minKey; key <= maxKey; key++) {
+      assertEquals("key " + key, expected.get(key), map.get(key));
+      assertEquals("key " + key, expected.containsKey(key), map.containsKey(key));
+    }
+    List<String> values = map.values();
+    List<String> expectedValues = new ArrayList<String>(expected.values());
+    Collections.sort(values);
+    Collections.sort(expectedValues);
+    assertEquals(expectedValues, values);
+  }
+
+  /**
+   * Random puts and removes on a small range of keys (including negative ones),
+   * so that the map is always crowded and most keys share a run of slots with
+   * others.   This is where removing an entry has to move the following ones back.
+   */
+  @Test
+  public void testRandomCollidingKeys() {
+    Random random = new Random(42);
+    for (int round = 0; round < 20; round++) {
+      int range = 4 + random.nextInt(60);
+      IntMap<String> map = new IntMap<String>(random.nextInt(8));
+      Map<Integer, String> expected = new HashMap<Integer, String>();
+      for (int op = 0; op < 5000; op++) {
+        int key = random.nextInt(2 * range + 1) - range;
+        if (random.nextInt(3) == 0) {
+          assertEquals("remove " + key, expected.remove(key), map.remove(key));
+        } else {
+          String value = "v" + op;
+          assertEquals("put " + key, expected.put(key, value), map.put(key, value));
+        }
+        assertEquals("get " + key, expected.get(key), map.get(key));
+        if (op % 97 == 0) {
+          check(expected, map, -range - 1, range + 1);
+        }
+      }
+      check(expected, map, -range - 1, range + 1);
+    }
+  }
+
+  /**
+   * Keys spread over the whole int range, including the extremes
+   */
+  @Test
+  public void testRandomWideKeys() {
+    Random random = new Random(7);
+    IntMap<String> map = new IntMap<String>();
+    Map<Integer, String> expected = new HashMap<Integer, String>();
+    List<Integer> keys = new ArrayList<Integer>();
+    keys.add(0);
+    keys.add(-1);
+    keys.add(Integer.MIN_VALUE);
+    keys.add(Integer.MAX_VALUE);
+    for (int i = 0; i < 2000; i++) {
+      keys.add(random.nextInt());
+    }
+    for (int op = 0; op < 50000; op++) {
+      int key = keys.get(random.nextInt(keys.size()));
+      if (random.nextBoolean()) {
+        assertEquals("remove " + key, expected.remove(key), map.remove(key));
+      } else {
+        String value = "v" + op;
+        assertEquals("put " + key, expected.put(key, value), map.put(key, value));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    for (int key : keys) {
+      assertEquals("key " + key, expected.get(key), map.get(key));
+    }
+  }
+
+  /**
+   * Fill the map (making it grow) and then empty it again in a different order
+   */
+  @Test
+  public void testFillAndEmpty() {
+    IntMap<String> map = new IntMap<String>();
+    Map<Integer, String> expected = new HashMap<Integer, String>();
+    List<Integer> keys = new ArrayList<Integer>();
+    for (int key = -5000; key < 5000; key += 3) {
+      keys.add(key);
+    }
+    for (int key : keys) {
+      map.put(key, "v" + key);
+      expected.put(key, "v" + key);
+    }
+    check(expected, map, -5001, 5001);
+    Collections.shuffle(keys, new Random(3));
+    for (int i = 0; i < keys.size(); i++) {
+      int key = keys.get(i);
+      assertEquals("v" + key, map.remove(key));
+      assertNull(map.remove(key));
+      expected.remove(key);
+      if (i % 500 == 0) {
+        check(expected, map, -5001, 5001);
+      }
+    }
+    assertEquals(0, map.size());
+    assertEquals(true, map.isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullValue() {
+    new IntMap<String>().put(1, null);
+  }
+}
@@ -0,0 +1,216 @@
+package com.gmail.dpierron.tools;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ZipRewriterTest {
+
+  private static final String MIMETYPE = "mimetype";
+  private static final String CHAPTER = "OEBPS/chapter1.xhtml";
+  private static final String NON_ASCII = "OEBPS/Été ünïcode 中文.xhtml";
+  private static final String CSS = "OEBPS/style.css";
+  private static final String CSS_RENAMED = "OEBPS/style.css_BAK";
+  private static final String EMPTY = "OEBPS/empty.txt";
+  private static final String OPF = "OEBPS/content.opf";
+
+  private static byte[] bytes(String s) throws IOException {
+    return s.getBytes("UTF-8");
+  }
+
+  /**
+   * Text that compresses well, long enough to need several buffers
+   */
+  private static byte[] chapter() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      sb.append("<p>Paragraph ").append(i).append(" of the chapter</p>\n");
+    }
+    return bytes(sb.toString());
+  }
+
+  private static byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int count;
+    while ((count = in.read(buffer)) > 0) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Create an ePub like file:  the mimetype stored, and the others deflated.
+   * Deflated entries written by ZipOutputStream have their sizes and CRC in
+   * a data descriptor after the data rather than in the local header.
+   */
+  private static File createSource() throws IOException {
+    File file = File.createTempFile("c2o_zipsource", ".zip");
+    file.deleteOnExit();
+    ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+    try {
+      byte[] mimetype = bytes("application/epub+zip");
+      ZipEntry stored = new ZipEntry(MIMETYPE);
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(mimetype.length);
+      CRC32 crc = new CRC32();
+      crc.update(mimetype);
+      stored.setCrc(crc.getValue());
+      zos.putNextEntry(stored);
+      zos.write(mimetype);
+      zos.closeEntry();
+
+      zos.putNextEntry(new ZipEntry(OPF));
+      zos.write(bytes("<package>old</package>"));
+      zos.closeEntry();
+
+      zos.putNextEntry(new ZipEntry(CHAPTER));
+      zos.write(chapter());
+      zos.closeEntry();
+
+      zos.putNextEntry(new ZipEntry(NON_ASCII));
+      zos.write(bytes("<p>Été</p>"));
+      zos.closeEntry();
+
+      zos.putNextEntry(new ZipEntry(CSS));
+      zos.write(bytes("body { margin: 0 }"));
+      zos.closeEntry();
+
+      zos.putNextEntry(new ZipEntry(EMPTY));
+      zos.closeEntry();
+    } finally {
+      zos.close();
+    }
+    return file;
+  }
+
+  @Test
+  public void testRewrite() throws IOException {
+    File source = createSource();
+    File result = File.createTempFile("c2o_zipresult", ".zip");
+    result.deleteOnExit();
+    byte[] newOpf = bytes("<package>new é</package>");
+
+    ZipRewriter rewriter = new ZipRewriter(source, new FileOutputStream(result));
+    try {
+      assertEquals(Arrays.asList(MIMETYPE, OPF, CHAPTER, NON_ASCII, CSS, EMPTY), rewriter.getEntryNames());
+      assertTrue(rewriter.hasEntry(NON_ASCII));
+      assertFalse(rewriter.hasEntry(CSS_RENAMED));
+      for (String name : rewriter.getEntryNames()) {
+        if (name.equals(OPF)) {
+          rewriter.putEntry(name, newOpf);
+        } else if (name.equals(CSS)) {
+          rewriter.copyEntry(name, CSS_RENAMED);
+        } else {
+          rewriter.copyEntry(name);
+        }
+      }
+    } finally {
+      rewriter.close();
+    }
+
+    List<String> expectedNames = Arrays.asList(MIMETYPE, OPF, CHAPTER, NON_ASCII, CSS_RENAMED, EMPTY);
+    List<byte[]> expectedData = Arrays.asList(bytes("application/epub+zip"), newOpf, chapter(),
+                                              bytes("<p>Été</p>"), bytes("body { margin: 0 }"), new byte[0]);
+
+    // Read back through the central directory
+    ZipFile zipFile = new ZipFile(result);
+    try {
+      List<String> names = new ArrayList<String>();
+      for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+        names.add(e.nextElement().getName());
+      }
+      assertEquals(expectedNames, names);
+      for (int i = 0; i < expectedNames.size(); i++) {
+        ZipEntry entry = zipFile.getEntry(expectedNames.get(i));
+        assertNotNull(expectedNames.get(i), entry);
+        InputStream in = zipFile.getInputStream(entry);
+        try {
+          assertArrayEquals(expectedNames.get(i), expectedData.get(i), read(in));
+        } finally {
+          in.close();
+        }
+      }
+      assertEquals(ZipEntry.STORED, zipFile.getEntry(MIMETYPE).getMethod());
+      assertEquals(ZipEntry.DEFLATED, zipFile.getEntry(CHAPTER).getMethod());
+      assertEquals(ZipEntry.DEFLATED, zipFile.getEntry(OPF).getMethod());
+      assertNull(zipFile.getEntry(CSS));
+    } finally {
+      zipFile.close();
+    }
+
+    // Read back through the local headers (the CRC of each entry is checked as it is read)
+    ZipInputStream zis = new ZipInputStream(new FileInputStream(result));
+    try {
+      for (int i = 0; i < expectedNames.size(); i++) {
+        ZipEntry entry = zis.getNextEntry();
+        assertNotNull(entry);
+        assertEquals(expectedNames.get(i), entry.getName());
+        // The sizes are in the local header as there is no longer a data descriptor
+        assertEquals(expectedNames.get(i), expectedData.get(i).length, entry.getSize());
+        assertArrayEquals(expectedNames.get(i), expectedData.get(i), read(zis));
+      }
+      assertNull(zis.getNextEntry());
+    } finally {
+      zis.close();
+    }
+
+    source.delete();
+    result.delete();
+  }
+
+  @Test
+  public void testMissingEntry() throws IOException {
+    File source = createSource();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ZipRewriter rewriter = new ZipRewriter(source, out);
+    try {
+      rewriter.copyEntry("no/such/entry");
+      fail("Copying a missing entry should fail");
+    } catch (ZipException e) {
+      // expected
+    } finally {
+      rewriter.close();
+    }
+    source.delete();
+  }
+
+  @Test
+  public void testNotZip() throws IOException {
+    File source = File.createTempFile("c2o_notzip", ".zip");
+    source.deleteOnExit();
+    FileOutputStream fos = new FileOutputStream(source);
+    fos.write(bytes("This is not a zip file"));
+    fos.close();
+    try {
+      new ZipRewriter(source, new ByteArrayOutputStream());
+      fail("Opening a file that is not a zip should fail");
+    } catch (ZipException e) {
+      // expected
+    }
+    source.delete();
+  }
+}